@@ -16,9 +16,13 @@ package com.starrocks.connector.flink;
 
 import com.starrocks.connector.flink.row.sink.StarRocksGenericRowTransformer;
 import com.starrocks.connector.flink.row.sink.StarRocksSinkRowBuilder;
+import com.starrocks.connector.flink.table.sink.StarRocksBucketKeySelector;
 import com.starrocks.connector.flink.table.sink.StarRocksDynamicSinkFunction;
 import com.starrocks.connector.flink.table.sink.StarRocksSinkOptions;
+import com.starrocks.connector.flink.table.sink.StarRocksUnifiedSink;
 
+import org.apache.flink.api.connector.sink.Sink;
+import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.functions.sink.SinkFunction;
 import org.apache.flink.table.api.TableSchema;
 
@@ -62,5 +66,65 @@ public class StarRocksSink {
         return new StarRocksDynamicSinkFunction<>(sinkOptions);
     }
 
+    /**
+     * Create a StarRocks DataStream sink on the unified sink API, which runs in both streaming and batch execution mode.
+     * <p>
+     * Note: the objects passed to the return sink can be processed in batch and retried.
+     * Therefore, objects can not be {@link org.apache.flink.api.common.ExecutionConfig#enableObjectReuse() reused}.
+     * `exactly-once` is supported with `sink.exactly-once.transaction` only.
+     * </p>
+     *
+     * @param flinkTableSchema     TableSchema of the all columns with DataType
+     * @param sinkOptions          StarRocksSinkOptions as the document listed, such as jdbc-url, load-url, batch size and maximum retries
+     * @param rowDataTransformer   StarRocksSinkRowBuilder which would be used to transform the upstream record.
+     * @param <T>                  type of data in {@link org.apache.flink.streaming.runtime.streamrecord.StreamRecord StreamRecord}.
+     * @return Sink                Sink that could be added to a stream with `sinkTo`.
+     */
+    public static <T> Sink<T, ?, ?, ?> unifiedSink(
+        TableSchema flinkTableSchema,
+        StarRocksSinkOptions sinkOptions,
+        StarRocksSinkRowBuilder<T> rowDataTransformer) {
+        return new StarRocksUnifiedSink<>(
+            sinkOptions,
+            flinkTableSchema,
+            new StarRocksGenericRowTransformer<>(rowDataTransformer)
+        );
+    }
+
+    /**
+     * Create a StarRocks DataStream sink on the unified sink API, stream elements could only be String.
+     *
+     * @param sinkOptions            StarRocksSinkOptions as the document listed, such as jdbc-url, load-url, batch size and maximum retries
+     * @return Sink                  Sink that could be added to a stream with `sinkTo`.
+     */
+    public static Sink<String, ?, ?, ?> unifiedSink(StarRocksSinkOptions sinkOptions) {
+        return new StarRocksUnifiedSink<>(sinkOptions);
+    }
+
+    /**
+     * Partition the stream among the subtasks of the sink by the StarRocks bucket of each element,
+     * so that each subtask loads the tablets of its own buckets, see `sink.partition-by-bucket`.
+     * The sink should follow with the same parallelism as the returned stream.
+     *
+     * @param stream                 the stream to sink
+     * @param flinkTableSchema       TableSchema of the all columns with DataType
+     * @param sinkOptions            StarRocksSinkOptions as the document listed, such as jdbc-url, load-url, batch size and maximum retries
+     * @param rowDataTransformer     StarRocksSinkRowBuilder which would be used to transform the upstream record.
+     * @param <T>                    type of data in {@link org.apache.flink.streaming.runtime.streamrecord.StreamRecord StreamRecord}.
+     * @return DataStream            the partitioned stream, or the stream itself if the distribution of the table is not supported.
+     */
+    public static <T> DataStream<T> partitionByBucket(
+        DataStream<T> stream,
+        TableSchema flinkTableSchema,
+        StarRocksSinkOptions sinkOptions,
+        StarRocksSinkRowBuilder<T> rowDataTransformer) {
+        StarRocksBucketKeySelector<T> bucketSelector = StarRocksBucketKeySelector.create(
+            sinkOptions,
+            flinkTableSchema,
+            new StarRocksGenericRowTransformer<>(rowDataTransformer)
+        );
+        return null == bucketSelector ? stream : stream.partitionCustom(new StarRocksBucketKeySelector.BucketPartitioner(), bucketSelector);
+    }
+
     private StarRocksSink() {}
 }
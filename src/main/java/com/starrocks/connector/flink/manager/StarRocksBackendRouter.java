@@ -0,0 +1,154 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.flink.util.concurrent.ExecutorThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the http addresses of the backends for `sink.load-url.direct-backend`, so that stream loads skip the redirect of the frontend.
+ * The backends are listed with `SHOW BACKENDS` on a timer, and also learnt from the redirects of the loads sent to the frontends,
+ * which keeps the mode working for users not allowed to list the backends.
+ * Loads rotate over the backends, a backend failing a load is skipped until the next refresh.
+ */
+public class StarRocksBackendRouter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StarRocksBackendRouter.class);
+
+    private final StarRocksQueryVisitor queryVisitor;
+    private final long refreshIntervalMs;
+    private final AtomicInteger pos = new AtomicInteger();
+    // from `SHOW BACKENDS` and from the redirects
+    private volatile List<String> listedBackends = Collections.emptyList();
+    private final Set<String> learntBackends = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> ejectedBackends = new ConcurrentHashMap<>();
+    private volatile List<String> backends = Collections.emptyList();
+    private ScheduledExecutorService refresher;
+
+    /**
+     * @param queryVisitor null to learn the backends from the redirects only.
+     */
+    public StarRocksBackendRouter(StarRocksQueryVisitor queryVisitor, long refreshIntervalMs) {
+        this.queryVisitor = queryVisitor;
+        this.refreshIntervalMs = refreshIntervalMs;
+    }
+
+    public synchronized void open() {
+        if (null != refresher || null == queryVisitor) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(new ExecutorThreadFactory("starrocks-backend-refresh"));
+        refresher.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void close() {
+        if (null != refresher) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    /**
+     * @return url of the backend taking the next load, null if none of them is known yet.
+     */
+    public String select() {
+        List<String> candidates = backends;
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        int start = pos.getAndIncrement();
+        for (int i = 0; i < candidates.size(); i++) {
+            String backend = candidates.get(Math.floorMod(start + i, candidates.size()));
+            Long ejectedUntil = ejectedBackends.get(backend);
+            if (null == ejectedUntil) {
+                return backend;
+            }
+            if (now >= ejectedUntil) {
+                ejectedBackends.remove(backend, ejectedUntil);
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Learn the backend a frontend redirected a load to.
+     */
+    public void onRedirected(URI location) {
+        if (null == location || null == location.getHost() || location.getPort() < 0) {
+            return;
+        }
+        String backend = new StringBuilder(null == location.getScheme() ? "http" : location.getScheme())
+            .append("://").append(location.getHost()).append(":").append(location.getPort()).toString();
+        if (learntBackends.add(backend)) {
+            LOG.info(String.format("Learnt backend %s from the redirect of a stream load.", backend));
+            updateBackends();
+        }
+    }
+
+    public void onLoadFailed(String backend) {
+        LOG.warn(String.format("Skipping backend %s for %d ms after a failed load.", backend, refreshIntervalMs));
+        ejectedBackends.put(backend, System.currentTimeMillis() + refreshIntervalMs);
+    }
+
+    public List<String> getBackends() {
+        return backends;
+    }
+
+    private void refresh() {
+        try {
+            List<String> addresses = queryVisitor.getBackendHttpAddresses();
+            if (null == addresses) {
+                return;
+            }
+            List<String> urls = new ArrayList<>(addresses.size());
+            for (String address : addresses) {
+                urls.add(new StringBuilder("http://").append(address).toString());
+            }
+            if (!urls.isEmpty()) {
+                // learnt ones are only kept while the backends can not be listed
+                learntBackends.clear();
+            }
+            listedBackends = urls;
+            updateBackends();
+        } catch (Exception e) {
+            LOG.warn("Failed to refresh the backends of the direct stream load, learning them from the redirects only.", e);
+        }
+    }
+
+    private synchronized void updateBackends() {
+        List<String> merged = new ArrayList<>(listedBackends);
+        for (String backend : learntBackends) {
+            if (!merged.contains(backend)) {
+                merged.add(backend);
+            }
+        }
+        backends = Collections.unmodifiableList(merged);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.metrics.SimpleCounter;
+import org.apache.flink.util.concurrent.ExecutorThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the `load-url` host of every stream load by power of two choices: two random healthy hosts are picked
+ * and the load goes to the one with the lower EWMA of load time, weighted by its in-flight loads.
+ * A host failing a load is ejected for a period doubling with its consecutive failures, and re-admitted
+ * by the background health check once it can be connected again. Loads only wait for a probe when all the hosts are ejected.
+ */
+public class StarRocksLoadUrlRouter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StarRocksLoadUrlRouter.class);
+
+    // weight of the latest load in the EWMA of the load time
+    private static final double LATENCY_EWMA_WEIGHT = 0.3;
+    private static final long MAX_EJECTION_MS = 5 * 60 * 1000L;
+
+    private static final String GAUGE_HEALTHY = "healthy";
+    private static final String GAUGE_LOAD_TIME_EWMA_MS = "loadTimeEwmaMs";
+    private static final String GAUGE_INFLIGHT_LOADS = "inflightLoads";
+    private static final String COUNTER_TOTAL_LOADS = "totalLoads";
+    private static final String COUNTER_TOTAL_FAILED_LOADS = "totalFailedLoads";
+
+    private final List<Host> hosts;
+    private final int connectTimeoutMs;
+    private final long healthCheckIntervalMs;
+    private ScheduledExecutorService healthChecker;
+
+    public StarRocksLoadUrlRouter(List<String> loadUrls, int connectTimeoutMs, long healthCheckIntervalMs) {
+        List<Host> hosts = new ArrayList<>(loadUrls.size());
+        for (String loadUrl : loadUrls) {
+            hosts.add(new Host(loadUrl));
+        }
+        this.hosts = Collections.unmodifiableList(hosts);
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.healthCheckIntervalMs = healthCheckIntervalMs;
+    }
+
+    /**
+     * Check the hosts once, so that the first loads skip the unreachable ones, and start the background health check.
+     */
+    public synchronized void open() {
+        if (null != healthChecker) {
+            return;
+        }
+        checkHealth();
+        healthChecker = Executors.newSingleThreadScheduledExecutor(new ExecutorThreadFactory("starrocks-load-url-health-check"));
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, healthCheckIntervalMs, healthCheckIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void close() {
+        if (null != healthChecker) {
+            healthChecker.shutdownNow();
+            healthChecker = null;
+        }
+    }
+
+    public void registerMetrics(MetricGroup metricGroup) {
+        for (Host host : hosts) {
+            MetricGroup hostGroup = metricGroup.addGroup("loadUrl", host.address);
+            hostGroup.gauge(GAUGE_HEALTHY, (Gauge<Integer>) () -> host.healthy ? 1 : 0);
+            hostGroup.gauge(GAUGE_LOAD_TIME_EWMA_MS, (Gauge<Long>) () -> (long) host.loadTimeEwmaMs);
+            hostGroup.gauge(GAUGE_INFLIGHT_LOADS, (Gauge<Integer>) host.inflightLoads::get);
+            hostGroup.counter(COUNTER_TOTAL_LOADS, host.totalLoads);
+            hostGroup.counter(COUNTER_TOTAL_FAILED_LOADS, host.totalFailedLoads);
+        }
+    }
+
+    public List<Host> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * Choose the host of a load, which has to be reported with {@link #onLoadFinished} or {@link #onLoadFailed}.
+     *
+     * @return null if none of the hosts can be connected.
+     */
+    public Host select() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Host first = null;
+        Host second = null;
+        int healthyHosts = 0;
+        // sample two of the healthy hosts in a single pass
+        for (Host host : hosts) {
+            if (!host.healthy) {
+                continue;
+            }
+            healthyHosts++;
+            int slot = healthyHosts <= 2 ? healthyHosts - 1 : random.nextInt(healthyHosts);
+            if (0 == slot) {
+                first = host;
+            } else if (1 == slot) {
+                second = host;
+            }
+        }
+        Host chosen;
+        if (null == first) {
+            // all of them are ejected: probe them right away rather than failing loads until the next health check
+            chosen = probeEjectedHosts();
+            if (null == chosen) {
+                return null;
+            }
+        } else if (null == second || first.getScore() <= second.getScore()) {
+            chosen = first;
+        } else {
+            chosen = second;
+        }
+        chosen.inflightLoads.incrementAndGet();
+        synchronized (chosen) {
+            chosen.totalLoads.inc();
+        }
+        return chosen;
+    }
+
+    /**
+     * @return url of a healthy host for the requests other than loads, or of the first host if all of them are ejected.
+     */
+    public String getAvailableUrl() {
+        for (Host host : hosts) {
+            if (host.healthy) {
+                return host.url;
+            }
+        }
+        return hosts.get(0).url;
+    }
+
+    public void onLoadFinished(Host host, long loadTimeMs) {
+        host.inflightLoads.decrementAndGet();
+        synchronized (host) {
+            host.loadTimeEwmaMs = host.measured ? host.loadTimeEwmaMs + LATENCY_EWMA_WEIGHT * (loadTimeMs - host.loadTimeEwmaMs) : loadTimeMs;
+            host.measured = true;
+            host.consecutiveFailures = 0;
+        }
+        host.healthy = true;
+    }
+
+    public void onLoadFailed(Host host) {
+        host.inflightLoads.decrementAndGet();
+        long ejectionMs;
+        synchronized (host) {
+            host.totalFailedLoads.inc();
+            int failures = Math.min(++host.consecutiveFailures, 16);
+            ejectionMs = Math.min(MAX_EJECTION_MS, healthCheckIntervalMs << (failures - 1));
+            host.ejectedUntil = System.currentTimeMillis() + ejectionMs;
+        }
+        host.healthy = false;
+        LOG.warn(String.format("Ejected host %s of `load-url` for %d ms after a failed load.", host.address, ejectionMs));
+    }
+
+    private Host probeEjectedHosts() {
+        for (Host host : hosts) {
+            if (tryHttpConnection(host.url)) {
+                LOG.info(String.format("Host %s of `load-url` is admitted.", host.address));
+                host.healthy = true;
+                return host;
+            }
+        }
+        return null;
+    }
+
+    private void checkHealth() {
+        long now = System.currentTimeMillis();
+        for (Host host : hosts) {
+            if (!host.healthy && now < host.ejectedUntil) {
+                continue;
+            }
+            boolean reachable = tryHttpConnection(host.url);
+            if (reachable && !host.healthy) {
+                LOG.info(String.format("Host %s of `load-url` is admitted.", host.address));
+            } else if (!reachable && host.healthy) {
+                LOG.warn(String.format("Host %s of `load-url` is ejected, it could not be connected.", host.address));
+            }
+            host.healthy = reachable;
+        }
+    }
+
+    private boolean tryHttpConnection(String host) {
+        try {
+            URL url = new URL(host);
+            HttpURLConnection co = (HttpURLConnection) url.openConnection();
+            co.setConnectTimeout(connectTimeoutMs);
+            co.connect();
+            co.disconnect();
+            return true;
+        } catch (Exception e1) {
+            // the health check runs every interval, only the ejections and admissions are worth a warning
+            LOG.debug("Failed to connect to address:{}", host, e1);
+            return false;
+        }
+    }
+
+    /**
+     * A host of `load-url` with its health and load statistics.
+     */
+    public static class Host {
+
+        private final String address;
+        private final String url;
+        private final AtomicInteger inflightLoads = new AtomicInteger();
+        private final Counter totalLoads = new SimpleCounter();
+        private final Counter totalFailedLoads = new SimpleCounter();
+        private volatile boolean healthy = true;
+        private volatile double loadTimeEwmaMs;
+        private volatile long ejectedUntil;
+        // guarded by the host
+        private boolean measured;
+        private int consecutiveFailures;
+
+        private Host(String address) {
+            this.address = address;
+            this.url = new StringBuilder("http://").append(address).toString();
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public double getLoadTimeEwmaMs() {
+            return loadTimeEwmaMs;
+        }
+
+        private double getScore() {
+            return (loadTimeEwmaMs + 1) * (inflightLoads.get() + 1);
+        }
+    }
+}
@@ -82,6 +82,51 @@ public class StarRocksQueryVisitor implements Serializable {
         }
     }
 
+    /**
+     * @return `host:http_port` of the alive backends.
+     */
+    public List<String> getBackendHttpAddresses() {
+        final String query = "show backends;";
+        try {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Executing query '%s'", query));
+            }
+            List<Map<String, Object>> rows = executeQuery(query);
+            List<String> addresses = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                // `Host` in the newer versions
+                Object host = row.containsKey("IP") ? row.get("IP") : row.get("Host");
+                Object httpPort = row.get("HttpPort");
+                if (null == host || null == httpPort || !"true".equalsIgnoreCase(String.valueOf(row.get("Alive")))) {
+                    continue;
+                }
+                addresses.add(host + ":" + httpPort);
+            }
+            return addresses;
+        } catch (ClassNotFoundException se) {
+            throw new IllegalArgumentException("Failed to find jdbc driver." + se.getMessage(), se);
+        } catch (SQLException se) {
+            throw new IllegalArgumentException("Failed to get StarRocks backends. " + se.getMessage(), se);
+        }
+    }
+
+    /**
+     * @return the rows of `SHOW PARTITIONS` of the table, with the distribution (`DistributionKey`, `Buckets`) of each partition.
+     */
+    public List<Map<String, Object>> getTablePartitions() {
+        final String query = String.format("show partitions from `%s`.`%s`;", database.replace("`", "``"), table.replace("`", "``"));
+        try {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Executing query '%s'", query));
+            }
+            return executeQuery(query);
+        } catch (ClassNotFoundException se) {
+            throw new IllegalArgumentException("Failed to find jdbc driver." + se.getMessage(), se);
+        } catch (SQLException se) {
+            throw new IllegalArgumentException("Failed to get the partitions of the table from StarRocks. " + se.getMessage(), se);
+        }
+    }
+
     private List<Map<String, Object>> executeQuery(String query, String... args) throws ClassNotFoundException, SQLException {
         PreparedStatement stmt = jdbcConnProvider.getConnection().prepareStatement(query, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
         for (int i = 0; i < args.length; i++) {
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager;
+
+import java.io.Serializable;
+
+import com.starrocks.connector.flink.table.sink.StarRocksSinkOptions;
+
+/**
+ * Flush thresholds of the sink buffers, fixed to `sink.buffer-flush.max-*` or, with `sink.buffer-flush.adaptive`,
+ * sized from the feedback of the stream loads to keep their load time close to the target.
+ * The commit and publish time is taken as a cost paid once per load and the rest of the load time as growing
+ * with the batch, which gives the batch size fitting in the target. Steps are smoothed and bounded by
+ * `sink.buffer-flush.adaptive.min-bytes` and `sink.buffer-flush.max-bytes`, the row threshold follows in proportion.
+ */
+public class StarRocksSinkBatchController implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // weight of the latest load in the smoothed threshold
+    private static final double SMOOTHING = 0.5;
+    // a single load changes the threshold by no more than this factor
+    private static final double MAX_STEP = 2.0;
+
+    private final boolean adaptive;
+    private final long minBytes;
+    private final long maxBytes;
+    private final long maxRows;
+    private final long targetLoadTimeMs;
+
+    private volatile long flushBytes;
+    private volatile long flushRows;
+
+    public StarRocksSinkBatchController(StarRocksSinkOptions sinkOptions) {
+        this.adaptive = sinkOptions.isSinkBatchAdaptive();
+        this.maxBytes = sinkOptions.getSinkMaxBytes();
+        this.maxRows = sinkOptions.getSinkMaxRows();
+        this.minBytes = adaptive ? sinkOptions.getSinkAdaptiveMinBytes() : maxBytes;
+        this.targetLoadTimeMs = sinkOptions.getSinkAdaptiveTargetLoadTime();
+        this.flushBytes = maxBytes;
+        this.flushRows = maxRows;
+    }
+
+    public long getFlushBytes() {
+        return flushBytes;
+    }
+
+    public long getFlushRows() {
+        return flushRows;
+    }
+
+    /**
+     * Feed back a successful load.
+     *
+     * @param batchBytes bytes of the loaded batch
+     * @param loadTimeMs `LoadTimeMs` of the load result, or the time the load took if missing
+     * @param commitAndPublishTimeMs `CommitAndPublishTimeMs` of the load result, 0 if missing
+     */
+    public synchronized void onLoadFinished(long batchBytes, long loadTimeMs, long commitAndPublishTimeMs) {
+        if (!adaptive || batchBytes <= 0 || loadTimeMs <= 0) {
+            return;
+        }
+        long fixedTimeMs = Math.min(Math.max(commitAndPublishTimeMs, 0), loadTimeMs);
+        long current = flushBytes;
+        double desired;
+        if (fixedTimeMs >= targetLoadTimeMs) {
+            // committing alone takes the whole target, only fewer loads can help
+            desired = maxBytes;
+        } else {
+            double bytesPerMs = (double) batchBytes / Math.max(1L, loadTimeMs - fixedTimeMs);
+            desired = bytesPerMs * (targetLoadTimeMs - fixedTimeMs);
+        }
+        // only shrink on loads over the target, small batches flushed by the interval do not tell much about larger ones
+        desired = loadTimeMs > targetLoadTimeMs ? Math.min(desired, current) : Math.max(desired, current);
+        desired = Math.max(current / MAX_STEP, Math.min(current * MAX_STEP, desired));
+        long next = (long) (current + SMOOTHING * (desired - current));
+        next = Math.max(minBytes, Math.min(maxBytes, next));
+        flushBytes = next;
+        flushRows = Math.max(1L, (long) ((double) maxRows * next / maxBytes));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Pool of fixed-size direct memory chunks backing the off-heap sink buffers.
+ * Chunks are recycled once the batch holding them is loaded, and no more than `maxBytes` are ever allocated.
+ */
+public class StarRocksSinkBufferArena {
+
+    private final int chunkSize;
+    private final int maxChunks;
+    private final ArrayDeque<ByteBuffer> freeChunks = new ArrayDeque<>();
+    private int allocatedChunks;
+
+    public StarRocksSinkBufferArena(int chunkSize, long maxBytes) {
+        this.chunkSize = chunkSize;
+        this.maxChunks = (int) Math.max(1, maxBytes / chunkSize);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return a free chunk, or null if all the memory of the arena is in use.
+     */
+    public synchronized ByteBuffer tryAllocate() {
+        ByteBuffer chunk = freeChunks.pollFirst();
+        if (null != chunk) {
+            return chunk;
+        }
+        if (allocatedChunks < maxChunks) {
+            allocatedChunks++;
+            return ByteBuffer.allocateDirect(chunkSize);
+        }
+        return null;
+    }
+
+    /**
+     * Wait at most `timeoutMs` for a chunk to be released.
+     *
+     * @return a free chunk, or null if none was released in time.
+     */
+    public synchronized ByteBuffer allocate(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        ByteBuffer chunk;
+        while (null == (chunk = tryAllocate())) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+            wait(remaining);
+        }
+        return chunk;
+    }
+
+    /**
+     * Wait at most `timeoutMs` for a chunk to be free, without taking it.
+     *
+     * @return false if no chunk was released in time.
+     */
+    public synchronized boolean awaitFreeChunk(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (freeChunks.isEmpty() && allocatedChunks >= maxChunks) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    public synchronized void release(List<ByteBuffer> chunks) {
+        for (ByteBuffer chunk : chunks) {
+            chunk.clear();
+            freeChunks.addFirst(chunk);
+        }
+        notifyAll();
+    }
+
+    public synchronized long getUsedBytes() {
+        return (long) (allocatedChunks - freeChunks.size()) * chunkSize;
+    }
+}
@@ -14,9 +14,17 @@
 
 package com.starrocks.connector.flink.manager;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.apache.flink.shaded.guava30.com.google.common.base.Strings;
 
@@ -24,7 +32,23 @@ public class StarRocksSinkBufferEntity implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    private static final int OPEN = 0;
+    private static final int WRITING = 1;
+    private static final int SEALED = 2;
+    // estimated heap of an entry of the key index besides the key bytes: the map node, the ByteBuffer, the array header and the Integer
+    private static final int KEY_INDEX_ENTRY_OVERHEAD = 96;
+    private static final AtomicIntegerFieldUpdater<StarRocksSinkBufferEntity> WRITE_STATE =
+        AtomicIntegerFieldUpdater.newUpdater(StarRocksSinkBufferEntity.class, "writeState");
+
+    // the non-transient fields are the ones Kryo wrote the batches of the legacy `buffered-rows` state with: the fields added
+    // since are transient so that the state is still read, `StarRocksSinkBufferEntitySerializer` writes the ones it needs itself
     private ArrayList<byte[]> buffer = new ArrayList<>();
+    // off-heap storage: rows are appended back to back into the chunks of the arena
+    private transient StarRocksSinkBufferArena arena;
+    private transient List<ByteBuffer> chunks;
+    private transient int[] rowLengths;
     private int batchCount = 0;
     private long batchSize = 0;
     private String label;
@@ -32,6 +56,20 @@ public class StarRocksSinkBufferEntity implements Serializable {
     private String table;
     private boolean EOF;
     private String labelPrefix;
+    // columns of the rows with `sink.partial-update`, null if the rows have all the columns
+    private transient String[] partialColumns;
+    // whether the rows belong to a partition earlier than the latest one written to, with `sink.buffer.partition-grouping`
+    private transient volatile boolean latePartition;
+    // whether a failed load of the batch skips fetching the error log of StarRocks, for the halves of a bisected batch which are split again
+    private transient boolean errorLogSkipped;
+    // slot in `buffer` of the last row of each primary key, with `sink.buffer.compaction` or `sink.partial-update`
+    private transient Map<ByteBuffer, Integer> keyIndex;
+    // heap taken by the keys and the entries of `keyIndex`
+    private transient long keyIndexBytes;
+    // when the first row was buffered, 0 for the batches restored from the `buffered-rows` state
+    private transient long createTime = System.currentTimeMillis();
+    // handoff between the thread appending rows and the one sealing the batch for a load, see `beginWrite` and `seal`
+    private transient volatile int writeState;
 
     public StarRocksSinkBufferEntity(String database, String table, String labelPrefix) {
         this.database = database;
@@ -40,6 +78,15 @@ public class StarRocksSinkBufferEntity implements Serializable {
         label = createBatchLabel();
     }
 
+    public StarRocksSinkBufferEntity(String database, String table, String labelPrefix, StarRocksSinkBufferArena arena) {
+        this(database, table, labelPrefix);
+        if (null != arena) {
+            this.arena = arena;
+            this.chunks = new ArrayList<>();
+            this.rowLengths = new int[16];
+        }
+    }
+
     public StarRocksSinkBufferEntity asEOF() {
         EOF = true;
         return this;
@@ -65,19 +112,311 @@ public class StarRocksSinkBufferEntity implements Serializable {
         this.table = table;
     }
 
+    public String getLabelPrefix() {
+        return labelPrefix;
+    }
+
+    public String[] getPartialColumns() {
+        return partialColumns;
+    }
+
+    void setPartialColumns(String[] partialColumns) {
+        this.partialColumns = partialColumns;
+    }
+
+    public boolean isErrorLogSkipped() {
+        return errorLogSkipped;
+    }
+
+    void setErrorLogSkipped(boolean errorLogSkipped) {
+        this.errorLogSkipped = errorLogSkipped;
+    }
+
+    public boolean isLatePartition() {
+        return latePartition;
+    }
+
+    public void setLatePartition(boolean latePartition) {
+        this.latePartition = latePartition;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
     public String getLabel() {
         return label;
     }
 
+    /**
+     * @return the buffered rows, which are copied out of the chunks for the off-heap buffers.
+     */
     public ArrayList<byte[]> getBuffer() {
-        return buffer;
+        if (null == arena) {
+            return buffer;
+        }
+        ArrayList<byte[]> rows = new ArrayList<>(batchCount);
+        long readPos = 0;
+        for (int i = 0; i < batchCount; i++) {
+            byte[] row = new byte[rowLengths[i]];
+            readFromChunks(readPos, row, 0, row.length);
+            readPos += row.length;
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Claim the batch to append rows to it, only one thread is expected to append rows at a time.
+     * The batch is claimed only while a row is copied in, not while waiting for memory, as {@link #seal()} spins on the claim.
+     *
+     * @return false if the batch has been sealed for loading, the rows should go to a new batch then.
+     */
+    public boolean beginWrite() {
+        return WRITE_STATE.compareAndSet(this, OPEN, WRITING);
+    }
+
+    public void endWrite() {
+        writeState = OPEN;
+    }
+
+    /**
+     * Stop the batch from taking more rows, waiting for the rows being appended if any.
+     *
+     * @return false if the batch was sealed already.
+     */
+    public boolean seal() {
+        while (true) {
+            int state = writeState;
+            if (SEALED == state) {
+                return false;
+            }
+            if (OPEN == state && WRITE_STATE.compareAndSet(this, OPEN, SEALED)) {
+                return true;
+            }
+            // the writer holds the batch only to copy a row in, it waits for the memory of the arena without holding it
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Copy the rows in [from, to) to a new batch on heap with a label of its own, to isolate the rows failing the load.
+     */
+    public StarRocksSinkBufferEntity split(int from, int to) {
+        StarRocksSinkBufferEntity part = new StarRocksSinkBufferEntity(database, table, labelPrefix);
+        part.partialColumns = partialColumns;
+        part.createTime = createTime;
+        List<byte[]> rows = null == arena ? buffer : getBuffer();
+        for (int i = from; i < to; i++) {
+            part.addToBuffer(rows.get(i));
+        }
+        return part;
+    }
+
+    public boolean isOffHeap() {
+        return null != arena;
     }
 
     public void addToBuffer(byte[] bts) {
+        if (null != arena) {
+            throw new IllegalStateException("Off-heap buffers should be appended with `tryAddToBuffer` or `addToBuffer(bts, timeoutMs)`.");
+        }
         incBatchCount();
         incBatchSize(bts.length);
         buffer.add(bts);
     }
+
+    /**
+     * Append `len` bytes of `bts` from `off` as the row of the primary `key`. With `compact` the row replaces the row buffered with the same key if any,
+     * taking the slot of the replaced one: rows of different keys do not depend on each other,
+     * and the last row of a key is loaded after all the rows of that key in the previous batches.
+     *
+     * @return the length of the replaced row, or -1 if no row was replaced.
+     */
+    public int addToBuffer(ByteBuffer key, byte[] bts, int off, int len, boolean compact) {
+        if (null != arena) {
+            throw new IllegalStateException("Off-heap buffers do not support `sink.buffer.compaction` or `sink.partial-update`.");
+        }
+        byte[] row = Arrays.copyOfRange(bts, off, off + len);
+        if (null == keyIndex) {
+            keyIndex = new HashMap<>();
+        }
+        Integer slot = compact ? keyIndex.putIfAbsent(key, buffer.size()) : keyIndex.put(key, buffer.size());
+        if (null == slot) {
+            keyIndexBytes += key.remaining() + KEY_INDEX_ENTRY_OVERHEAD;
+        }
+        if (null == slot || !compact) {
+            addToBuffer(row);
+            return -1;
+        }
+        byte[] replaced = buffer.set(slot, row);
+        incBatchSize(len - replaced.length);
+        return replaced.length;
+    }
+
+    /**
+     * @return true if a row of the primary `key` has been appended with {@link #addToBuffer(ByteBuffer, byte[], int, int, boolean)}.
+     */
+    public boolean containsKey(ByteBuffer key) {
+        return null != keyIndex && keyIndex.containsKey(key);
+    }
+
+    /**
+     * Append the row without waiting for memory of the arena.
+     *
+     * @return false if the arena has no free chunk left, the row is not added then.
+     */
+    public boolean tryAddToBuffer(byte[] bts) {
+        if (null == arena) {
+            addToBuffer(bts);
+            return true;
+        }
+        return tryAddToBuffer(bts, 0, bts.length);
+    }
+
+    /**
+     * Append `len` bytes of `bts` from `off` as a row, the bytes are copied so that `bts` can be reused.
+     *
+     * @return false if the arena has no free chunk left, the row is not added then.
+     */
+    public boolean tryAddToBuffer(byte[] bts, int off, int len) {
+        if (null == arena) {
+            addToBuffer(Arrays.copyOfRange(bts, off, off + len));
+            return true;
+        }
+        while (getCapacity() - batchSize < len) {
+            ByteBuffer chunk = arena.tryAllocate();
+            if (null == chunk) {
+                return false;
+            }
+            chunks.add(chunk);
+        }
+        appendToChunks(bts, off, len);
+        return true;
+    }
+
+    /**
+     * Append the row, waiting at most `timeoutMs` for the loaded batches to give their memory back to the arena.
+     *
+     * @return false if the arena had no free chunk in time, the row is not added then.
+     */
+    public boolean addToBuffer(byte[] bts, long timeoutMs) throws InterruptedException {
+        if (null == arena) {
+            addToBuffer(bts);
+            return true;
+        }
+        return addToBuffer(bts, 0, bts.length, timeoutMs);
+    }
+
+    /**
+     * Append `len` bytes of `bts` from `off` as a row, waiting at most `timeoutMs` for memory of the arena.
+     *
+     * @return false if the arena had no free chunk in time, the row is not added then.
+     */
+    public boolean addToBuffer(byte[] bts, int off, int len, long timeoutMs) throws InterruptedException {
+        if (null == arena) {
+            addToBuffer(Arrays.copyOfRange(bts, off, off + len));
+            return true;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (getCapacity() - batchSize < len) {
+            ByteBuffer chunk = arena.allocate(Math.max(0, deadline - System.currentTimeMillis()));
+            if (null == chunk) {
+                return false;
+            }
+            chunks.add(chunk);
+        }
+        appendToChunks(bts, off, len);
+        return true;
+    }
+
+    /**
+     * Write all the rows to `out`, separated with `rowDelimiter`.
+     */
+    public void writeRows(OutputStream out, byte[] rowDelimiter, boolean delimitLastRow) throws IOException {
+        if (null == arena) {
+            boolean isFirstRow = true;
+            for (byte[] row : buffer) {
+                if (!isFirstRow) {
+                    out.write(rowDelimiter);
+                }
+                out.write(row);
+                isFirstRow = false;
+            }
+        } else {
+            byte[] transfer = new byte[Math.min(arena.getChunkSize(), TRANSFER_BUFFER_SIZE)];
+            long readPos = 0;
+            for (int i = 0; i < batchCount; i++) {
+                if (i > 0) {
+                    out.write(rowDelimiter);
+                }
+                int remaining = rowLengths[i];
+                while (remaining > 0) {
+                    int len = Math.min(remaining, transfer.length);
+                    readFromChunks(readPos, transfer, 0, len);
+                    out.write(transfer, 0, len);
+                    readPos += len;
+                    remaining -= len;
+                }
+            }
+        }
+        if (delimitLastRow && batchCount > 0) {
+            out.write(rowDelimiter);
+        }
+    }
+
+    /**
+     * Give the off-heap chunks back to the arena, which empties the buffer.
+     */
+    public synchronized void release() {
+        if (null == arena || chunks.isEmpty()) {
+            return;
+        }
+        arena.release(chunks);
+        chunks = new ArrayList<>();
+        rowLengths = new int[16];
+        batchCount = 0;
+        batchSize = 0;
+    }
+
+    private long getCapacity() {
+        return (long) chunks.size() * arena.getChunkSize();
+    }
+
+    private void appendToChunks(byte[] bts, int off, int len) {
+        int chunkSize = arena.getChunkSize();
+        int written = 0;
+        while (written < len) {
+            ByteBuffer chunk = chunks.get((int) ((batchSize + written) / chunkSize));
+            int pos = (int) ((batchSize + written) % chunkSize);
+            int n = Math.min(len - written, chunkSize - pos);
+            chunk.position(pos);
+            chunk.put(bts, off + written, n);
+            written += n;
+        }
+        if (batchCount == rowLengths.length) {
+            rowLengths = Arrays.copyOf(rowLengths, rowLengths.length * 2);
+        }
+        rowLengths[batchCount] = len;
+        incBatchCount();
+        incBatchSize(len);
+    }
+
+    private void readFromChunks(long readPos, byte[] dst, int off, int len) {
+        int chunkSize = arena.getChunkSize();
+        while (len > 0) {
+            // read through a duplicate so that concurrent readers (e.g. a retried request) do not share positions
+            ByteBuffer chunk = chunks.get((int) (readPos / chunkSize)).duplicate();
+            int pos = (int) (readPos % chunkSize);
+            int n = Math.min(len, chunkSize - pos);
+            chunk.position(pos);
+            chunk.get(dst, off, n);
+            readPos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
     public int getBatchCount() {
         return batchCount;
     }
@@ -91,13 +430,33 @@ public class StarRocksSinkBufferEntity implements Serializable {
         this.batchSize += batchSize;
     }
 
+    /**
+     * @return the bytes of the rows and of the index of their primary keys, counted against `sink.buffer.max-bytes`.
+     */
+    public long getBufferedBytes() {
+        return batchSize + keyIndexBytes;
+    }
+
     public synchronized void clear() {
         buffer.clear();
+        keyIndex = null;
+        keyIndexBytes = 0;
+        release();
         batchCount = 0;
         batchSize = 0;
+        createTime = System.currentTimeMillis();
         label = createBatchLabel();
     }
 
+    // restoring a spilled or checkpointed batch keeps its label
+    void setLabel(String label) {
+        this.label = label;
+    }
+
+    void setCreateTime(long createTime) {
+        this.createTime = createTime;
+    }
+
     public String reGenerateLabel() {
         return label = createBatchLabel();
     }
@@ -0,0 +1,243 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager;
+
+import java.io.IOException;
+
+import org.apache.flink.api.common.typeutils.SimpleTypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.common.typeutils.TypeSerializerSnapshot;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputView;
+
+import com.starrocks.connector.flink.row.sink.StarRocksByteSink;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Serializer of the batches checkpointed with `exactly-once`, replacing the Kryo fallback of the generic type.
+ * A batch is written as a header (format version, database, table, label, label prefix, create time, row count and bytes)
+ * followed by blocks of rows. A block starts with its row count, its raw length and its stored length,
+ * then holds the rows, each prefixed with its varint length, lz4 compressed if `sink.exactly-once.state-compression`
+ * is enabled and the block shrinks. Blocks describe their own compression, so the option can be switched between restores.
+ */
+public class StarRocksSinkBufferEntitySerializer extends TypeSerializer<StarRocksSinkBufferEntity> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final boolean compression;
+    // reused by the serializing thread, the serializer is duplicated for every other one
+    private transient StarRocksByteSink block;
+    private transient byte[] compressed;
+
+    public StarRocksSinkBufferEntitySerializer(boolean compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    public boolean isImmutableType() {
+        return false;
+    }
+
+    @Override
+    public TypeSerializer<StarRocksSinkBufferEntity> duplicate() {
+        return new StarRocksSinkBufferEntitySerializer(compression);
+    }
+
+    @Override
+    public StarRocksSinkBufferEntity createInstance() {
+        return new StarRocksSinkBufferEntity(null, null, null);
+    }
+
+    @Override
+    public StarRocksSinkBufferEntity copy(StarRocksSinkBufferEntity from) {
+        StarRocksSinkBufferEntity copy = new StarRocksSinkBufferEntity(from.getDatabase(), from.getTable(), from.getLabelPrefix());
+        copy.setLabel(from.getLabel());
+        copy.setCreateTime(from.getCreateTime());
+        // rows are never modified once buffered
+        for (byte[] row : from.getBuffer()) {
+            copy.addToBuffer(row);
+        }
+        return copy;
+    }
+
+    @Override
+    public StarRocksSinkBufferEntity copy(StarRocksSinkBufferEntity from, StarRocksSinkBufferEntity reuse) {
+        return copy(from);
+    }
+
+    @Override
+    public int getLength() {
+        return -1;
+    }
+
+    @Override
+    public void serialize(StarRocksSinkBufferEntity record, DataOutputView target) throws IOException {
+        target.writeByte(FORMAT_VERSION);
+        writeNullableString(record.getDatabase(), target);
+        writeNullableString(record.getTable(), target);
+        writeNullableString(record.getLabel(), target);
+        writeNullableString(record.getLabelPrefix(), target);
+        target.writeLong(record.getCreateTime());
+        target.writeInt(record.getBatchCount());
+        target.writeLong(record.getBatchSize());
+        if (null == block) {
+            block = new StarRocksByteSink(BLOCK_SIZE + BLOCK_SIZE / 8);
+        }
+        block.reset();
+        int blockRows = 0;
+        for (byte[] row : record.getBuffer()) {
+            writeVarInt(row.length, block);
+            block.write(row, 0, row.length);
+            blockRows++;
+            if (block.size() >= BLOCK_SIZE) {
+                writeBlock(blockRows, target);
+                block.reset();
+                blockRows = 0;
+            }
+        }
+        if (blockRows > 0) {
+            writeBlock(blockRows, target);
+        }
+    }
+
+    private void writeBlock(int rows, DataOutputView target) throws IOException {
+        target.writeInt(rows);
+        target.writeInt(block.size());
+        if (compression) {
+            LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+            int maxLength = compressor.maxCompressedLength(block.size());
+            if (null == compressed || compressed.length < maxLength) {
+                compressed = new byte[maxLength];
+            }
+            int length = compressor.compress(block.getBuffer(), 0, block.size(), compressed, 0, compressed.length);
+            if (length < block.size()) {
+                target.writeInt(length);
+                target.write(compressed, 0, length);
+                return;
+            }
+        }
+        // stored as it is, the stored length equals the raw one
+        target.writeInt(block.size());
+        target.write(block.getBuffer(), 0, block.size());
+    }
+
+    @Override
+    public StarRocksSinkBufferEntity deserialize(DataInputView source) throws IOException {
+        int version = source.readByte();
+        if (FORMAT_VERSION != version) {
+            throw new IOException(String.format("Unsupported format version %d of the checkpointed StarRocks batch.", version));
+        }
+        String database = readNullableString(source);
+        String table = readNullableString(source);
+        String label = readNullableString(source);
+        String labelPrefix = readNullableString(source);
+        StarRocksSinkBufferEntity record = new StarRocksSinkBufferEntity(database, table, labelPrefix);
+        record.setLabel(label);
+        record.setCreateTime(source.readLong());
+        int rowCount = source.readInt();
+        source.readLong();
+        int rows = 0;
+        while (rows < rowCount) {
+            int blockRows = source.readInt();
+            int rawLength = source.readInt();
+            int storedLength = source.readInt();
+            byte[] stored = new byte[storedLength];
+            source.readFully(stored);
+            byte[] raw = stored;
+            if (storedLength != rawLength) {
+                raw = new byte[rawLength];
+                LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+                decompressor.decompress(stored, 0, raw, 0, rawLength);
+            }
+            int pos = 0;
+            for (int i = 0; i < blockRows; i++) {
+                int length = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = raw[pos++];
+                    length |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                byte[] row = new byte[length];
+                System.arraycopy(raw, pos, row, 0, length);
+                pos += length;
+                record.addToBuffer(row);
+            }
+            rows += blockRows;
+        }
+        return record;
+    }
+
+    @Override
+    public StarRocksSinkBufferEntity deserialize(StarRocksSinkBufferEntity reuse, DataInputView source) throws IOException {
+        return deserialize(source);
+    }
+
+    @Override
+    public void copy(DataInputView source, DataOutputView target) throws IOException {
+        serialize(deserialize(source), target);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof StarRocksSinkBufferEntitySerializer && compression == ((StarRocksSinkBufferEntitySerializer) obj).compression;
+    }
+
+    @Override
+    public int hashCode() {
+        return Boolean.hashCode(compression);
+    }
+
+    @Override
+    public TypeSerializerSnapshot<StarRocksSinkBufferEntity> snapshotConfiguration() {
+        return new StarRocksSinkBufferEntitySerializerSnapshot();
+    }
+
+    private static void writeNullableString(String val, DataOutputView target) throws IOException {
+        target.writeBoolean(null != val);
+        if (null != val) {
+            target.writeUTF(val);
+        }
+    }
+
+    private static String readNullableString(DataInputView source) throws IOException {
+        return source.readBoolean() ? source.readUTF() : null;
+    }
+
+    private static void writeVarInt(int val, StarRocksByteSink sink) {
+        while ((val & ~0x7f) != 0) {
+            sink.write((val & 0x7f) | 0x80);
+            val >>>= 7;
+        }
+        sink.write(val);
+    }
+
+    /**
+     * Reading does not depend on the compression of the serializer, which makes all of them compatible as they are.
+     */
+    public static final class StarRocksSinkBufferEntitySerializerSnapshot extends SimpleTypeSerializerSnapshot<StarRocksSinkBufferEntity> {
+
+        public StarRocksSinkBufferEntitySerializerSnapshot() {
+            super(() -> new StarRocksSinkBufferEntitySerializer(false));
+        }
+    }
+}
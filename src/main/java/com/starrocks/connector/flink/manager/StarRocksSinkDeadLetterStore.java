@@ -0,0 +1,90 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.fastjson.JSON;
+
+/**
+ * Dead-letter file of the rows failing the load on data quality, with `sink.dead-letter.dir`.
+ * Each sink has a file of its own in the directory, created with the first row, holding a json object per line:
+ * the database, the table and the label of the failed load, the error (with the error log of StarRocks if any) and the row.
+ */
+public class StarRocksSinkDeadLetterStore implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(StarRocksSinkDeadLetterStore.class);
+
+    private static final String FILE_PREFIX = "starrocks-dead-letter-";
+
+    private final String dir;
+    private transient File file;
+    private transient FileOutputStream out;
+
+    public StarRocksSinkDeadLetterStore(String dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Append the rows of the batch whose load failed with `error`, synced to the disk before returning.
+     */
+    public synchronized void write(StarRocksSinkBufferEntity batch, Exception error) throws IOException {
+        if (null == out) {
+            File parent = new File(dir);
+            if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                throw new IOException("Failed to create the dead-letter directory " + parent);
+            }
+            file = new File(parent, FILE_PREFIX + UUID.randomUUID() + ".jsonl");
+            out = new FileOutputStream(file, true);
+            LOG.info(String.format("Writing the rows failing the load to %s.", file));
+        }
+        for (byte[] row : batch.getBuffer()) {
+            Map<String, Object> letter = new LinkedHashMap<>();
+            letter.put("database", batch.getDatabase());
+            letter.put("table", batch.getTable());
+            letter.put("label", batch.getLabel());
+            letter.put("error", error.getMessage());
+            letter.put("row", new String(row, StandardCharsets.UTF_8));
+            out.write(JSON.toJSONString(letter).getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+        }
+        out.getFD().sync();
+    }
+
+    public synchronized void close() {
+        if (null == out) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            LOG.warn(String.format("Failed to close the dead-letter file %s.", file), e);
+        } finally {
+            out = null;
+        }
+    }
+}
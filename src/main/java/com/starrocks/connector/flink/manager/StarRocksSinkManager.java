@@ -14,6 +14,7 @@
 
 package com.starrocks.connector.flink.manager;
 
+import org.apache.flink.metrics.Gauge;
 import org.apache.flink.metrics.Histogram;
 import org.apache.flink.runtime.metrics.DescriptiveStatisticsHistogram;
 import org.apache.flink.table.api.TableSchema;
@@ -25,17 +26,31 @@ import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import com.starrocks.connector.flink.connection.StarRocksJdbcConnectionOptions;
@@ -45,10 +60,13 @@ import com.starrocks.connector.flink.table.sink.StarRocksSinkSemantic;
 
 import org.apache.flink.api.common.functions.RuntimeContext;
 import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.streaming.api.operators.StreamingRuntimeContext;
 import org.apache.flink.util.concurrent.ExecutorThreadFactory;
 import org.apache.flink.calcite.shaded.com.google.common.collect.Lists;
 import org.apache.flink.table.api.TableColumn;
 import org.apache.flink.table.api.constraints.UniqueConstraint;
+import org.apache.http.pool.PoolStats;
 
 public class StarRocksSinkManager implements Serializable {
 
@@ -61,14 +79,26 @@ public class StarRocksSinkManager implements Serializable {
     private final StarRocksStreamLoadVisitor starrocksStreamLoadVisitor;
     private final StarRocksSinkOptions sinkOptions;
     private final Map<String, List<LogicalTypeRoot>> typesMap;
-    final LinkedBlockingDeque<StarRocksSinkBufferEntity> flushQueue = new LinkedBlockingDeque<>(1);
+    private final boolean orderedLoading;
+    // `exactly-once` by stream load transactions, otherwise the rows are buffered until checkpoints with `exactly-once`
+    private final boolean transactional;
+    // batches reaching the flush thresholds are spilled to local segment files until checkpoints, with `sink.exactly-once.spill`
+    private final boolean spilling;
+    private final StarRocksSinkBatchController batchController;
+    private final StarRocksSinkRetryPolicy retryPolicy;
+    // batches failing on data quality are bisected down to the failing rows, which go there, with `sink.dead-letter.dir`
+    private final StarRocksSinkDeadLetterStore deadLetterStore;
 
     private transient Counter totalFlushBytes;
+    private transient Counter totalFlushUncompressedBytes;
+    private transient Counter totalFlushCompressedBytes;
     private transient Counter totalFlushRows;
     private transient Counter totalFlushTime;
     private transient Counter totalFlushTimeWithoutRetries;
     private transient Counter totalFlushSucceededTimes;
     private transient Counter totalFlushFailedTimes;
+    private transient Counter totalCompactedRows;
+    private transient Counter totalDeadLetterRows;
     private transient Histogram flushTimeNs;
     private transient Histogram offerTimeNs;
 
@@ -81,13 +111,29 @@ public class StarRocksSinkManager implements Serializable {
 
 
     private static final String COUNTER_TOTAL_FLUSH_BYTES = "totalFlushBytes";
+    private static final String COUNTER_TOTAL_FLUSH_UNCOMPRESSED_BYTES = "totalFlushUncompressedBytes";
+    private static final String COUNTER_TOTAL_FLUSH_COMPRESSED_BYTES = "totalFlushCompressedBytes";
     private static final String COUNTER_TOTAL_FLUSH_ROWS = "totalFlushRows";
     private static final String COUNTER_TOTAL_FLUSH_COST_TIME_WITHOUT_RETRIES = "totalFlushTimeNsWithoutRetries";
     private static final String COUNTER_TOTAL_FLUSH_COST_TIME = "totalFlushTimeNs";
     private static final String COUNTER_TOTAL_FLUSH_SUCCEEDED_TIMES = "totalFlushSucceededTimes";
     private static final String COUNTER_TOTAL_FLUSH_FAILED_TIMES = "totalFlushFailedTimes";
+    private static final String COUNTER_TOTAL_COMPACTED_ROWS = "totalCompactedRows";
+    private static final String COUNTER_TOTAL_DEAD_LETTER_ROWS = "totalDeadLetterRows";
     private static final String HISTOGRAM_FLUSH_TIME= "flushTimeNs";
     private static final String HISTOGRAM_OFFER_TIME_NS = "offerTimeNs";
+    private static final String GAUGE_HTTP_LEASED_CONNECTIONS = "httpLeasedConnections";
+    private static final String GAUGE_HTTP_AVAILABLE_CONNECTIONS = "httpAvailableConnections";
+    private static final String GAUGE_HTTP_PENDING_CONNECTIONS = "httpPendingConnections";
+    private static final String GAUGE_OFF_HEAP_BUFFER_USED_BYTES = "offHeapBufferUsedBytes";
+    private static final String GAUGE_FLUSH_THRESHOLD_BYTES = "flushThresholdBytes";
+    private static final String GAUGE_FLUSH_THRESHOLD_ROWS = "flushThresholdRows";
+    private static final String GAUGE_TOTAL_BUFFERED_BYTES = "totalBufferedBytes";
+    // registered under the `database` and `table` groups of every buffered table
+    private static final String GAUGE_BUFFERED_BYTES = "bufferedBytes";
+    private static final String GAUGE_FLUSH_LAG_MS = "flushLagMs";
+    private static final String GAUGE_RETRY_QUEUE_DEPTH = "retryQueueDepth";
+    private static final String GAUGE_RETRY_QUEUE_MAX_AGE_MS = "retryQueueMaxAgeMs";
 
     // from stream load result
     private static final String COUNTER_NUMBER_FILTERED_ROWS = "totalFilteredRows";
@@ -98,13 +144,45 @@ public class StarRocksSinkManager implements Serializable {
     private static final String HISTOGRAM_LOAD_TIME_MS = "loadTimeMs";
 
     private final Map<String, StarRocksSinkBufferEntity> bufferMap = new ConcurrentHashMap<>();
-    private long FLUSH_QUEUE_POLL_TIMEOUT = 3000;
+    // bytes of the rows in `bufferMap`, bounded by `sink.buffer.max-bytes`
+    private final AtomicLong bufferedBytes = new AtomicLong();
     private volatile boolean closed = false;
     private volatile boolean flushThreadAlive = false;
     private volatile Throwable flushException;
 
+    // flushed batches are loaded by a pool of workers, at most `sink.io.max-inflight-loads` of them at a time
+    private ExecutorService flushExecutor;
+    private Semaphore inflightLoads;
+    // tail of the loads of each table, to keep the loading order of the same table
+    private Map<String, CompletableFuture<Void>> loadingLanes;
+    // failed batches wait for their backoff here, off the flush workers, and are retried by them afterwards
+    private ScheduledExecutorService retryExecutor;
+    // the retries waiting for their backoff, with the time they started to wait
+    private Map<CompletableFuture<Void>, Long> parkedRetries;
+    // zero-length arrays are used as serializable locks
+    private final Object[] schedulerLock = new Object[0];
+    private final Object[] metricsLock = new Object[0];
+    private final Object[] arenaLock = new Object[0];
+
     private ScheduledExecutorService scheduler;
     private ScheduledFuture<?> scheduledFuture;
+    // direct memory of the off-heap buffers, created on first use with `sink.buffer.off-heap`
+    private transient volatile StarRocksSinkBufferArena bufferArena;
+    private transient MetricGroup metricGroup;
+    private transient Set<String> tableMetricKeys;
+    // time from the first row of the last loaded batch of each table to the end of its load
+    private final Map<String, Long> tableFlushLags = new ConcurrentHashMap<>();
+    // transaction of each table taking the batches flushed since the last checkpoint, with `sink.exactly-once.transaction`
+    private final Map<String, StarRocksSinkTransaction> openTransactions = new ConcurrentHashMap<>();
+    // labels reserved at the last checkpoint for the next transaction of each table, checkpointed so that
+    // the transactions begun after it are known, and rolled back, if the job restores from it
+    private final Map<String, StarRocksSinkTransaction> nextTransactions = new ConcurrentHashMap<>();
+    // batches spilled since the last checkpoint, guarded by the manager
+    private final List<StarRocksSinkSegment> spilledSegments = new ArrayList<>();
+    // segments loaded by the checkpoint they were spilled for, kept until a later checkpoint completes, guarded by the manager
+    private final NavigableMap<Long, List<StarRocksSinkSegment>> loadedSegments = new TreeMap<>();
+    private transient String[] spillTmpDirs;
+    private transient StarRocksSinkSpillStore spillStore;
 
     public StarRocksSinkManager(StarRocksSinkOptions sinkOptions, TableSchema flinkSchema) {
         this.sinkOptions = sinkOptions;
@@ -127,120 +205,461 @@ public class StarRocksSinkManager implements Serializable {
         typesMap.put("varchar", Lists.newArrayList(LogicalTypeRoot.VARCHAR, LogicalTypeRoot.ARRAY, LogicalTypeRoot.MAP, LogicalTypeRoot.ROW));
         typesMap.put("string", Lists.newArrayList(LogicalTypeRoot.CHAR, LogicalTypeRoot.VARCHAR, LogicalTypeRoot.ARRAY, LogicalTypeRoot.MAP, LogicalTypeRoot.ROW));
         validateTableStructure(flinkSchema);
+        if (null != flinkSchema && sinkOptions.isSinkPartialUpdate() && !sinkOptions.supportUpsertDelete()) {
+            throw new IllegalArgumentException(String.format("`%s` is only supported for primary-key tables.", StarRocksSinkOptions.SINK_PARTIAL_UPDATE.key()));
+        }
+        this.transactional = sinkOptions.isSinkExactlyOnceTransaction();
+        this.spilling = sinkOptions.isSinkExactlyOnceSpill();
+        // batches of the same table must be loaded one by one if the table is (or might be) a primary-key table,
+        // or if they are loaded into the same transaction
+        this.orderedLoading = null == flinkSchema || sinkOptions.supportUpsertDelete() || transactional;
+        this.batchController = new StarRocksSinkBatchController(sinkOptions);
+        this.retryPolicy = new StarRocksSinkRetryPolicy(sinkOptions);
+        this.deadLetterStore = null == sinkOptions.getSinkDeadLetterDir() ? null : new StarRocksSinkDeadLetterStore(sinkOptions.getSinkDeadLetterDir());
         String version = this.starrocksQueryVisitor.getStarRocksVersion();
         this.starrocksStreamLoadVisitor = new StarRocksStreamLoadVisitor(
             sinkOptions,
+            // the backends are listed on a timer of their own, with a connection not shared with the queries of the sink
+            new StarRocksQueryVisitor(new StarRocksJdbcConnectionProvider(jdbcOptions), sinkOptions.getDatabaseName(), sinkOptions.getTableName()),
             null == flinkSchema ? new String[]{} : flinkSchema.getFieldNames(),
             version.length() > 0 && !version.trim().startsWith("1.")
         );
     }
 
     public void setRuntimeContext(RuntimeContext runtimeCtx) {
-        totalFlushBytes = runtimeCtx.getMetricGroup().counter(COUNTER_TOTAL_FLUSH_BYTES);
-        totalFlushRows = runtimeCtx.getMetricGroup().counter(COUNTER_TOTAL_FLUSH_ROWS);
-        totalFlushTime = runtimeCtx.getMetricGroup().counter(COUNTER_TOTAL_FLUSH_COST_TIME);
-        totalFlushTimeWithoutRetries = runtimeCtx.getMetricGroup().counter(COUNTER_TOTAL_FLUSH_COST_TIME_WITHOUT_RETRIES);
-        totalFlushSucceededTimes = runtimeCtx.getMetricGroup().counter(COUNTER_TOTAL_FLUSH_SUCCEEDED_TIMES);
-        totalFlushFailedTimes = runtimeCtx.getMetricGroup().counter(COUNTER_TOTAL_FLUSH_FAILED_TIMES);
-        flushTimeNs = runtimeCtx.getMetricGroup().histogram(HISTOGRAM_FLUSH_TIME, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
-        offerTimeNs = runtimeCtx.getMetricGroup().histogram(HISTOGRAM_OFFER_TIME_NS, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
-
-        totalFilteredRows = runtimeCtx.getMetricGroup().counter(COUNTER_NUMBER_FILTERED_ROWS);
-        commitAndPublishTimeMs = runtimeCtx.getMetricGroup().histogram(HISTOGRAM_COMMIT_AND_PUBLISH_TIME_MS, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
-        streamLoadPutTimeMs = runtimeCtx.getMetricGroup().histogram(HISTOGRAM_STREAM_LOAD_PUT_TIME_MS, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
-        readDataTimeMs = runtimeCtx.getMetricGroup().histogram(HISTOGRAM_READ_DATA_TIME_MS, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
-        writeDataTimeMs = runtimeCtx.getMetricGroup().histogram(HISTOGRAM_WRITE_DATA_TIME_MS, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
-        loadTimeMs = runtimeCtx.getMetricGroup().histogram(HISTOGRAM_LOAD_TIME_MS, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
+        setRuntimeContext(runtimeCtx.getMetricGroup(), runtimeCtx instanceof StreamingRuntimeContext ?
+            ((StreamingRuntimeContext) runtimeCtx).getTaskManagerRuntimeInfo().getTmpDirectories() : null);
     }
 
-    public void startAsyncFlushing() {
-        // start flush thread
-        Thread flushThread = new Thread(() -> {
-            while (true) {
-                try {
-                    if (!asyncFlush()) {
-                        LOG.info("StarRocks flush thread is about to exit.");
-                        flushThreadAlive = false;
-                        break;
-                    }
-                } catch (Exception e) {
-                    flushException = e;
-                }
-            }
+    /**
+     * For the writers of the unified sink, which have a metric group but no runtime context.
+     *
+     * @param tmpDirs directories of the spilled segments, null for the tmp directory of the JVM.
+     */
+    public void setRuntimeContext(MetricGroup runtimeMetricGroup, String[] tmpDirs) {
+        totalFlushBytes = runtimeMetricGroup.counter(COUNTER_TOTAL_FLUSH_BYTES);
+        totalFlushUncompressedBytes = runtimeMetricGroup.counter(COUNTER_TOTAL_FLUSH_UNCOMPRESSED_BYTES);
+        totalFlushCompressedBytes = runtimeMetricGroup.counter(COUNTER_TOTAL_FLUSH_COMPRESSED_BYTES);
+        totalFlushRows = runtimeMetricGroup.counter(COUNTER_TOTAL_FLUSH_ROWS);
+        totalFlushTime = runtimeMetricGroup.counter(COUNTER_TOTAL_FLUSH_COST_TIME);
+        totalFlushTimeWithoutRetries = runtimeMetricGroup.counter(COUNTER_TOTAL_FLUSH_COST_TIME_WITHOUT_RETRIES);
+        totalFlushSucceededTimes = runtimeMetricGroup.counter(COUNTER_TOTAL_FLUSH_SUCCEEDED_TIMES);
+        totalFlushFailedTimes = runtimeMetricGroup.counter(COUNTER_TOTAL_FLUSH_FAILED_TIMES);
+        totalCompactedRows = runtimeMetricGroup.counter(COUNTER_TOTAL_COMPACTED_ROWS);
+        totalDeadLetterRows = runtimeMetricGroup.counter(COUNTER_TOTAL_DEAD_LETTER_ROWS);
+        flushTimeNs = runtimeMetricGroup.histogram(HISTOGRAM_FLUSH_TIME, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
+        offerTimeNs = runtimeMetricGroup.histogram(HISTOGRAM_OFFER_TIME_NS, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
+
+        totalFilteredRows = runtimeMetricGroup.counter(COUNTER_NUMBER_FILTERED_ROWS);
+        commitAndPublishTimeMs = runtimeMetricGroup.histogram(HISTOGRAM_COMMIT_AND_PUBLISH_TIME_MS, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
+        streamLoadPutTimeMs = runtimeMetricGroup.histogram(HISTOGRAM_STREAM_LOAD_PUT_TIME_MS, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
+        readDataTimeMs = runtimeMetricGroup.histogram(HISTOGRAM_READ_DATA_TIME_MS, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
+        writeDataTimeMs = runtimeMetricGroup.histogram(HISTOGRAM_WRITE_DATA_TIME_MS, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
+        loadTimeMs = runtimeMetricGroup.histogram(HISTOGRAM_LOAD_TIME_MS, new DescriptiveStatisticsHistogram(sinkOptions.getSinkHistogramWindowSize()));
+
+        starrocksStreamLoadVisitor.open();
+        starrocksStreamLoadVisitor.getLoadUrlRouter().registerMetrics(runtimeMetricGroup);
+        runtimeMetricGroup.gauge(GAUGE_HTTP_LEASED_CONNECTIONS, (Gauge<Integer>) () -> {
+            PoolStats stats = starrocksStreamLoadVisitor.getHttpConnectionPoolStats();
+            return null == stats ? 0 : stats.getLeased();
+        });
+        runtimeMetricGroup.gauge(GAUGE_HTTP_AVAILABLE_CONNECTIONS, (Gauge<Integer>) () -> {
+            PoolStats stats = starrocksStreamLoadVisitor.getHttpConnectionPoolStats();
+            return null == stats ? 0 : stats.getAvailable();
+        });
+        runtimeMetricGroup.gauge(GAUGE_HTTP_PENDING_CONNECTIONS, (Gauge<Integer>) () -> {
+            PoolStats stats = starrocksStreamLoadVisitor.getHttpConnectionPoolStats();
+            return null == stats ? 0 : stats.getPending();
+        });
+        metricGroup = runtimeMetricGroup;
+        spillTmpDirs = tmpDirs;
+        tableMetricKeys = ConcurrentHashMap.newKeySet();
+        runtimeMetricGroup.gauge(GAUGE_TOTAL_BUFFERED_BYTES, (Gauge<Long>) bufferedBytes::get);
+        runtimeMetricGroup.gauge(GAUGE_FLUSH_THRESHOLD_BYTES, (Gauge<Long>) batchController::getFlushBytes);
+        runtimeMetricGroup.gauge(GAUGE_FLUSH_THRESHOLD_ROWS, (Gauge<Long>) batchController::getFlushRows);
+        runtimeMetricGroup.gauge(GAUGE_RETRY_QUEUE_DEPTH, (Gauge<Integer>) () -> {
+            Map<CompletableFuture<Void>, Long> parked = parkedRetries;
+            return null == parked ? 0 : parked.size();
         });
+        runtimeMetricGroup.gauge(GAUGE_RETRY_QUEUE_MAX_AGE_MS, (Gauge<Long>) () -> {
+            Map<CompletableFuture<Void>, Long> parked = parkedRetries;
+            long now = System.currentTimeMillis();
+            return null == parked ? 0L : parked.values().stream().mapToLong(since -> now - since).max().orElse(0L);
+        });
+        if (sinkOptions.isSinkBufferOffHeap()) {
+            runtimeMetricGroup.gauge(GAUGE_OFF_HEAP_BUFFER_USED_BYTES, (Gauge<Long>) () -> {
+                StarRocksSinkBufferArena arena = bufferArena;
+                return null == arena ? 0L : arena.getUsedBytes();
+            });
+        }
+    }
 
-        flushThread.setUncaughtExceptionHandler((t, e) -> {
+    public void startAsyncFlushing() {
+        // start flush workers
+        this.inflightLoads = new Semaphore(sinkOptions.getSinkMaxInflightLoads());
+        this.loadingLanes = new ConcurrentHashMap<>();
+        this.flushExecutor = Executors.newFixedThreadPool(sinkOptions.getSinkIoThreadCount(), new ExecutorThreadFactory("starrocks-flush", (t, e) -> {
             LOG.error("StarRocks flush thread uncaught exception occurred: " + e.getMessage(), e);
             flushException = e;
-            flushThreadAlive = false;
-        });
-        flushThread.setName("starrocks-flush");
-        flushThread.setDaemon(true);
-        flushThread.start();
+        }));
+        this.parkedRetries = new ConcurrentHashMap<>();
+        this.retryExecutor = Executors.newSingleThreadScheduledExecutor(new ExecutorThreadFactory("starrocks-load-retry"));
         flushThreadAlive = true;
     }
 
     public void startScheduler() throws IOException {
-        if (StarRocksSinkSemantic.EXACTLY_ONCE.equals(sinkOptions.getSemantic())) {
+        if (isBufferingUntilCheckpoint()) {
             return;
         }
-        stopScheduler();
-        this.scheduler = Executors.newScheduledThreadPool(1, new ExecutorThreadFactory("starrocks-interval-sink"));
-        this.scheduledFuture = this.scheduler.schedule(() -> {
-            synchronized (StarRocksSinkManager.this) {
-                if (!closed) {
-                    try {
-                        LOG.info("StarRocks interval Sinking triggered.");
-                        if (bufferMap.isEmpty()) {
-                            startScheduler();
+        synchronized (schedulerLock) {
+            stopScheduler();
+            this.scheduler = Executors.newScheduledThreadPool(1, new ExecutorThreadFactory("starrocks-interval-sink"));
+            this.scheduledFuture = this.scheduler.schedule(() -> {
+                synchronized (StarRocksSinkManager.this) {
+                    if (!closed) {
+                        try {
+                            LOG.info("StarRocks interval Sinking triggered.");
+                            if (bufferMap.isEmpty()) {
+                                startScheduler();
+                            }
+                            flushOnInterval();
+                        } catch (Exception e) {
+                            flushException = e;
                         }
-                        flush(null, false);
-                    } catch (Exception e) {
-                        flushException = e;
                     }
                 }
+            }, sinkOptions.getSinkMaxFlushInterval(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Flush all the batches, except for the ones of late partitions with `sink.buffer.partition-grouping`,
+     * which wait until they are older than `sink.buffer.partition-grouping.late-flush-interval-ms`
+     * so that the late rows are loaded in a few larger batches rather than along with every batch of the latest partition.
+     */
+    private synchronized void flushOnInterval() throws Exception {
+        if (!sinkOptions.isSinkPartitionGrouping()) {
+            flush(null, false);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean deferred = false;
+        for (Map.Entry<String, StarRocksSinkBufferEntity> entry : bufferMap.entrySet()) {
+            StarRocksSinkBufferEntity bufferEntity = entry.getValue();
+            if (bufferEntity.isLatePartition() && now - bufferEntity.getCreateTime() < sinkOptions.getSinkPartitionGroupingLateFlushInterval()) {
+                deferred = true;
+                continue;
             }
-        }, sinkOptions.getSinkMaxFlushInterval(), TimeUnit.MILLISECONDS);
+            flushInternal(entry.getKey(), false);
+        }
+        if (deferred) {
+            // the loads restart the scheduler once they are done, which they might not if only late batches are left
+            startScheduler();
+        }
     }
 
     public void stopScheduler() {
-        if (this.scheduledFuture != null) {
-            scheduledFuture.cancel(false);
-            this.scheduler.shutdown();
+        synchronized (schedulerLock) {
+            if (this.scheduledFuture != null) {
+                scheduledFuture.cancel(false);
+                this.scheduler.shutdown();
+            }
         }
     }
 
-    public final synchronized void writeRecords(String database, String table, String... records) throws IOException {
+    /**
+     * Rows are appended without taking the monitor of the manager, so that the scheduler and the loads never
+     * block the writing thread: flushing removes a batch from the map and seals it, the writer moves on to a new batch.
+     * Only one thread is expected to write rows at a time, as the sink function does.
+     */
+    public final void writeRecords(String database, String table, String... records) throws IOException {
         checkFlushException();
         try {
             if (0 == records.length) return;
             String bufferKey = String.format("%s,%s", database, table);
-            StarRocksSinkBufferEntity bufferEntity = bufferMap.computeIfAbsent(bufferKey, k -> new StarRocksSinkBufferEntity(database, table, sinkOptions.getLabelPrefix()));
+            StarRocksSinkBufferEntity bufferEntity = null;
             for (String record : records) {
                 byte[] bts = record.getBytes(StandardCharsets.UTF_8);
-                bufferEntity.addToBuffer(bts);
+                bufferEntity = beginWrite(bufferKey, database, table);
+                boolean added;
+                try {
+                    added = bufferEntity.tryAddToBuffer(bts);
+                } finally {
+                    bufferEntity.endWrite();
+                }
+                if (!added) {
+                    bufferEntity = waitForOffHeapBuffer(bufferKey, bufferEntity, bts, 0, bts.length);
+                }
+                bufferedBytes.addAndGet(bts.length);
             }
-            if (StarRocksSinkSemantic.EXACTLY_ONCE.equals(sinkOptions.getSemantic())) {
-                return;
+            flushIfFull(bufferKey, bufferEntity);
+            flushIfOverBudget();
+        } catch (Exception e) {
+            throw new IOException("Writing records to StarRocks failed.", e);
+        }
+    }
+
+    /**
+     * Write a single serialized row, `length` bytes of `record` from `offset` are copied into the buffer
+     * so that the caller can reuse `record` for the next row.
+     */
+    public final void writeRecord(String database, String table, byte[] record, int offset, int length) throws IOException {
+        writeRecord(database, table, null, false, record, offset, length);
+    }
+
+    /**
+     * Write a single serialized row of a `partition` of the table with `sink.buffer.partition-grouping`,
+     * the rows of each partition go to a batch of their own.
+     *
+     * @param partition null if the partition of the row is unknown, it goes to the batch of the table then.
+     * @param latePartition whether the partition is earlier than the latest one written to, its batch is flushed on a longer interval then.
+     */
+    public final void writeRecord(String database, String table, String partition, boolean latePartition, byte[] record, int offset, int length) throws IOException {
+        checkFlushException();
+        try {
+            String bufferKey = getBufferKey(database, table, null, partition);
+            StarRocksSinkBufferEntity bufferEntity = beginWrite(bufferKey, database, table);
+            boolean added;
+            try {
+                bufferEntity.setLatePartition(latePartition);
+                added = bufferEntity.tryAddToBuffer(record, offset, length);
+            } finally {
+                bufferEntity.endWrite();
             }
-            if (bufferEntity.getBatchCount() >= sinkOptions.getSinkMaxRows() || bufferEntity.getBatchSize() >= sinkOptions.getSinkMaxBytes()) {
-                LOG.info(String.format("StarRocks buffer Sinking triggered: db: [%s] table: [%s] rows[%d] label[%s].", database, table, bufferEntity.getBatchCount(), bufferEntity.getLabel()));
-                flush(bufferKey, false);
+            if (!added) {
+                bufferEntity = waitForOffHeapBuffer(bufferKey, bufferEntity, record, offset, length);
             }
+            bufferedBytes.addAndGet(length);
+            flushIfFull(bufferKey, bufferEntity);
+            flushIfOverBudget();
         } catch (Exception e) {
             throw new IOException("Writing records to StarRocks failed.", e);
         }
     }
 
-    public synchronized void flush(String bufferKey, boolean waitUtilDone) throws Exception {
-        if (bufferMap.isEmpty()) {
-            flushInternal(null, waitUtilDone);
+    /**
+     * Write a single serialized row of a primary-key table with `sink.buffer.compaction` or `sink.partial-update`.
+     * With `sink.buffer.compaction` the row replaces the row of the same primary `key` in the current batch if any.
+     * With `sink.partial-update` the rows of each set of `partialColumns` go to a batch of their own, which is
+     * loaded with those columns only. The batches of the other column sets holding a row of the same key are flushed first,
+     * so that the rows of a key are loaded in the order they are written.
+     */
+    public final void writeRecord(String database, String table, String[] partialColumns, ByteBuffer key, byte[] record, int offset, int length) throws IOException {
+        writeRecord(database, table, null, false, partialColumns, key, record, offset, length);
+    }
+
+    /**
+     * Write a single serialized row of a primary-key table with `sink.buffer.compaction` or `sink.partial-update`,
+     * to the batch of its `partition` with `sink.buffer.partition-grouping`.
+     * The partition column is part of the primary key, the rows of a key always go to the same partition.
+     */
+    public final void writeRecord(String database, String table, String partition, boolean latePartition,
+                                  String[] partialColumns, ByteBuffer key, byte[] record, int offset, int length) throws IOException {
+        checkFlushException();
+        try {
+            String bufferKey = getBufferKey(database, table, partialColumns, partition);
+            if (null != partialColumns) {
+                flushOtherColumnSets(bufferKey, database, table, key);
+            }
+            StarRocksSinkBufferEntity bufferEntity = beginWrite(bufferKey, database, table, partialColumns);
+            int replacedLength;
+            long entityBytes = bufferEntity.getBufferedBytes();
+            try {
+                bufferEntity.setLatePartition(latePartition);
+                replacedLength = bufferEntity.addToBuffer(key, record, offset, length, sinkOptions.isSinkBufferCompaction());
+            } finally {
+                bufferEntity.endWrite();
+            }
+            // the row, less the one it replaced, and its key if it is new to the batch
+            bufferedBytes.addAndGet(bufferEntity.getBufferedBytes() - entityBytes);
+            if (replacedLength >= 0 && null != totalCompactedRows) {
+                totalCompactedRows.inc();
+            }
+            flushIfFull(bufferKey, bufferEntity);
+            flushIfOverBudget();
+        } catch (Exception e) {
+            throw new IOException("Writing records to StarRocks failed.", e);
+        }
+    }
+
+    private static String getBufferKey(String database, String table, String[] partialColumns, String partition) {
+        String bufferKey = null == partialColumns ?
+            String.format("%s,%s", database, table) : String.format("%s,%s,%s", database, table, String.join(",", partialColumns));
+        return null == partition ? bufferKey : String.format("%s#%s", bufferKey, partition);
+    }
+
+    /**
+     * Flush the batches of the rows of no known partition of the table with `sink.buffer.partition-grouping`,
+     * once the partitions are fetched again: the next rows of their keys might go to the batches of new partitions,
+     * which have to be loaded after them.
+     */
+    public void flushUnknownPartitions(String database, String table) throws Exception {
+        for (Map.Entry<String, StarRocksSinkBufferEntity> entry : bufferMap.entrySet()) {
+            StarRocksSinkBufferEntity bufferEntity = entry.getValue();
+            if (database.equals(bufferEntity.getDatabase()) && table.equals(bufferEntity.getTable()) &&
+                entry.getKey().equals(getBufferKey(database, table, bufferEntity.getPartialColumns(), null))) {
+                flush(entry.getKey(), false);
+            }
+        }
+    }
+
+    // a table has a batch per column set written since the last flush, which are few
+    private void flushOtherColumnSets(String bufferKey, String database, String table, ByteBuffer key) throws Exception {
+        for (Map.Entry<String, StarRocksSinkBufferEntity> entry : bufferMap.entrySet()) {
+            StarRocksSinkBufferEntity bufferEntity = entry.getValue();
+            if (!bufferKey.equals(entry.getKey()) && null != bufferEntity.getPartialColumns() && bufferEntity.containsKey(key) &&
+                database.equals(bufferEntity.getDatabase()) && table.equals(bufferEntity.getTable())) {
+                flush(entry.getKey(), false);
+            }
+        }
+    }
+
+    private StarRocksSinkBufferEntity beginWrite(String bufferKey, String database, String table) {
+        return beginWrite(bufferKey, database, table, null);
+    }
+
+    private StarRocksSinkBufferEntity beginWrite(String bufferKey, String database, String table, String[] partialColumns) {
+        while (true) {
+            StarRocksSinkBufferEntity bufferEntity = getOrCreateBufferEntity(bufferKey, database, table, partialColumns);
+            if (bufferEntity.beginWrite()) {
+                return bufferEntity;
+            }
+            // sealed by a concurrent flush, which removed it from the map already
+        }
+    }
+
+    private StarRocksSinkBufferEntity waitForOffHeapBuffer(String bufferKey, StarRocksSinkBufferEntity bufferEntity, byte[] bts, int offset, int length) throws Exception {
+        // the off-heap memory is used up: flush what has been buffered and wait for the loads to give memory back
+        String database = bufferEntity.getDatabase();
+        String table = bufferEntity.getTable();
+        LOG.info(String.format("StarRocks off-heap buffer is full, Sinking triggered: db: [%s] table: [%s] rows[%d].", database, table, bufferEntity.getBatchCount()));
+        flush(null, false);
+        long deadline = System.currentTimeMillis() + sinkOptions.getSinkOfferTimeout();
+        while (true) {
+            // wait without holding the batch, so that the scheduler can seal it meanwhile, the row goes to a new batch then
+            if (!getBufferArena().awaitFreeChunk(Math.max(0, deadline - System.currentTimeMillis()))) {
+                throw new RuntimeException(
+                    "Timeout while waiting for the off-heap buffer, exceed " + sinkOptions.getSinkOfferTimeout() + " ms, see " +
+                        StarRocksSinkOptions.SINK_BUFFER_OFF_HEAP_MAX_BYTES.key());
+            }
+            bufferEntity = beginWrite(bufferKey, database, table);
+            boolean added;
+            try {
+                added = bufferEntity.tryAddToBuffer(bts, offset, length);
+            } finally {
+                bufferEntity.endWrite();
+            }
+            if (added) {
+                return bufferEntity;
+            }
+        }
+    }
+
+    private void flushIfFull(String bufferKey, StarRocksSinkBufferEntity bufferEntity) throws Exception {
+        if (isBufferingUntilCheckpoint() && !spilling) {
+            return;
+        }
+        if (bufferEntity.getBatchCount() >= batchController.getFlushRows() || bufferEntity.getBatchSize() >= batchController.getFlushBytes()) {
+            if (spilling) {
+                spill(bufferKey);
+                return;
+            }
+            LOG.info(String.format("StarRocks buffer Sinking triggered: db: [%s] table: [%s] rows[%d] label[%s].",
+                bufferEntity.getDatabase(), bufferEntity.getTable(), bufferEntity.getBatchCount(), bufferEntity.getLabel()));
+            flush(bufferKey, false);
+        }
+    }
+
+    /**
+     * Flush the largest buffers while the rows buffered across all the tables exceed `sink.buffer.max-bytes`.
+     * Offering blocks while `sink.io.max-inflight-loads` batches are being loaded, which holds the writer back
+     * when the loads can not keep up.
+     */
+    private void flushIfOverBudget() throws Exception {
+        if (isBufferingUntilCheckpoint()) {
+            return;
+        }
+        long maxBytes = sinkOptions.getSinkBufferMaxBytes();
+        while (bufferedBytes.get() > maxBytes) {
+            String largestKey = null;
+            long largestSize = 0;
+            for (Map.Entry<String, StarRocksSinkBufferEntity> entry : bufferMap.entrySet()) {
+                long size = entry.getValue().getBufferedBytes();
+                if (size > largestSize) {
+                    largestKey = entry.getKey();
+                    largestSize = size;
+                }
+            }
+            if (null == largestKey) {
+                return;
+            }
+            LOG.info(String.format("StarRocks buffers exceed %d bytes, Sinking triggered: buffer[%s] bytes[%d] total bytes[%d].",
+                maxBytes, largestKey, largestSize, bufferedBytes.get()));
+            flush(largestKey, false);
+        }
+    }
+
+    private boolean isBufferingUntilCheckpoint() {
+        return StarRocksSinkSemantic.EXACTLY_ONCE.equals(sinkOptions.getSemantic()) && !transactional;
+    }
+
+    private StarRocksSinkBufferEntity getOrCreateBufferEntity(String bufferKey, String database, String table, String[] partialColumns) {
+        // lock-free lookup first, `computeIfAbsent` locks the bin even if the key is there
+        StarRocksSinkBufferEntity bufferEntity = bufferMap.get(bufferKey);
+        if (null != bufferEntity) {
+            return bufferEntity;
+        }
+        registerTableMetrics(String.format("%s,%s", database, table), database, table);
+        return bufferMap.computeIfAbsent(bufferKey, k -> {
+            StarRocksSinkBufferEntity created = new StarRocksSinkBufferEntity(database, table, sinkOptions.getLabelPrefix(), getBufferArena());
+            created.setPartialColumns(partialColumns);
+            return created;
+        });
+    }
+
+    private void registerTableMetrics(String bufferKey, String database, String table) {
+        if (null == metricGroup || !tableMetricKeys.add(bufferKey)) {
             return;
         }
+        MetricGroup tableMetricGroup = metricGroup.addGroup("database", database).addGroup("table", table);
+        tableMetricGroup.gauge(GAUGE_BUFFERED_BYTES, (Gauge<Long>) () -> {
+            if (sinkOptions.isSinkPartialUpdate() || sinkOptions.isSinkPartitionGrouping()) {
+                // the batches of all the column sets and partitions of the table
+                long bytes = 0;
+                for (StarRocksSinkBufferEntity bufferEntity : bufferMap.values()) {
+                    if (database.equals(bufferEntity.getDatabase()) && table.equals(bufferEntity.getTable())) {
+                        bytes += bufferEntity.getBufferedBytes();
+                    }
+                }
+                return bytes;
+            }
+            StarRocksSinkBufferEntity bufferEntity = bufferMap.get(bufferKey);
+            return null == bufferEntity ? 0L : bufferEntity.getBufferedBytes();
+        });
+        tableMetricGroup.gauge(GAUGE_FLUSH_LAG_MS, (Gauge<Long>) () -> tableFlushLags.getOrDefault(bufferKey, 0L));
+    }
+
+    private StarRocksSinkBufferArena getBufferArena() {
+        if (!sinkOptions.isSinkBufferOffHeap()) {
+            return null;
+        }
+        if (null == bufferArena) {
+            synchronized (arenaLock) {
+                if (null == bufferArena) {
+                    bufferArena = new StarRocksSinkBufferArena(sinkOptions.getSinkBufferOffHeapChunkSize(), sinkOptions.getSinkBufferOffHeapMaxBytes());
+                }
+            }
+        }
+        return bufferArena;
+    }
+
+    public synchronized void flush(String bufferKey, boolean waitUtilDone) throws Exception {
         if (null == bufferKey) {
+            // offer the batches of all the tables before waiting, so that they are loaded concurrently by the flush workers
             for (String key : bufferMap.keySet()) {
-                flushInternal(key, waitUtilDone);
+                flushInternal(key, false);
             }
+            flushInternal(null, waitUtilDone);
             return;
         }
         flushInternal(bufferKey, waitUtilDone);
@@ -254,8 +673,12 @@ public class StarRocksSinkManager implements Serializable {
             }
             return;
         }
-        offer(bufferMap.get(bufferKey));
-        bufferMap.remove(bufferKey);
+        // rows appended from now on go to a new batch
+        StarRocksSinkBufferEntity bufferEntity = bufferMap.remove(bufferKey);
+        if (null != bufferEntity && bufferEntity.seal()) {
+            bufferedBytes.addAndGet(-bufferEntity.getBufferedBytes());
+            offer(bufferEntity);
+        }
         if (waitUtilDone) {
             // wait the last flush
             waitAsyncFlushingDone();
@@ -270,101 +693,503 @@ public class StarRocksSinkManager implements Serializable {
                 scheduledFuture.cancel(false);
                 scheduler.shutdown();
             }
-            if (jdbcConnProvider != null) {
-                jdbcConnProvider.close();
-            }
 
             if (flushException != null) {
                 offerEOF();
+                if (transactional) {
+                    rollbackTransactions();
+                }
+                deleteSpilledSegments();
+                starrocksStreamLoadVisitor.close();
+                closeJdbcConnection();
                 checkFlushException();
                 return;
             }
             try {
                 LOG.info("StarRocks Sink is about to close.");
-                flush(null, true);
+                if (transactional) {
+                    // cancelled, or failed: the rows after the last checkpoint are loaded again from there and
+                    // prepared transactions are left to be committed. At the end of the input they are all committed before.
+                    waitAsyncFlushingDone();
+                    rollbackTransactions();
+                } else {
+                    if (spilling) {
+                        // spilled before the rows still buffered
+                        for (StarRocksSinkSegment segment : spilledSegments) {
+                            offer(StarRocksSinkSpillStore.read(segment, sinkOptions.getLabelPrefix()));
+                        }
+                    }
+                    flush(null, true);
+                }
             } catch (Exception e) {
                 throw new RuntimeException("Writing records to StarRocks failed.", e);
             } finally {
-              offerEOF();
+                // loaded, or loaded again from the last checkpoint after a failover
+                deleteSpilledSegments();
+                offerEOF();
+                // stops the refresh of the backends before the connection goes
+                starrocksStreamLoadVisitor.close();
+                closeJdbcConnection();
             }
         }
         checkFlushException();
     }
 
+    private void closeJdbcConnection() {
+        if (jdbcConnProvider != null) {
+            jdbcConnProvider.close();
+        }
+    }
+
+    /**
+     * Load all the buffered rows and prepare the open transactions, with `sink.exactly-once.transaction`.
+     * The rows flushed from now on go to new transactions.
+     *
+     * @return the prepared transactions, to be committed once the checkpoint completes.
+     */
+    public synchronized List<StarRocksSinkTransaction> prepareTransactions() throws Exception {
+        flush(null, true);
+        List<StarRocksSinkTransaction> prepared = new ArrayList<>(openTransactions.size());
+        for (Map.Entry<String, StarRocksSinkTransaction> entry : openTransactions.entrySet()) {
+            StarRocksSinkTransaction txn = entry.getValue();
+            starrocksStreamLoadVisitor.prepareTransaction(txn);
+            prepared.add(txn);
+            nextTransactions.put(entry.getKey(), new StarRocksSinkTransaction(txn.getDatabase(), txn.getTable(), createTransactionLabel()));
+        }
+        openTransactions.clear();
+        return prepared;
+    }
+
+    /**
+     * @return the transactions to be begun next, with their labels reserved at the last {@link #prepareTransactions},
+     *         to be checkpointed with the prepared ones.
+     */
+    public List<StarRocksSinkTransaction> getNextTransactions() {
+        return new ArrayList<>(nextTransactions.values());
+    }
+
+    /**
+     * Restore the transactions of a completed checkpoint: the prepared ones are committed, and the transactions begun
+     * after the checkpoint, prepared for one which never completed, are rolled back. Their labels are reused by the
+     * next transactions, so that a failover before the next checkpoint rolls them back again.
+     * The transactions of the tables first loaded after the checkpoint are not known, StarRocks aborts them on timeout.
+     */
+    public void restoreTransactions(List<StarRocksSinkTransaction> prepared, List<StarRocksSinkTransaction> next) throws IOException {
+        commitTransactions(prepared);
+        for (StarRocksSinkTransaction txn : next) {
+            try {
+                starrocksStreamLoadVisitor.rollbackTransaction(txn);
+            } catch (Exception e) {
+                // not begun before the failover, or aborted already
+                LOG.info(String.format("Transaction %s is not rolled back: %s", txn, e.getMessage()));
+            }
+            nextTransactions.put(String.format("%s,%s", txn.getDatabase(), txn.getTable()), txn);
+        }
+    }
+
+    public void commitTransactions(List<StarRocksSinkTransaction> transactions) throws IOException {
+        for (StarRocksSinkTransaction txn : transactions) {
+            starrocksStreamLoadVisitor.commitTransaction(txn);
+        }
+    }
+
+    private String createTransactionLabel() {
+        String labelPrefix = sinkOptions.getLabelPrefix();
+        return (null == labelPrefix ? "" : labelPrefix) + UUID.randomUUID();
+    }
+
+    private void rollbackTransactions() {
+        for (StarRocksSinkTransaction txn : openTransactions.values()) {
+            try {
+                starrocksStreamLoadVisitor.rollbackTransaction(txn);
+            } catch (Exception e) {
+                // StarRocks aborts it on timeout anyway
+                LOG.warn(String.format("Failed to roll back the transaction %s.", txn), e);
+            }
+        }
+        openTransactions.clear();
+    }
+
+    private synchronized void spill(String bufferKey) throws IOException {
+        StarRocksSinkBufferEntity bufferEntity = bufferMap.remove(bufferKey);
+        if (null == bufferEntity || !bufferEntity.seal()) {
+            return;
+        }
+        bufferedBytes.addAndGet(-bufferEntity.getBufferedBytes());
+        if (0 == bufferEntity.getBatchCount()) {
+            return;
+        }
+        if (null == spillStore) {
+            openSpillStore("", new HashSet<>());
+        }
+        StarRocksSinkSegment segment = spillStore.spill(bufferEntity);
+        LOG.info(String.format("StarRocks buffer spilled: %s.", segment));
+        spilledSegments.add(segment);
+    }
+
+    /**
+     * Spill all the buffered rows, with `sink.exactly-once.spill`.
+     *
+     * @return the segments spilled since the last checkpoint, to be loaded once the checkpoint is taken.
+     */
+    public synchronized List<StarRocksSinkSegment> spillBufferedBatches() throws IOException {
+        for (String bufferKey : bufferMap.keySet()) {
+            spill(bufferKey);
+        }
+        List<StarRocksSinkSegment> segments = new ArrayList<>(spilledSegments);
+        spilledSegments.clear();
+        return segments;
+    }
+
+    /**
+     * Spill to directories of their own under the tmp ones, and delete the segments there not referenced by the restored checkpoint.
+     *
+     * @param name of the spill directories, unique to the subtask of the sink.
+     */
+    public synchronized void openSpillStore(String name, Set<String> referencedPaths) {
+        spillStore = new StarRocksSinkSpillStore(null == spillTmpDirs ? new String[]{System.getProperty("java.io.tmpdir")} : spillTmpDirs, name);
+        spillStore.deleteUnreferenced(referencedPaths);
+    }
+
+    /**
+     * Load the segments spilled for a checkpoint in order, at most `sink.io.max-inflight-loads` of them are read back into memory at a time.
+     * The segment files are kept for a restore from the checkpoint, until {@link #deleteLoadedSegments} with a later one.
+     *
+     * @param checkpointId of the checkpoint the segments were spilled for.
+     */
+    public synchronized void loadSegments(long checkpointId, List<StarRocksSinkSegment> segments) throws Exception {
+        for (StarRocksSinkSegment segment : segments) {
+            offer(StarRocksSinkSpillStore.read(segment, sinkOptions.getLabelPrefix()));
+        }
+        waitAsyncFlushingDone();
+        loadedSegments.computeIfAbsent(checkpointId, id -> new ArrayList<>()).addAll(segments);
+    }
+
+    /**
+     * Delete the files of the segments loaded, which the completed checkpoint does not reference any more.
+     */
+    public synchronized void deleteLoadedSegments(long completedCheckpointId) {
+        NavigableMap<Long, List<StarRocksSinkSegment>> released = loadedSegments.headMap(completedCheckpointId, false);
+        for (List<StarRocksSinkSegment> segments : released.values()) {
+            segments.forEach(StarRocksSinkSpillStore::delete);
+        }
+        released.clear();
+    }
+
+    private void deleteSpilledSegments() {
+        spilledSegments.forEach(StarRocksSinkSpillStore::delete);
+        spilledSegments.clear();
+    }
+
+    /**
+     * @return the rows of `SHOW PARTITIONS` of the table.
+     */
+    public List<Map<String, Object>> getTablePartitions() {
+        return starrocksQueryVisitor.getTablePartitions();
+    }
+
     public Map<String, StarRocksSinkBufferEntity> getBufferedBatchMap() {
         Map<String, StarRocksSinkBufferEntity> clone = new HashMap<>();
         clone.putAll(bufferMap);
         return clone;
     }
 
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
     public void setBufferedBatchMap(Map<String, StarRocksSinkBufferEntity> bufferMap) throws IOException {
-        if (!StarRocksSinkSemantic.EXACTLY_ONCE.equals(sinkOptions.getSemantic())) {
+        if (!isBufferingUntilCheckpoint()) {
             return;
         }
         this.bufferMap.clear();
         this.bufferMap.putAll(bufferMap);
+        bufferedBytes.set(bufferMap.values().stream().mapToLong(StarRocksSinkBufferEntity::getBufferedBytes).sum());
     }
 
     /**
-     * @return false if met eof and flush thread will exit.
+     * Load the batch, retrying on failures.
+     * The returned future is done once the batch is committed, which might be later than the return of the method
+     * if the label already exists: its state is polled in the background, the flush worker moves on to other batches.
      */
-    private boolean asyncFlush() throws Exception {
-        StarRocksSinkBufferEntity flushData = flushQueue.poll(FLUSH_QUEUE_POLL_TIMEOUT, TimeUnit.MILLISECONDS);
-        if (flushData == null || (0 == flushData.getBatchCount() && !flushData.EOF())) {
-            return true;
-        }
-        if (flushData.EOF()) {
-            return false;
+    private CompletableFuture<Void> asyncFlush(StarRocksSinkBufferEntity flushData) throws Exception {
+        if (0 == flushData.getBatchCount()) {
+            return CompletableFuture.completedFuture(null);
         }
         stopScheduler();
         LOG.info(String.format("Async stream load: db[%s] table[%s] rows[%d] bytes[%d] label[%s].", flushData.getDatabase(), flushData.getTable(), flushData.getBatchCount(), flushData.getBatchSize(), flushData.getLabel()));
-        long startWithRetries = System.nanoTime();
-        for (int i = 0; i <= sinkOptions.getSinkMaxRetries(); i++) {
-            try {
-                long start = System.nanoTime();
-                // flush to StarRocks with stream load
-                Map<String, Object> result = starrocksStreamLoadVisitor.doStreamLoad(flushData);
-                LOG.info(String.format("Async stream load finished: label[%s].", flushData.getLabel()));
-                // metrics
-                if (null != totalFlushBytes) {
-                    totalFlushBytes.inc(flushData.getBatchSize());
-                    totalFlushRows.inc(flushData.getBatchCount());
-                    totalFlushTime.inc(System.nanoTime() - startWithRetries);
-                    totalFlushTimeWithoutRetries.inc(System.nanoTime() - start);
-                    totalFlushSucceededTimes.inc();
-                    flushTimeNs.update(System.nanoTime() - start);
-                    updateMetricsFromStreamLoadResult(result);
+        // built once, the rows are written (and compressed) again from the buffer by retries
+        StarRocksStreamLoadEntity loadEntity = starrocksStreamLoadVisitor.createStreamLoadEntity(flushData);
+        if (transactional) {
+            loadInTransaction(flushData, loadEntity);
+            return CompletableFuture.completedFuture(null);
+        }
+        return asyncFlush(flushData, loadEntity, 0, System.nanoTime(), null);
+    }
+
+    /**
+     * Load the batch into the open transaction of its table, beginning one if there is none.
+     * Failures are not retried: the data loaded into the transaction so far is unknown, the transaction is rolled back
+     * and the job restarts from the last checkpoint.
+     */
+    private void loadInTransaction(StarRocksSinkBufferEntity flushData, StarRocksStreamLoadEntity loadEntity) throws Exception {
+        String bufferKey = String.format("%s,%s", flushData.getDatabase(), flushData.getTable());
+        StarRocksSinkTransaction txn = openTransactions.get(bufferKey);
+        long start = System.nanoTime();
+        try {
+            if (null == txn) {
+                txn = nextTransactions.remove(bufferKey);
+                if (null == txn) {
+                    txn = new StarRocksSinkTransaction(flushData.getDatabase(), flushData.getTable(), flushData.getLabel());
                 }
-                startScheduler();
-                break;
-            } catch (Exception e) {
-                if (totalFlushFailedTimes != null) {
+                starrocksStreamLoadVisitor.beginTransaction(txn);
+                openTransactions.put(bufferKey, txn);
+            }
+            Map<String, Object> result = starrocksStreamLoadVisitor.doTransactionLoad(txn, flushData, loadEntity);
+            onLoadFinished(flushData, loadEntity, result, start, start);
+        } catch (Exception e) {
+            if (totalFlushFailedTimes != null) {
+                synchronized (metricsLock) {
                     totalFlushFailedTimes.inc();
                 }
-                LOG.warn("Failed to flush batch data to StarRocks, retry times = {}", i, e);
-                if (i >= sinkOptions.getSinkMaxRetries()) {
-                    throw e;
+            }
+            if (null != txn && openTransactions.remove(bufferKey, txn)) {
+                try {
+                    starrocksStreamLoadVisitor.rollbackTransaction(txn);
+                } catch (Exception ex) {
+                    LOG.warn(String.format("Failed to roll back the transaction %s.", txn), ex);
                 }
-                if (e instanceof StarRocksStreamLoadFailedException && ((StarRocksStreamLoadFailedException)e).needReCreateLabel()) {
-                    String oldLabel = flushData.getLabel();
-                    flushData.reGenerateLabel();
-                    LOG.warn(String.format("Batch label changed from [%s] to [%s]", oldLabel, flushData.getLabel()));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param bisectLoads loads left for the bisection of the batch the halves of which `flushData` is, null if it is a whole batch.
+     */
+    private CompletableFuture<Void> asyncFlush(StarRocksSinkBufferEntity flushData, StarRocksStreamLoadEntity loadEntity, int retry, long startWithRetries,
+                                               AtomicInteger bisectLoads) {
+        long start = System.nanoTime();
+        CompletableFuture<Map<String, Object>> result;
+        Map<String, Object> loadResult;
+        try {
+            // flush to StarRocks with stream load
+            result = starrocksStreamLoadVisitor.doStreamLoadAsync(flushData, loadEntity);
+            loadResult = result.isDone() ? getLoadResult(result) : null;
+        } catch (Exception e) {
+            return retryLater(flushData, loadEntity, e, retry, startWithRetries, bisectLoads);
+        }
+        if (null != loadResult) {
+            onLoadFinished(flushData, loadEntity, loadResult, start, startWithRetries);
+            return CompletableFuture.completedFuture(null);
+        }
+        LOG.info(String.format("Waiting for the state of label[%s].", flushData.getLabel()));
+        return result.handle((r, e) -> {
+            if (null == e) {
+                onLoadFinished(flushData, loadEntity, r, start, startWithRetries);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            return retryLater(flushData, loadEntity, unwrapCompletionException(e), retry, startWithRetries, bisectLoads);
+        }).thenCompose(f -> f);
+    }
+
+    /**
+     * Park the failed batch until its backoff elapses, then retry it on a flush worker.
+     * The workers load the other batches meanwhile, only the batches of the same table wait if they are loaded in order.
+     */
+    private CompletableFuture<Void> retryLater(StarRocksSinkBufferEntity flushData, StarRocksStreamLoadEntity loadEntity, Exception e, int retry, long startWithRetries,
+                                               AtomicInteger bisectLoads) {
+        if (null != deadLetterStore && retryPolicy.isDataQualityError(e)) {
+            return bisect(flushData, e, startWithRetries, null == bisectLoads ? new AtomicInteger(sinkOptions.getSinkDeadLetterMaxBisectLoads()) : bisectLoads);
+        }
+        CompletableFuture<Void> retried = new CompletableFuture<>();
+        long backoffMs;
+        try {
+            backoffMs = onLoadFailed(flushData, e, retry);
+        } catch (Exception ex) {
+            retried.completeExceptionally(ex);
+            return retried;
+        }
+        Map<CompletableFuture<Void>, Long> parked = parkedRetries;
+        parked.put(retried, System.currentTimeMillis());
+        try {
+            retryExecutor.schedule(() -> {
+                if (null == parked.remove(retried)) {
+                    // failed by the closing sink
+                    return;
                 }
                 try {
-                    Thread.sleep(1000l * Math.min(i + 1, 10));
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
-                    throw new IOException("Unable to flush, interrupted while doing another attempt", e);
+                    CompletableFuture.supplyAsync(() -> asyncFlush(flushData, loadEntity, retry + 1, startWithRetries, bisectLoads), flushExecutor)
+                        .thenCompose(f -> f)
+                        .whenComplete((r, ex) -> {
+                            if (null == ex) {
+                                retried.complete(null);
+                            } else {
+                                retried.completeExceptionally(unwrapCompletionException(ex));
+                            }
+                        });
+                } catch (RejectedExecutionException ex) {
+                    retried.completeExceptionally(new IOException("The sink is closed while the batch is waiting to be retried.", e));
+                }
+            }, backoffMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            parked.remove(retried);
+            retried.completeExceptionally(new IOException("The sink is closed while the batch is waiting to be retried.", e));
+        }
+        return retried;
+    }
+
+    /**
+     * Load the halves of a batch failing on data quality one after the other, with labels of their own, splitting the failing
+     * halves again down to the single rows, which are written to the dead-letter file.
+     * Loading the halves in order keeps the order of the rows of the same key.
+     * The halves are loaded `sink.dead-letter.max-bisect-loads` times at most, the failing ones are written to the dead-letter file as a whole then.
+     * A half which is loaded drops the rows StarRocks filters out within `max_filter_ratio`, they are not written to the dead-letter file.
+     *
+     * @param bisectLoads loads left for the halves of the batch, shared by the halves of the halves.
+     */
+    private CompletableFuture<Void> bisect(StarRocksSinkBufferEntity flushData, Exception e, long startWithRetries, AtomicInteger bisectLoads) {
+        if (totalFlushFailedTimes != null) {
+            synchronized (metricsLock) {
+                totalFlushFailedTimes.inc();
+            }
+        }
+        CompletableFuture<Void> bisected = new CompletableFuture<>();
+        if (1 == flushData.getBatchCount() || bisectLoads.get() < 2) {
+            if (1 == flushData.getBatchCount()) {
+                LOG.warn(String.format("Row of the batch with label[%s] failed the load, writing it to the dead-letter file.", flushData.getLabel()), e);
+            } else {
+                LOG.warn(String.format("Batch with label[%s] failed the load, and the halves were loaded %d times already, the limit of `%s`, writing its %d rows to the dead-letter file.",
+                    flushData.getLabel(), sinkOptions.getSinkDeadLetterMaxBisectLoads(), StarRocksSinkOptions.SINK_DEAD_LETTER_MAX_BISECT_LOADS.key(),
+                    flushData.getBatchCount()), e);
+            }
+            try {
+                deadLetterStore.write(flushData, e);
+            } catch (Exception ex) {
+                ex.addSuppressed(e);
+                bisected.completeExceptionally(ex);
+                return bisected;
+            }
+            if (null != totalDeadLetterRows) {
+                synchronized (metricsLock) {
+                    totalDeadLetterRows.inc(flushData.getBatchCount());
                 }
             }
+            bisected.complete(null);
+            return bisected;
+        }
+        bisectLoads.addAndGet(-2);
+        int half = flushData.getBatchCount() / 2;
+        StarRocksSinkBufferEntity left = flushData.split(0, half);
+        StarRocksSinkBufferEntity right = flushData.split(half, flushData.getBatchCount());
+        LOG.warn(String.format("Batch with label[%s] failed the load on data quality, loading its halves with label[%s] and label[%s].",
+            flushData.getLabel(), left.getLabel(), right.getLabel()), e);
+        try {
+            // on the flush workers, this might be called by the label-state poller
+            CompletableFuture.supplyAsync(() -> loadPart(left, startWithRetries, bisectLoads), flushExecutor)
+                .thenCompose(f -> f)
+                .thenComposeAsync(v -> loadPart(right, startWithRetries, bisectLoads), flushExecutor)
+                .whenComplete((r, ex) -> {
+                    if (null == ex) {
+                        bisected.complete(null);
+                    } else {
+                        bisected.completeExceptionally(unwrapCompletionException(ex));
+                    }
+                });
+        } catch (RejectedExecutionException ex) {
+            bisected.completeExceptionally(new IOException("The sink is closed while the batch is being bisected.", e));
+        }
+        return bisected;
+    }
+
+    private CompletableFuture<Void> loadPart(StarRocksSinkBufferEntity part, long startWithRetries, AtomicInteger bisectLoads) {
+        // the halves of the batch are loaded one after another, so the loads left do not change until this half fails:
+        // only the error log of a half written to the dead-letter file on failure is fetched
+        part.setErrorLogSkipped(1 < part.getBatchCount() && 2 <= bisectLoads.get());
+        try {
+            return asyncFlush(part, starrocksStreamLoadVisitor.createStreamLoadEntity(part), 0, startWithRetries, bisectLoads);
+        } catch (IOException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private Map<String, Object> getLoadResult(CompletableFuture<Map<String, Object>> result) throws Exception {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw unwrapCompletionException(e);
+        }
+    }
+
+    private static Exception unwrapCompletionException(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && null != e.getCause()) {
+            e = e.getCause();
+        }
+        return e instanceof Exception ? (Exception) e : new RuntimeException(e);
+    }
+
+    private void onLoadFinished(StarRocksSinkBufferEntity flushData, StarRocksStreamLoadEntity loadEntity, Map<String, Object> result, long start, long startWithRetries) {
+        LOG.info(String.format("Async stream load finished: label[%s].", flushData.getLabel()));
+        tableFlushLags.put(String.format("%s,%s", flushData.getDatabase(), flushData.getTable()), System.currentTimeMillis() - flushData.getCreateTime());
+        batchController.onLoadFinished(flushData.getBatchSize(),
+            getResultValue(result, "LoadTimeMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)),
+            getResultValue(result, "CommitAndPublishTimeMs", 0L));
+        // metrics
+        if (null != totalFlushBytes) {
+            synchronized (metricsLock) {
+                totalFlushBytes.inc(flushData.getBatchSize());
+                totalFlushUncompressedBytes.inc(loadEntity.getUncompressedLength());
+                totalFlushCompressedBytes.inc(loadEntity.getCompressedLength());
+                totalFlushRows.inc(flushData.getBatchCount());
+                totalFlushTime.inc(System.nanoTime() - startWithRetries);
+                totalFlushTimeWithoutRetries.inc(System.nanoTime() - start);
+                totalFlushSucceededTimes.inc();
+                flushTimeNs.update(System.nanoTime() - start);
+                updateMetricsFromStreamLoadResult(result);
+            }
+        }
+        try {
+            startScheduler();
+        } catch (IOException e) {
+            throw new CompletionException(e);
         }
-        return true;
+    }
+
+    /**
+     * @return the backoff before retrying the batch, the failure is thrown if it is not to be retried.
+     */
+    private long onLoadFailed(StarRocksSinkBufferEntity flushData, Exception e, int retry) throws Exception {
+        if (totalFlushFailedTimes != null) {
+            synchronized (metricsLock) {
+                totalFlushFailedTimes.inc();
+            }
+        }
+        LOG.warn("Failed to flush batch data to StarRocks, retry times = {}", retry, e);
+        if (!retryPolicy.shouldRetry(e, retry)) {
+            if (!retryPolicy.isRetriable(e)) {
+                LOG.error(String.format("Failure of the batch with label[%s] is not retriable.", flushData.getLabel()));
+            }
+            throw e;
+        }
+        if (e instanceof StarRocksStreamLoadFailedException && ((StarRocksStreamLoadFailedException)e).needReCreateLabel()) {
+            String oldLabel = flushData.getLabel();
+            flushData.reGenerateLabel();
+            LOG.warn(String.format("Batch label changed from [%s] to [%s]", oldLabel, flushData.getLabel()));
+        }
+        return retryPolicy.getBackoffMs(retry);
     }
 
     private void waitAsyncFlushingDone() throws InterruptedException {
-        // wait for previous flushings
-        offer(new StarRocksSinkBufferEntity(null, null, null));
-        offer(new StarRocksSinkBufferEntity(null, null, null));
+        // wait for previous flushings: all the permits are back once every in-flight load is done
+        if (flushThreadAlive) {
+            int permits = sinkOptions.getSinkMaxInflightLoads();
+            if (!inflightLoads.tryAcquire(permits, sinkOptions.getSinkOfferTimeout(), TimeUnit.MILLISECONDS)) {
+                throw offerTimeoutException();
+            }
+            inflightLoads.release(permits);
+        }
         checkFlushException();
     }
 
@@ -375,21 +1200,62 @@ public class StarRocksSinkManager implements Serializable {
         }
 
         long start = System.nanoTime();
-        if (!flushQueue.offer(bufferEntity, sinkOptions.getSinkOfferTimeout(), TimeUnit.MILLISECONDS)) {
-            throw new RuntimeException(
-                "Timeout while offering data to flushQueue, exceed " + sinkOptions.getSinkOfferTimeout() + " ms, see " +
-                    StarRocksSinkOptions.SINK_BATCH_OFFER_TIMEOUT.key());
+        if (!inflightLoads.tryAcquire(sinkOptions.getSinkOfferTimeout(), TimeUnit.MILLISECONDS)) {
+            throw offerTimeoutException();
         }
         if (offerTimeNs != null) {
             offerTimeNs.update(System.nanoTime() - start);
         }
+        // done once the batch is committed, never exceptionally
+        Supplier<CompletableFuture<Void>> load = () -> {
+            CompletableFuture<Void> committed;
+            try {
+                committed = null == flushException ? asyncFlush(bufferEntity) : CompletableFuture.completedFuture(null);
+            } catch (Throwable e) {
+                committed = new CompletableFuture<>();
+                committed.completeExceptionally(e);
+            }
+            return committed.handle((r, e) -> {
+                if (null != e) {
+                    flushException = unwrapCompletionException(e);
+                }
+                bufferEntity.release();
+                inflightLoads.release();
+                return null;
+            });
+        };
+        if (!orderedLoading) {
+            CompletableFuture.supplyAsync(load, flushExecutor);
+            return;
+        }
+        // the next batch of the table waits for the commit of this one, the batches of the other tables do not
+        String laneKey = String.format("%s,%s", bufferEntity.getDatabase(), bufferEntity.getTable());
+        CompletableFuture<Void> lane = loadingLanes.compute(laneKey,
+            (k, tail) -> (null == tail ? CompletableFuture.supplyAsync(load, flushExecutor) : tail.thenApplyAsync(v -> load.get(), flushExecutor)).thenCompose(f -> f));
+        lane.whenComplete((r, e) -> loadingLanes.remove(laneKey, lane));
+    }
+
+    private RuntimeException offerTimeoutException() {
+        return new RuntimeException(
+            "Timeout while offering data to flushQueue, exceed " + sinkOptions.getSinkOfferTimeout() + " ms, see " +
+                StarRocksSinkOptions.SINK_BATCH_OFFER_TIMEOUT.key());
     }
 
     private void offerEOF() {
-        try {
-            offer(new StarRocksSinkBufferEntity(null, null, null).asEOF());
-        } catch (Exception e) {
-            LOG.warn("Writing EOF failed.", e);
+        if (null == flushExecutor) {
+            return;
+        }
+        LOG.info("StarRocks flush thread is about to exit.");
+        flushExecutor.shutdown();
+        retryExecutor.shutdownNow();
+        for (CompletableFuture<Void> retried : parkedRetries.keySet()) {
+            if (null != parkedRetries.remove(retried)) {
+                retried.completeExceptionally(new IOException("The sink is closed while the batch is waiting to be retried."));
+            }
+        }
+        flushThreadAlive = false;
+        if (null != deadLetterStore) {
+            deadLetterStore.close();
         }
     }
 
@@ -466,6 +1332,18 @@ public class StarRocksSinkManager implements Serializable {
         }
     }
 
+    private long getResultValue(Map<String, Object> result, String key, long defaultValue) {
+        Object val = null == result ? null : result.get(key);
+        if (val != null) {
+            try {
+                return Long.parseLong(val.toString());
+            } catch (NumberFormatException e) {
+                LOG.warn("Parse stream load result metric error", e);
+            }
+        }
+        return defaultValue;
+    }
+
     private void updateCounter(Map<String, Object> result, String key, Counter counter) {
         if (result.containsKey(key)) {
             Object val = result.get(key);
@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.starrocks.connector.flink.table.sink.StarRocksSinkOptions;
+
+/**
+ * Retries of the failed stream loads: which failures are worth retrying and how long to back off before the retry.
+ * Timeouts, connection failures, 5xx responses and aborted labels are retried. Rejected requests (4xx responses other
+ * than a timeout or throttling) and data quality failures are not, loading the same rows again would fail the same way.
+ * The backoff starts from `sink.retry.backoff-ms` and doubles with each retry up to `sink.retry.max-backoff-ms`,
+ * with half of it randomized so that the sinks failing together do not retry together.
+ */
+public class StarRocksSinkRetryPolicy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String RESULT_FAILED = "Fail";
+    // `Message` of the loads failing on the rows themselves, depending on the version of StarRocks
+    private static final String[] DATA_QUALITY_ERRORS = {"too many filtered rows", "DATA_QUALITY_ERROR"};
+
+    private final int maxRetries;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+
+    public StarRocksSinkRetryPolicy(StarRocksSinkOptions sinkOptions) {
+        this.maxRetries = sinkOptions.getSinkMaxRetries();
+        this.backoffMs = sinkOptions.getSinkRetryBackoff();
+        this.maxBackoffMs = sinkOptions.getSinkRetryMaxBackoff();
+    }
+
+    /**
+     * @param retry number of the retries done so far
+     */
+    public boolean shouldRetry(Exception e, int retry) {
+        return retry < maxRetries && isRetriable(e);
+    }
+
+    public boolean isRetriable(Exception e) {
+        if (e instanceof StarRocksStreamLoadFailedException) {
+            StarRocksStreamLoadFailedException failure = (StarRocksStreamLoadFailedException) e;
+            if (failure.needReCreateLabel()) {
+                return true;
+            }
+            int status = failure.getHttpStatus();
+            if (status >= 400 && status < 500) {
+                // request timeout and too many requests
+                return 408 == status || 429 == status;
+            }
+            return !isDataQualityError(e);
+        }
+        if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+            // interrupted rather than timed out, the sink is closing
+            return false;
+        }
+        // timeouts, refused or reset connections and unknown results
+        return e instanceof IOException;
+    }
+
+    /**
+     * @param retry number of the retries done so far
+     * @return the backoff before the next retry, between half and all of the exponential backoff.
+     */
+    public long getBackoffMs(int retry) {
+        long backoff = backoffMs << Math.min(retry, 30);
+        if (backoff <= 0 || backoff > maxBackoffMs) {
+            backoff = maxBackoffMs;
+        }
+        long half = backoff / 2;
+        return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+    }
+
+    /**
+     * @return true if the load failed on the rows themselves, e.g. too many rows were filtered out.
+     */
+    public boolean isDataQualityError(Exception e) {
+        return e instanceof StarRocksStreamLoadFailedException && isDataQualityError(((StarRocksStreamLoadFailedException) e).getFailedResponse());
+    }
+
+    private static boolean isDataQualityError(Map<String, Object> response) {
+        if (null == response || !RESULT_FAILED.equals(response.get("Status"))) {
+            return false;
+        }
+        if (response.containsKey("ErrorURL")) {
+            return true;
+        }
+        Object message = response.get("Message");
+        if (null == message) {
+            return false;
+        }
+        for (String error : DATA_QUALITY_ERRORS) {
+            if (message.toString().contains(error)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager;
+
+import java.io.Serializable;
+
+/**
+ * Descriptor of a batch spilled to a local segment file with `sink.exactly-once.spill`, which is checkpointed instead of the rows.
+ * Kept as a POJO so that flink serializes it without falling back to Kryo.
+ */
+public class StarRocksSinkSegment implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String database;
+    private String table;
+    private String label;
+    private String path;
+    private int rowCount;
+    private long rowBytes;
+
+    public StarRocksSinkSegment() {
+    }
+
+    public StarRocksSinkSegment(String database, String table, String label, String path, int rowCount, long rowBytes) {
+        this.database = database;
+        this.table = table;
+        this.label = label;
+        this.path = path;
+        this.rowCount = rowCount;
+        this.rowBytes = rowBytes;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public void setDatabase(String database) {
+        this.database = database;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public void setTable(String table) {
+        this.table = table;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public long getRowBytes() {
+        return rowBytes;
+    }
+
+    public void setRowBytes(long rowBytes) {
+        this.rowBytes = rowBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("db[%s] table[%s] label[%s] path[%s] rows[%d] bytes[%d]", database, table, label, path, rowCount, rowBytes);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spills sealed batches to memory-mapped segment files under the tmp directories of the task manager, for `sink.exactly-once.spill`.
+ * A segment holds the rows of a batch back to back, each of them prefixed with its length.
+ * Segments are mapped in windows, so that batches larger than 2GB and many segments at a time do not exhaust the address space.
+ */
+public class StarRocksSinkSpillStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StarRocksSinkSpillStore.class);
+
+    private static final long MAPPED_WINDOW_SIZE = 64L * 1024L * 1024L;
+    private static final String SPILL_DIR = "starrocks-sink-spill";
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private final File[] spillDirs;
+    private final AtomicInteger nextDir = new AtomicInteger();
+
+    /**
+     * @param name of the spill directories under the tmp ones, unique to the subtask of the sink.
+     */
+    public StarRocksSinkSpillStore(String[] tmpDirs, String name) {
+        this.spillDirs = new File[tmpDirs.length];
+        for (int i = 0; i < tmpDirs.length; i++) {
+            spillDirs[i] = new File(new File(tmpDirs[i], SPILL_DIR), name);
+        }
+    }
+
+    /**
+     * Delete the segment files of the spill directories not referenced by the restored checkpoint,
+     * spilled by the run which failed or loaded before the checkpoint.
+     */
+    public void deleteUnreferenced(Set<String> referencedPaths) {
+        for (File dir : spillDirs) {
+            File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+            if (null == files) {
+                continue;
+            }
+            for (File file : files) {
+                if (!referencedPaths.contains(file.getAbsolutePath())) {
+                    LOG.info(String.format("Deleting the spilled segment %s referenced by no checkpoint.", file));
+                    try {
+                        Files.deleteIfExists(file.toPath());
+                    } catch (IOException e) {
+                        LOG.warn(String.format("Failed to delete the spilled segment %s.", file), e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the rows of the batch to a new segment file, spreading the segments over the tmp directories.
+     */
+    public StarRocksSinkSegment spill(StarRocksSinkBufferEntity batch) throws IOException {
+        File dir = spillDirs[Math.floorMod(nextDir.getAndIncrement(), spillDirs.length)];
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Failed to create the spill directory " + dir);
+        }
+        File file = new File(dir, batch.getLabel() + SEGMENT_SUFFIX);
+        long length = batch.getBatchSize() + 4L * batch.getBatchCount();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+            MappedSegment segment = new MappedSegment(raf.getChannel(), FileChannel.MapMode.READ_WRITE, length);
+            byte[] rowLength = new byte[4];
+            for (byte[] row : batch.getBuffer()) {
+                writeInt(rowLength, row.length);
+                segment.transfer(rowLength, 0, 4);
+                segment.transfer(row, 0, row.length);
+            }
+            segment.force();
+        } catch (IOException e) {
+            Files.deleteIfExists(file.toPath());
+            throw e;
+        }
+        return new StarRocksSinkSegment(batch.getDatabase(), batch.getTable(), batch.getLabel(), file.getAbsolutePath(), batch.getBatchCount(), batch.getBatchSize());
+    }
+
+    /**
+     * Read the rows of the segment back into a batch with the label of the spilled one,
+     * so that loading a segment twice (e.g. after a failover) is deduplicated by StarRocks.
+     */
+    public static StarRocksSinkBufferEntity read(StarRocksSinkSegment segment, String labelPrefix) throws IOException {
+        File file = new File(segment.getPath());
+        if (!file.isFile()) {
+            throw new FileNotFoundException(String.format("Spilled segment %s is missing, " +
+                "segments are local to the task manager which spilled them and can not be restored elsewhere.", segment));
+        }
+        StarRocksSinkBufferEntity batch = new StarRocksSinkBufferEntity(segment.getDatabase(), segment.getTable(), labelPrefix);
+        batch.setLabel(segment.getLabel());
+        long length = segment.getRowBytes() + 4L * segment.getRowCount();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedSegment mapped = new MappedSegment(raf.getChannel(), FileChannel.MapMode.READ_ONLY, length);
+            byte[] rowLength = new byte[4];
+            for (int i = 0; i < segment.getRowCount(); i++) {
+                mapped.transfer(rowLength, 0, 4);
+                byte[] row = new byte[readInt(rowLength)];
+                mapped.transfer(row, 0, row.length);
+                batch.addToBuffer(row);
+            }
+        }
+        return batch;
+    }
+
+    public static void delete(StarRocksSinkSegment segment) {
+        try {
+            Files.deleteIfExists(new File(segment.getPath()).toPath());
+        } catch (IOException e) {
+            LOG.warn(String.format("Failed to delete the spilled segment %s.", segment), e);
+        }
+    }
+
+    private static void writeInt(byte[] dst, int val) {
+        dst[0] = (byte) (val >>> 24);
+        dst[1] = (byte) (val >>> 16);
+        dst[2] = (byte) (val >>> 8);
+        dst[3] = (byte) val;
+    }
+
+    private static int readInt(byte[] src) {
+        return ((src[0] & 0xff) << 24) | ((src[1] & 0xff) << 16) | ((src[2] & 0xff) << 8) | (src[3] & 0xff);
+    }
+
+    /**
+     * Sequential reads or writes through consecutive mapped windows of a segment file.
+     */
+    private static final class MappedSegment {
+
+        private final FileChannel channel;
+        private final FileChannel.MapMode mode;
+        private final long length;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        private MappedSegment(FileChannel channel, FileChannel.MapMode mode, long length) {
+            this.channel = channel;
+            this.mode = mode;
+            this.length = length;
+        }
+
+        private void transfer(byte[] bytes, int off, int len) throws IOException {
+            while (len > 0) {
+                if (null == window || !window.hasRemaining()) {
+                    nextWindow();
+                }
+                int n = Math.min(len, window.remaining());
+                if (FileChannel.MapMode.READ_ONLY == mode) {
+                    window.get(bytes, off, n);
+                } else {
+                    window.put(bytes, off, n);
+                }
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void nextWindow() throws IOException {
+            if (null != window) {
+                force();
+                windowStart += window.capacity();
+            }
+            if (windowStart >= length) {
+                throw new IOException("Unexpected end of the spilled segment.");
+            }
+            window = channel.map(mode, windowStart, Math.min(MAPPED_WINDOW_SIZE, length - windowStart));
+        }
+
+        private void force() {
+            if (null != window && FileChannel.MapMode.READ_WRITE == mode) {
+                window.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager;
+
+import java.io.Serializable;
+
+/**
+ * A stream load transaction of `sink.exactly-once.transaction`, which is all the checkpointed state of the sink.
+ * Kept as a POJO so that flink serializes it without falling back to Kryo.
+ */
+public class StarRocksSinkTransaction implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String database;
+    private String table;
+    private String label;
+
+    public StarRocksSinkTransaction() {
+    }
+
+    public StarRocksSinkTransaction(String database, String table, String label) {
+        this.database = database;
+        this.table = table;
+        this.label = label;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public void setDatabase(String database) {
+        this.database = database;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public void setTable(String table) {
+        this.table = table;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("db[%s] table[%s] label[%s]", database, table, label);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import com.starrocks.connector.flink.table.sink.StarRocksSinkOptions;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+/**
+ * Http entity writing the buffered rows of a batch straight to the request stream,
+ * joined with the row delimiter (csv) or as the elements of a json array.
+ * Compressed bodies are compressed while they are written, so that no copy of the batch is made on the heap,
+ * and sent chunked as their length is only known once they are written.
+ */
+public class StarRocksStreamLoadEntity extends AbstractHttpEntity {
+
+    private static final byte[] JSON_ARRAY_START = "[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] JSON_ARRAY_END = "]".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] JSON_DELIMITER = ",".getBytes(StandardCharsets.UTF_8);
+    private static final int COMPRESSION_BUFFER_SIZE = 64 * 1024;
+
+    private final StarRocksSinkBufferEntity bufferEntity;
+    private final StarRocksSinkOptions.StreamLoadFormat format;
+    private final byte[] rowDelimiter;
+    private final long uncompressedLength;
+    // NONE if the rows are written as they are
+    private final StarRocksSinkOptions.StreamLoadCompression compression;
+    // bytes of the body written last, the rows are compressed again by redirects and retries
+    private volatile long compressedLength;
+
+    public StarRocksStreamLoadEntity(StarRocksSinkBufferEntity bufferEntity, StarRocksSinkOptions.StreamLoadFormat format, byte[] rowDelimiter) {
+        this.bufferEntity = bufferEntity;
+        this.format = format;
+        this.rowDelimiter = rowDelimiter;
+        int rowCount = bufferEntity.getBatchCount();
+        if (StarRocksSinkOptions.StreamLoadFormat.CSV.equals(format)) {
+            this.uncompressedLength = bufferEntity.getBatchSize() + (long) rowCount * rowDelimiter.length;
+        } else if (StarRocksSinkOptions.StreamLoadFormat.JSON.equals(format)) {
+            this.uncompressedLength = bufferEntity.getBatchSize() + (0 == rowCount ? 2 : rowCount + 1);
+        } else {
+            throw new RuntimeException("Failed to join rows data, unsupported `format` from stream load properties:");
+        }
+        this.compression = StarRocksSinkOptions.StreamLoadCompression.NONE;
+        this.compressedLength = uncompressedLength;
+    }
+
+    public StarRocksStreamLoadEntity(StarRocksSinkBufferEntity bufferEntity, StarRocksSinkOptions.StreamLoadFormat format, byte[] rowDelimiter,
+                                     StarRocksSinkOptions.StreamLoadCompression compression) {
+        this.bufferEntity = bufferEntity;
+        this.format = format;
+        this.rowDelimiter = rowDelimiter;
+        this.uncompressedLength = new StarRocksStreamLoadEntity(bufferEntity, format, rowDelimiter).getContentLength();
+        this.compression = compression;
+        this.compressedLength = uncompressedLength;
+        setChunked(!StarRocksSinkOptions.StreamLoadCompression.NONE.equals(compression));
+    }
+
+    private static OutputStream createCompressionStream(StarRocksSinkOptions.StreamLoadCompression compression, OutputStream out) throws IOException {
+        switch (compression) {
+            case GZIP:
+                // rows are written one by one, buffer them for the deflater
+                return new BufferedOutputStream(new GZIPOutputStream(out, COMPRESSION_BUFFER_SIZE), COMPRESSION_BUFFER_SIZE);
+            case LZ4_FRAME:
+                return new LZ4FrameOutputStream(out);
+            default:
+                throw new IllegalArgumentException("Unsupported stream load compression: " + compression);
+        }
+    }
+
+    /**
+     * @return the length of the csv or json rows before compression.
+     */
+    public long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    /**
+     * @return the length of the body written last, the same as the uncompressed one if the rows are not compressed.
+     */
+    public long getCompressedLength() {
+        return compressedLength;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        // rows stay in the buffer until the load is done, so the body can be written again on redirects or retries
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return isChunked() ? -1 : uncompressedLength;
+    }
+
+    /**
+     * Copies the body to the heap, the requests of the sink write it with {@link #writeTo(OutputStream)} instead.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(uncompressedLength, Integer.MAX_VALUE - 8));
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (StarRocksSinkOptions.StreamLoadCompression.NONE.equals(compression)) {
+            writeRows(out);
+            out.flush();
+            return;
+        }
+        CountingOutputStream counting = new CountingOutputStream(out);
+        // closing the compression stream ends the frame, the request stream is left open
+        try (OutputStream compressed = createCompressionStream(compression, counting)) {
+            writeRows(compressed);
+        }
+        compressedLength = counting.count;
+    }
+
+    private void writeRows(OutputStream out) throws IOException {
+        if (StarRocksSinkOptions.StreamLoadFormat.CSV.equals(format)) {
+            bufferEntity.writeRows(out, rowDelimiter, true);
+        } else {
+            out.write(JSON_ARRAY_START);
+            bufferEntity.writeRows(out, JSON_DELIMITER, false);
+            out.write(JSON_ARRAY_END);
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Counts the compressed bytes written to the request stream, which it flushes instead of closing.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -24,6 +24,8 @@ public class StarRocksStreamLoadFailedException extends IOException {
 
     private final Map<String, Object> response;
     private boolean reCreateLabel;
+    // status of the http response if it was not 200, 0 otherwise
+    private int httpStatus;
 
     public StarRocksStreamLoadFailedException(String message, Map<String, Object> response) {
         super(message);
@@ -36,6 +38,12 @@ public class StarRocksStreamLoadFailedException extends IOException {
         this.reCreateLabel = reCreateLabel;
     }
 
+    public StarRocksStreamLoadFailedException(String message, int httpStatus) {
+        super(message);
+        this.response = null;
+        this.httpStatus = httpStatus;
+    }
+
     public Map<String, Object> getFailedResponse() {
         return response;
     }
@@ -44,4 +52,8 @@ public class StarRocksStreamLoadFailedException extends IOException {
         return reCreateLabel;
     }
 
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+
 }
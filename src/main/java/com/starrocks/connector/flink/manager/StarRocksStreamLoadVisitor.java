@@ -16,9 +16,7 @@ package com.starrocks.connector.flink.manager;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.ByteBuffer;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 
 import com.alibaba.fastjson.JSON;
@@ -28,16 +26,19 @@ import com.starrocks.connector.flink.table.sink.StarRocksSinkOptions;
 
 import java.util.HashMap;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.flink.util.concurrent.ExecutorThreadFactory;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
-import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultRedirectStrategy;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +46,13 @@ import org.slf4j.LoggerFactory;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -56,10 +64,13 @@ public class StarRocksStreamLoadVisitor implements Serializable {
     private static final Logger LOG = LoggerFactory.getLogger(StarRocksStreamLoadVisitor.class);
 
     private static final int ERROR_LOG_MAX_LENGTH = 3000;
+    private static final long HTTP_IDLE_CONNECTION_TIMEOUT_MS = 60000L;
+    private static final int LABEL_STATE_MAX_POLL_INTERVAL_SECONDS = 5;
 
     private final StarRocksSinkOptions sinkOptions;
+    private final StarRocksQueryVisitor queryVisitor;
     private final String[] fieldNames;
-    private long pos;
+    private final byte[] rowDelimiter;
     private boolean __opAutoProjectionInJson;
     private static final String RESULT_FAILED = "Fail";
     private static final String RESULT_LABEL_EXISTED = "Label Already Exists";
@@ -68,27 +79,205 @@ public class StarRocksStreamLoadVisitor implements Serializable {
     private static final String RESULT_LABEL_PREPARE = "PREPARE";
     private static final String RESULT_LABEL_ABORTED = "ABORTED";
     private static final String RESULT_LABEL_UNKNOWN = "UNKNOWN";
+    private static final String RESULT_TXN_OK = "OK";
+
+    // read by the flush workers and the metrics without the monitor, created and closed with it,
+    // each one assigned once it is ready to use
+    private transient volatile PoolingHttpClientConnectionManager httpConnectionManager;
+    private transient volatile CloseableHttpClient httpClient;
+    private transient volatile StarRocksLoadUrlRouter loadUrlRouter;
+    // only with `sink.load-url.direct-backend`
+    private transient volatile StarRocksBackendRouter backendRouter;
+    // polls the state of the labels which already exist, without holding the flush workers
+    private transient volatile ScheduledExecutorService labelStatePoller;
+    private transient volatile Set<CompletableFuture<Void>> pendingLabelStates;
+    // a closed visitor is not opened again, which would leak the client and the threads of the routers
+    private transient volatile boolean closed;
 
     public StarRocksStreamLoadVisitor(StarRocksSinkOptions sinkOptions, String[] fieldNames, boolean __opAutoProjectionInJson) {
+        this(sinkOptions, null, fieldNames, __opAutoProjectionInJson);
+    }
+
+    /**
+     * @param queryVisitor lists the backends for `sink.load-url.direct-backend`, null to learn them from the redirects only.
+     */
+    public StarRocksStreamLoadVisitor(StarRocksSinkOptions sinkOptions, StarRocksQueryVisitor queryVisitor, String[] fieldNames, boolean __opAutoProjectionInJson) {
         this.fieldNames = fieldNames;
         this.sinkOptions = sinkOptions;
+        this.queryVisitor = queryVisitor;
         this.__opAutoProjectionInJson = __opAutoProjectionInJson;
+        this.rowDelimiter = StarRocksDelimiterParser.parse(sinkOptions.getSinkStreamLoadProperties().get("row_delimiter"), "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create the http client shared by all the requests of the sink, connections are kept alive and reused between loads.
+     * Called on the first request if it was not before.
+     *
+     * @throws IllegalStateException if the visitor is closed.
+     */
+    public synchronized void open() {
+        if (closed) {
+            throw new IllegalStateException("The stream load visitor is closed.");
+        }
+        if (null != httpClient) {
+            return;
+        }
+        StarRocksLoadUrlRouter urlRouter = new StarRocksLoadUrlRouter(sinkOptions.getLoadUrlList(), sinkOptions.getConnectTimeout(), sinkOptions.getSinkLoadUrlHealthCheckInterval());
+        urlRouter.open();
+        loadUrlRouter = urlRouter;
+        if (sinkOptions.isSinkLoadUrlDirectBackend()) {
+            StarRocksBackendRouter backends = new StarRocksBackendRouter(queryVisitor, sinkOptions.getSinkLoadUrlBackendRefreshInterval());
+            backends.open();
+            backendRouter = backends;
+        }
+        pendingLabelStates = ConcurrentHashMap.newKeySet();
+        labelStatePoller = Executors.newSingleThreadScheduledExecutor(new ExecutorThreadFactory("starrocks-label-state"));
+        // one connection for each flush worker plus the label-state and error-log requests
+        int maxPerRoute = sinkOptions.getSinkIoThreadCount() + 1;
+        httpConnectionManager = new PoolingHttpClientConnectionManager();
+        httpConnectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        httpConnectionManager.setMaxTotal(maxPerRoute * Math.max(1, sinkOptions.getLoadUrlList().size()));
+        httpClient = HttpClients.custom()
+            .setConnectionManager(httpConnectionManager)
+            .setRedirectStrategy(new DefaultRedirectStrategy() {
+                @Override
+                protected boolean isRedirectable(String method) {
+                    return true;
+                }
+            })
+            .setDefaultRequestConfig(RequestConfig.custom().setConnectTimeout(sinkOptions.getConnectTimeout()).build())
+            .evictExpiredConnections()
+            .evictIdleConnections(HTTP_IDLE_CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    public synchronized void close() {
+        closed = true;
+        if (null == httpClient) {
+            return;
+        }
+        labelStatePoller.shutdownNow();
+        for (CompletableFuture<Void> labelState : pendingLabelStates) {
+            labelState.completeExceptionally(new IOException("The stream load visitor is closed while checking the label state."));
+        }
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close the stream load http client.", e);
+        } finally {
+            httpClient = null;
+            httpConnectionManager = null;
+            labelStatePoller = null;
+            pendingLabelStates = null;
+            loadUrlRouter.close();
+            loadUrlRouter = null;
+            if (null != backendRouter) {
+                backendRouter.close();
+                backendRouter = null;
+            }
+        }
+    }
+
+    public PoolStats getHttpConnectionPoolStats() {
+        PoolingHttpClientConnectionManager connectionManager = httpConnectionManager;
+        return null == connectionManager ? null : connectionManager.getTotalStats();
+    }
+
+    /**
+     * @throws IllegalStateException if the visitor is closed.
+     */
+    private CloseableHttpClient getHttpClient() {
+        CloseableHttpClient client = httpClient;
+        if (null == client) {
+            synchronized (this) {
+                open();
+                client = httpClient;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * @throws IllegalStateException if the visitor is closed.
+     */
+    public StarRocksLoadUrlRouter getLoadUrlRouter() {
+        StarRocksLoadUrlRouter router = loadUrlRouter;
+        if (null == router) {
+            synchronized (this) {
+                open();
+                router = loadUrlRouter;
+            }
+        }
+        return router;
     }
 
     public Map<String, Object> doStreamLoad(StarRocksSinkBufferEntity bufferEntity) throws IOException {
-        String host = getAvailableHost();
-        if (null == host) {
-            throw new IOException("None of the hosts in `load_url` could be connected.");
+        return doStreamLoad(bufferEntity, createStreamLoadEntity(bufferEntity));
+    }
+
+    /**
+     * Build the request body of the batch, compressed while it is written if `sink.compression` is set.
+     * The entity is repeatable, so it is meant to be built once and reused by every retry of the batch.
+     */
+    public StarRocksStreamLoadEntity createStreamLoadEntity(StarRocksSinkBufferEntity bufferEntity) throws IOException {
+        return new StarRocksStreamLoadEntity(bufferEntity, sinkOptions.getStreamLoadFormat(), rowDelimiter, sinkOptions.getSinkCompression());
+    }
+
+    public Map<String, Object> doStreamLoad(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) throws IOException {
+        CompletableFuture<Map<String, Object>> loadResult = doStreamLoadAsync(bufferEntity, entity);
+        try {
+            return loadResult.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while checking the label state.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Load the batch, the returned future is done once the load is, except when the label already exists:
+     * its state is then polled in the background and the future is done once the label is committed.
+     */
+    public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) throws IOException {
+        StarRocksLoadUrlRouter router = getLoadUrlRouter();
+        Map<String, Object> loadResult = doStreamLoadToBackend(bufferEntity, entity);
+        // the label state is checked against the frontends even if the batch was loaded by a backend
+        String host;
+        if (null != loadResult) {
+            host = router.getAvailableUrl();
+        } else {
+            StarRocksLoadUrlRouter.Host loadHost = router.select();
+            if (null == loadHost) {
+                throw new IOException("None of the hosts in `load_url` could be connected.");
+            }
+            host = loadHost.getUrl();
+            HttpClientContext context = HttpClientContext.create();
+            long start = System.nanoTime();
+            boolean responded = false;
+            try {
+                loadResult = doHttpPut(getStreamLoadUrl(host, bufferEntity), bufferEntity, entity, context);
+                responded = true;
+            } catch (StarRocksStreamLoadFailedException e) {
+                // the host did respond, with an error status
+                responded = 0 != e.getHttpStatus() && e.getHttpStatus() < 500;
+                throw e;
+            } finally {
+                if (responded) {
+                    router.onLoadFinished(loadHost, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                } else {
+                    router.onLoadFailed(loadHost);
+                }
+            }
+            List<URI> redirects = context.getRedirectLocations();
+            StarRocksBackendRouter backends = backendRouter;
+            if (null != backends && null != redirects && !redirects.isEmpty()) {
+                backends.onRedirected(redirects.get(redirects.size() - 1));
+            }
         }
-        String loadUrl = new StringBuilder(host)
-            .append("/api/")
-            .append(bufferEntity.getDatabase())
-            .append("/")
-            .append(bufferEntity.getTable())
-            .append("/_stream_load")
-            .toString();
-        LOG.info(String.format("Start to join batch data: label[%s].", bufferEntity.getLabel()));
-        Map<String, Object> loadResult = doHttpPut(loadUrl, bufferEntity.getLabel(), joinRows(bufferEntity.getBuffer(),  (int) bufferEntity.getBatchSize()));
         final String keyStatus = "Status";
         if (null == loadResult || !loadResult.containsKey(keyStatus)) {
             throw new IOException("Unable to flush data to StarRocks: unknown result status, usually caused by: 1.authorization or permission related problems. 2.Wrong column_separator or row_delimiter. 3.Column count exceeded the limitation.");
@@ -98,61 +287,220 @@ public class StarRocksStreamLoadVisitor implements Serializable {
         }
         if (RESULT_FAILED.equals(loadResult.get(keyStatus))) {
             Map<String, String> logMap = new HashMap<>();
-            if (loadResult.containsKey("ErrorURL")) {
+            if (loadResult.containsKey("ErrorURL") && !bufferEntity.isErrorLogSkipped()) {
                 logMap.put("streamLoadErrorLog", getErrorLog((String) loadResult.get("ErrorURL")));
             }
             throw new StarRocksStreamLoadFailedException(String.format("Failed to flush data to StarRocks, Error " +
                 "response: \n%s\n%s\n", JSON.toJSONString(loadResult), JSON.toJSONString(logMap)), loadResult);
         } else if (RESULT_LABEL_EXISTED.equals(loadResult.get(keyStatus))) {
             LOG.error(String.format("Stream Load response: \n%s\n", JSON.toJSONString(loadResult)));
-            // has to block-checking the state to get the final result
-            checkLabelState(host, bufferEntity.getLabel());
+            // the final result depends on the state of the existing label
+            Map<String, Object> existedResult = loadResult;
+            return checkLabelStateAsync(host, bufferEntity.getLabel()).thenApply(v -> existedResult);
+        }
+        return CompletableFuture.completedFuture(loadResult);
+    }
+
+    /**
+     * Load the batch straight to a backend with `sink.load-url.direct-backend`.
+     *
+     * @return null if no backend is known or the backend got no response, the batch goes to `load-url` then.
+     */
+    private Map<String, Object> doStreamLoadToBackend(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+        StarRocksBackendRouter backends = backendRouter;
+        String backend = null == backends ? null : backends.select();
+        if (null == backend) {
+            return null;
+        }
+        Map<String, Object> loadResult = null;
+        try {
+            loadResult = doHttpPut(getStreamLoadUrl(backend, bufferEntity), bufferEntity, entity, null);
+        } catch (IOException e) {
+            LOG.warn(String.format("Failed to stream load to backend %s, falling back to `load-url`.", backend), e);
+        }
+        if (null == loadResult) {
+            backends.onLoadFailed(backend);
         }
         return loadResult;
     }
 
+    /**
+     * Load the batch into the transaction, which has to be begun with {@link #beginTransaction}.
+     * Batches of the same transaction have to be loaded one after another.
+     */
+    public Map<String, Object> doTransactionLoad(StarRocksSinkTransaction txn, StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) throws IOException {
+        StarRocksLoadUrlRouter router = getLoadUrlRouter();
+        StarRocksLoadUrlRouter.Host loadHost = router.select();
+        if (null == loadHost) {
+            throw new IOException("None of the hosts in `load_url` could be connected.");
+        }
+        Map<String, Object> loadResult;
+        long start = System.nanoTime();
+        boolean responded = false;
+        try {
+            loadResult = doHttpPut(new StringBuilder(loadHost.getUrl()).append("/api/transaction/load").toString(), txn, bufferEntity, entity);
+            responded = true;
+        } finally {
+            if (responded) {
+                router.onLoadFinished(loadHost, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } else {
+                router.onLoadFailed(loadHost);
+            }
+        }
+        final String keyStatus = "Status";
+        if (null == loadResult || !loadResult.containsKey(keyStatus)) {
+            throw new IOException(String.format("Unable to load data into the transaction %s: unknown result status.", txn));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Transaction load response: \n%s\n", JSON.toJSONString(loadResult)));
+        }
+        if (!RESULT_TXN_OK.equals(loadResult.get(keyStatus)) && !"Success".equals(loadResult.get(keyStatus))) {
+            Map<String, String> logMap = new HashMap<>();
+            if (loadResult.containsKey("ErrorURL")) {
+                logMap.put("streamLoadErrorLog", getErrorLog((String) loadResult.get("ErrorURL")));
+            }
+            throw new StarRocksStreamLoadFailedException(String.format("Failed to load data into the transaction %s, Error " +
+                "response: \n%s\n%s\n", txn, JSON.toJSONString(loadResult), JSON.toJSONString(logMap)), loadResult);
+        }
+        return loadResult;
+    }
+
+    public void beginTransaction(StarRocksSinkTransaction txn) throws IOException {
+        doTransactionOperation("begin", txn);
+    }
+
+    /**
+     * Prepared transactions are kept by StarRocks until they are committed or rolled back, even if the sink fails.
+     */
+    public void prepareTransaction(StarRocksSinkTransaction txn) throws IOException {
+        doTransactionOperation("prepare", txn);
+    }
+
+    /**
+     * Committing is idempotent: a transaction committed already, by a run before a failover, is taken as committed.
+     */
+    public void commitTransaction(StarRocksSinkTransaction txn) throws IOException {
+        try {
+            doTransactionOperation("commit", txn);
+        } catch (IOException e) {
+            if (!checkLabelState(getLoadUrlRouter().getAvailableUrl(), txn.getDatabase(), txn.getLabel())) {
+                throw e;
+            }
+            LOG.info(String.format("Transaction %s is committed already.", txn));
+        }
+    }
+
+    public void rollbackTransaction(StarRocksSinkTransaction txn) throws IOException {
+        doTransactionOperation("rollback", txn);
+    }
+
     @SuppressWarnings("unchecked")
-    private void checkLabelState(String host, String label) throws IOException {
-        int idx = 0;
-        while(true) {
-            try {
-                TimeUnit.SECONDS.sleep(Math.min(++idx, 5));
-            } catch (InterruptedException ex) {
-                break;
+    private void doTransactionOperation(String operation, StarRocksSinkTransaction txn) throws IOException {
+        String url = new StringBuilder(getLoadUrlRouter().getAvailableUrl()).append("/api/transaction/").append(operation).toString();
+        LOG.info(String.format("Executing transaction %s: %s", operation, txn));
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setHeader("label", txn.getLabel());
+        httpPost.setHeader("db", txn.getDatabase());
+        httpPost.setHeader("table", txn.getTable());
+        httpPost.setHeader("Authorization", getBasicAuthHeader(sinkOptions.getUsername(), sinkOptions.getPassword()));
+        String timeout = sinkOptions.getSinkStreamLoadProperties().get("timeout");
+        if (null != timeout) {
+            httpPost.setHeader("timeout", timeout);
+        }
+        try (CloseableHttpResponse resp = getHttpClient().execute(httpPost)) {
+            HttpEntity respEntity = getHttpEntity(resp);
+            if (null == respEntity) {
+                throw new IOException(String.format("Failed to %s the transaction %s: empty response.", operation, txn));
             }
-            try (CloseableHttpClient httpclient = HttpClients.createDefault()) {
-                HttpGet httpGet = new HttpGet(new StringBuilder(host).append("/api/").append(sinkOptions.getDatabaseName()).append("/get_load_state?label=").append(label).toString());
-                httpGet.setHeader("Authorization", getBasicAuthHeader(sinkOptions.getUsername(), sinkOptions.getPassword()));
-                httpGet.setHeader("Connection", "close");
-
-                try (CloseableHttpResponse resp = httpclient.execute(httpGet)) {
-                    HttpEntity respEntity = getHttpEntity(resp);
-                    if (respEntity == null) {
-                        throw new StarRocksStreamLoadFailedException(String.format("Failed to flush data to StarRocks, Error " +
-                                "could not get the final state of label[%s].\n", label), null);
-                    }
-                    Map<String, Object> result = (Map<String, Object>)JSON.parse(EntityUtils.toString(respEntity));
-                    String labelState = (String)result.get("state");
-                    if (null == labelState) {
-                        throw new StarRocksStreamLoadFailedException(String.format("Failed to flush data to StarRocks, Error " +
-                                "could not get the final state of label[%s]. response[%s]\n", label, EntityUtils.toString(respEntity)), null);
-                    }
-                    LOG.info(String.format("Checking label[%s] state[%s]\n", label, labelState));
-                    switch(labelState) {
-                        case LAEBL_STATE_VISIBLE:
-                        case LAEBL_STATE_COMMITTED:
-                            return;
-                        case RESULT_LABEL_PREPARE:
-                            continue;
-                        case RESULT_LABEL_ABORTED:
-                            throw new StarRocksStreamLoadFailedException(String.format("Failed to flush data to StarRocks, Error " +
-                                    "label[%s] state[%s]\n", label, labelState), null, true);
-                        case RESULT_LABEL_UNKNOWN:
-                        default:
-                            throw new StarRocksStreamLoadFailedException(String.format("Failed to flush data to StarRocks, Error " +
-                                "label[%s] state[%s]\n", label, labelState), null);
+            String response = EntityUtils.toString(respEntity);
+            Map<String, Object> result = (Map<String, Object>)JSON.parse(response);
+            if (null == result || !RESULT_TXN_OK.equals(result.get("Status"))) {
+                throw new StarRocksStreamLoadFailedException(String.format("Failed to %s the transaction %s, Error " +
+                    "response: \n%s\n", operation, txn, response), result);
+            }
+        }
+    }
+
+    private String getStreamLoadUrl(String host, StarRocksSinkBufferEntity bufferEntity) {
+        return new StringBuilder(host)
+            .append("/api/")
+            .append(bufferEntity.getDatabase())
+            .append("/")
+            .append(bufferEntity.getTable())
+            .append("/_stream_load")
+            .toString();
+    }
+
+    private CompletableFuture<Void> checkLabelStateAsync(String host, String label) {
+        CompletableFuture<Void> labelState = new CompletableFuture<>();
+        Set<CompletableFuture<Void>> pending = pendingLabelStates;
+        if (null == pending) {
+            labelState.completeExceptionally(new IOException("The stream load visitor is closed while checking the label state."));
+            return labelState;
+        }
+        pending.add(labelState);
+        labelState.whenComplete((v, e) -> pending.remove(labelState));
+        scheduleLabelStateCheck(host, label, 1, labelState);
+        return labelState;
+    }
+
+    private void scheduleLabelStateCheck(String host, String label, int idx, CompletableFuture<Void> labelState) {
+        ScheduledExecutorService poller = labelStatePoller;
+        try {
+            if (null == poller) {
+                throw new RejectedExecutionException();
+            }
+            poller.schedule(() -> {
+                try {
+                    if (checkLabelState(host, sinkOptions.getDatabaseName(), label)) {
+                        labelState.complete(null);
+                    } else {
+                        scheduleLabelStateCheck(host, label, idx + 1, labelState);
                     }
+                } catch (Throwable e) {
+                    labelState.completeExceptionally(e);
                 }
+            }, Math.min(idx, LABEL_STATE_MAX_POLL_INTERVAL_SECONDS), TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            labelState.completeExceptionally(new IOException("The stream load visitor is closed while checking the label state.", e));
+        }
+    }
+
+    /**
+     * @return true if the label is committed, false if it is still being prepared.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean checkLabelState(String host, String database, String label) throws IOException {
+        HttpGet httpGet = new HttpGet(new StringBuilder(host).append("/api/").append(database).append("/get_load_state?label=").append(label).toString());
+        httpGet.setHeader("Authorization", getBasicAuthHeader(sinkOptions.getUsername(), sinkOptions.getPassword()));
+
+        try (CloseableHttpResponse resp = getHttpClient().execute(httpGet)) {
+            HttpEntity respEntity = getHttpEntity(resp);
+            if (respEntity == null) {
+                throw new StarRocksStreamLoadFailedException(String.format("Failed to flush data to StarRocks, Error " +
+                        "could not get the final state of label[%s].\n", label), null);
+            }
+            String response = EntityUtils.toString(respEntity);
+            Map<String, Object> result = (Map<String, Object>)JSON.parse(response);
+            String labelState = (String)result.get("state");
+            if (null == labelState) {
+                throw new StarRocksStreamLoadFailedException(String.format("Failed to flush data to StarRocks, Error " +
+                        "could not get the final state of label[%s]. response[%s]\n", label, response), null);
+            }
+            LOG.info(String.format("Checking label[%s] state[%s]\n", label, labelState));
+            switch(labelState) {
+                case LAEBL_STATE_VISIBLE:
+                case LAEBL_STATE_COMMITTED:
+                    return true;
+                case RESULT_LABEL_PREPARE:
+                    return false;
+                case RESULT_LABEL_ABORTED:
+                    throw new StarRocksStreamLoadFailedException(String.format("Failed to flush data to StarRocks, Error " +
+                            "label[%s] state[%s]\n", label, labelState), null, true);
+                case RESULT_LABEL_UNKNOWN:
+                default:
+                    throw new StarRocksStreamLoadFailedException(String.format("Failed to flush data to StarRocks, Error " +
+                        "label[%s] state[%s]\n", label, labelState), null);
             }
         }
     }
@@ -161,9 +509,9 @@ public class StarRocksStreamLoadVisitor implements Serializable {
         if (errorUrl == null || errorUrl.isEmpty() || !errorUrl.startsWith("http")) {
             return null;
         }
-        try (CloseableHttpClient httpclient = HttpClients.createDefault()) {
+        try {
             HttpGet httpGet = new HttpGet(errorUrl);
-            try (CloseableHttpResponse resp = httpclient.execute(httpGet)) {
+            try (CloseableHttpResponse resp = getHttpClient().execute(httpGet)) {
                 HttpEntity respEntity = getHttpEntity(resp);
                 if (respEntity == null) {
                     return null;
@@ -180,98 +528,66 @@ public class StarRocksStreamLoadVisitor implements Serializable {
         }
     }
 
-    private String getAvailableHost() {
-        List<String> hostList = sinkOptions.getLoadUrlList();
-        long tmp = pos + hostList.size();
-        for (; pos < tmp; pos++) {
-            String host = new StringBuilder("http://").append(hostList.get((int) (pos % hostList.size()))).toString();
-            if (tryHttpConnection(host)) {
-                return host;
-            }
-        }
-        return null;
+    private Map<String, Object> doHttpPut(String loadUrl, StarRocksSinkBufferEntity bufferEntity, HttpEntity entity, HttpClientContext context) throws IOException {
+        HttpPut httpPut = new HttpPut(loadUrl);
+        httpPut.setHeader("label", bufferEntity.getLabel());
+        return doHttpPut(httpPut, bufferEntity.getPartialColumns(), entity, context);
     }
 
-    private boolean tryHttpConnection(String host) {
-        try {
-            URL url = new URL(host);
-            HttpURLConnection co =  (HttpURLConnection) url.openConnection();
-            co.setConnectTimeout(sinkOptions.getConnectTimeout());
-            co.connect();
-            co.disconnect();
-            return true;
-        } catch (Exception e1) {
-            LOG.warn("Failed to connect to address:{}", host, e1);
-            return false;
-        }
+    private Map<String, Object> doHttpPut(String loadUrl, StarRocksSinkTransaction txn, StarRocksSinkBufferEntity bufferEntity, HttpEntity entity) throws IOException {
+        HttpPut httpPut = new HttpPut(loadUrl);
+        httpPut.setHeader("label", txn.getLabel());
+        httpPut.setHeader("db", txn.getDatabase());
+        httpPut.setHeader("table", txn.getTable());
+        return doHttpPut(httpPut, bufferEntity.getPartialColumns(), entity, null);
     }
 
-    private byte[] joinRows(List<byte[]> rows, int totalBytes) throws IOException {
-        if (StarRocksSinkOptions.StreamLoadFormat.CSV.equals(sinkOptions.getStreamLoadFormat())) {
-            byte[] lineDelimiter = StarRocksDelimiterParser.parse(sinkOptions.getSinkStreamLoadProperties().get("row_delimiter"), "\n").getBytes(StandardCharsets.UTF_8);
-            ByteBuffer bos = ByteBuffer.allocate(totalBytes + rows.size() * lineDelimiter.length);
-            for (byte[] row : rows) {
-                bos.put(row);
-                bos.put(lineDelimiter);
-            }
-            return bos.array();
+    /**
+     * @param partialColumns the columns of the rows with `sink.partial-update`, which replace the `columns` of the properties,
+     *                       null if the rows have all the columns.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> doHttpPut(HttpPut httpPut, String[] partialColumns, HttpEntity entity, HttpClientContext context) throws IOException {
+        // compressed bodies are chunked, their length is unknown until they are written
+        long size = entity instanceof StarRocksStreamLoadEntity ? ((StarRocksStreamLoadEntity) entity).getUncompressedLength() : entity.getContentLength();
+        LOG.info(String.format("Executing stream load to: '%s', size: '%s'", httpPut.getURI(), size));
+        Map<String, String> props = sinkOptions.getSinkStreamLoadProperties();
+        for (Map.Entry<String,String> entry : props.entrySet()) {
+            httpPut.setHeader(entry.getKey(), entry.getValue());
         }
-
-        if (StarRocksSinkOptions.StreamLoadFormat.JSON.equals(sinkOptions.getStreamLoadFormat())) {
-            ByteBuffer bos = ByteBuffer.allocate(totalBytes + (rows.isEmpty() ? 2 : rows.size() + 1));
-            bos.put("[".getBytes(StandardCharsets.UTF_8));
-            byte[] jsonDelimiter = ",".getBytes(StandardCharsets.UTF_8);
-            boolean isFirstElement = true;
-            for (byte[] row : rows) {
-                if (!isFirstElement) {
-                    bos.put(jsonDelimiter);
-                }
-                bos.put(row);
-                isFirstElement = false;
+        if (!props.containsKey("columns") && ((sinkOptions.supportUpsertDelete() && !__opAutoProjectionInJson) || StarRocksSinkOptions.StreamLoadFormat.CSV.equals(sinkOptions.getStreamLoadFormat()))) {
+            String cols = String.join(",", Arrays.asList(fieldNames).stream().map(f -> String.format("`%s`", f.trim().replace("`", ""))).collect(Collectors.toList()));
+            if (cols.length() > 0 && sinkOptions.supportUpsertDelete()) {
+                cols += String.format(",%s", StarRocksSinkOP.COLUMN_KEY);
             }
-            bos.put("]".getBytes(StandardCharsets.UTF_8));
-            return bos.array();
+            httpPut.setHeader("columns", cols);
         }
-        throw new RuntimeException("Failed to join rows data, unsupported `format` from stream load properties:");
-    }
-
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> doHttpPut(String loadUrl, String label, byte[] data) throws IOException {
-        LOG.info(String.format("Executing stream load to: '%s', size: '%s'", Thread.currentThread().getId(), loadUrl, data.length));
-        final HttpClientBuilder httpClientBuilder = HttpClients.custom()
-            .setRedirectStrategy(new DefaultRedirectStrategy() {
-                @Override
-                protected boolean isRedirectable(String method) {
-                    return true;
-                }
-            });
-        try (CloseableHttpClient httpclient = httpClientBuilder.build()) {
-            HttpPut httpPut = new HttpPut(loadUrl);
-            Map<String, String> props = sinkOptions.getSinkStreamLoadProperties();
-            for (Map.Entry<String,String> entry : props.entrySet()) {
-                httpPut.setHeader(entry.getKey(), entry.getValue());
-            }
-            if (!props.containsKey("columns") && ((sinkOptions.supportUpsertDelete() && !__opAutoProjectionInJson) || StarRocksSinkOptions.StreamLoadFormat.CSV.equals(sinkOptions.getStreamLoadFormat()))) {
-                String cols = String.join(",", Arrays.asList(fieldNames).stream().map(f -> String.format("`%s`", f.trim().replace("`", ""))).collect(Collectors.toList()));
-                if (cols.length() > 0 && sinkOptions.supportUpsertDelete()) {
-                    cols += String.format(",%s", StarRocksSinkOP.COLUMN_KEY);
-                }
-                httpPut.setHeader("columns", cols);
-            }
-            if (!httpPut.containsHeader("timeout")) {
-                httpPut.setHeader("timeout", "60");
-            }
-            httpPut.setHeader("Expect", "100-continue");
-            httpPut.setHeader("label", label);
-            httpPut.setHeader("Authorization", getBasicAuthHeader(sinkOptions.getUsername(), sinkOptions.getPassword()));
-            httpPut.setEntity(new ByteArrayEntity(data));
-            httpPut.setConfig(RequestConfig.custom().setRedirectsEnabled(true).build());
-            try (CloseableHttpResponse resp = httpclient.execute(httpPut)) {
-                HttpEntity respEntity = getHttpEntity(resp);
-                if (respEntity == null)
-                    return null;
-                return (Map<String, Object>)JSON.parse(EntityUtils.toString(respEntity));
+        if (null != partialColumns) {
+            String cols = Arrays.stream(partialColumns).map(f -> String.format("`%s`", f.trim().replace("`", ""))).collect(Collectors.joining(","));
+            httpPut.setHeader("columns", String.format("%s,%s", cols, StarRocksSinkOP.COLUMN_KEY));
+            httpPut.setHeader("partial_update", "true");
+        }
+        if (!httpPut.containsHeader("timeout")) {
+            httpPut.setHeader("timeout", "60");
+        }
+        StarRocksSinkOptions.StreamLoadCompression compression = sinkOptions.getSinkCompression();
+        if (!StarRocksSinkOptions.StreamLoadCompression.NONE.equals(compression)) {
+            httpPut.setHeader("compression", compression.getName());
+        }
+        httpPut.setHeader("Expect", "100-continue");
+        httpPut.setHeader("Authorization", getBasicAuthHeader(sinkOptions.getUsername(), sinkOptions.getPassword()));
+        httpPut.setEntity(entity);
+        httpPut.setConfig(RequestConfig.custom().setConnectTimeout(sinkOptions.getConnectTimeout()).setRedirectsEnabled(true).build());
+        try (CloseableHttpResponse resp = getHttpClient().execute(httpPut, context)) {
+            int code = resp.getStatusLine().getStatusCode();
+            if (200 != code) {
+                // kept for the retry policy, which tells the rejected requests from the failures of the server
+                throw new StarRocksStreamLoadFailedException(String.format("Stream load to '%s' failed with http status %d.", httpPut.getURI(), code), code);
             }
+            HttpEntity respEntity = getHttpEntity(resp);
+            if (respEntity == null)
+                return null;
+            return (Map<String, Object>)JSON.parse(EntityUtils.toString(respEntity));
         }
     }
 
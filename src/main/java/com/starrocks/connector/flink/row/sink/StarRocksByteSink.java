@@ -0,0 +1,344 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.row.sink;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.table.data.binary.BinarySegmentUtils;
+
+/**
+ * Reusable growable byte buffer the serializers encode a row into, as UTF-8.
+ * Not thread safe: one instance is meant to be reset and reused for every row of a sink.
+ */
+public final class StarRocksByteSink extends OutputStream {
+
+    private static final byte[] LONG_MIN_VALUE = String.valueOf(Long.MIN_VALUE).getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private byte[] buf;
+    private int count;
+
+    public StarRocksByteSink() {
+        this(1024);
+    }
+
+    public StarRocksByteSink(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Encode `s` as UTF-8, unpaired surrogates are replaced with '?' as {@link String#getBytes} does.
+     */
+    public void writeUtf8(String s) {
+        int len = s.length();
+        // at most 3 bytes per char, a surrogate pair takes 4 bytes for 2 chars
+        ensureCapacity(count + len * 3);
+        byte[] b = buf;
+        int pos = count;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                b[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                b[pos++] = (byte) (0xc0 | (c >> 6));
+                b[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    b[pos++] = (byte) (0xf0 | (cp >> 18));
+                    b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    b[pos++] = (byte) (0x80 | (cp & 0x3f));
+                } else {
+                    b[pos++] = '?';
+                }
+            } else {
+                b[pos++] = (byte) (0xe0 | (c >> 12));
+                b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        count = pos;
+    }
+
+    /**
+     * Write the decimal digits of `v`, the same as {@link Long#toString(long)} does.
+     */
+    public void writeLong(long v) {
+        if (Long.MIN_VALUE == v) {
+            write(LONG_MIN_VALUE);
+            return;
+        }
+        if (v < 0) {
+            write('-');
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) {
+            digits++;
+        }
+        ensureCapacity(count + digits);
+        for (int i = count + digits - 1; i >= count; i--) {
+            buf[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        count += digits;
+    }
+
+    /**
+     * Copy `len` bytes of the memory segments from `offset`, e.g. the UTF-8 bytes of a binary string.
+     */
+    public void write(MemorySegment[] segments, int offset, int len) {
+        ensureCapacity(count + len);
+        BinarySegmentUtils.copyToBytes(segments, offset, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Write a decimal in plain notation, from its unscaled value and scale.
+     */
+    public void writeDecimal(long unscaledValue, int scale) {
+        if (0 == scale) {
+            writeLong(unscaledValue);
+            return;
+        }
+        if (unscaledValue < 0) {
+            write('-');
+            unscaledValue = -unscaledValue;
+        }
+        long pow = POWERS_OF_TEN[scale];
+        long fraction = unscaledValue % pow;
+        writeLong(unscaledValue / pow);
+        write('.');
+        for (int i = scale - 1; i > 0 && fraction < POWERS_OF_TEN[i]; i--) {
+            write('0');
+        }
+        writeLong(fraction);
+    }
+
+    /**
+     * Write the date of `epochDay` as `yyyy-MM-dd`, the same as {@link LocalDate#toString()} does.
+     */
+    public void writeDate(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            writeUtf8(date.toString());
+            return;
+        }
+        writePaddedInt(year, 4);
+        write('-');
+        writePaddedInt(date.getMonthValue(), 2);
+        write('-');
+        writePaddedInt(date.getDayOfMonth(), 2);
+    }
+
+    /**
+     * Write the date time of the epoch millisecond as {@link java.time.LocalDateTime#toString()} does,
+     * i.e. `yyyy-MM-ddTHH:mm`, followed by the seconds and fraction of second only when they are not zero.
+     */
+    public void writeDateTime(long epochMillisecond, int nanoOfMillisecond) {
+        int epochDay = (int) Math.floorDiv(epochMillisecond, 86400000L);
+        int millisOfDay = (int) Math.floorMod(epochMillisecond, 86400000L);
+        writeDate(epochDay);
+        write('T');
+        int secondOfDay = millisOfDay / 1000;
+        writePaddedInt(secondOfDay / 3600, 2);
+        write(':');
+        writePaddedInt(secondOfDay / 60 % 60, 2);
+        int second = secondOfDay % 60;
+        int nano = millisOfDay % 1000 * 1000000 + nanoOfMillisecond;
+        if (second > 0 || nano > 0) {
+            write(':');
+            writePaddedInt(second, 2);
+            if (nano > 0) {
+                write('.');
+                if (0 == nano % 1000000) {
+                    writePaddedInt(nano / 1000000, 3);
+                } else if (0 == nano % 1000) {
+                    writePaddedInt(nano / 1000, 6);
+                } else {
+                    writePaddedInt(nano, 9);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write `s` as a quoted json string.
+     */
+    public void writeJsonString(String s) {
+        int start = beginJsonString();
+        writeUtf8(s);
+        endJsonString(start);
+    }
+
+    /**
+     * Write the UTF-8 bytes of the memory segments as a quoted json string.
+     */
+    public void writeJsonString(MemorySegment[] segments, int offset, int len) {
+        int start = beginJsonString();
+        write(segments, offset, len);
+        endJsonString(start);
+    }
+
+    /**
+     * Open a quoted json string, the raw UTF-8 content written next is escaped by {@link #endJsonString}.
+     *
+     * @return the position where the content starts.
+     */
+    public int beginJsonString() {
+        write('"');
+        return count;
+    }
+
+    public void endJsonString(int start) {
+        escapeJson(start);
+        write('"');
+    }
+
+    /**
+     * Write the 4 bytes of `v` big-endian, rather than its digits.
+     */
+    public void writeRawInt(int v) {
+        ensureCapacity(count + 4);
+        buf[count++] = (byte) (v >>> 24);
+        buf[count++] = (byte) (v >>> 16);
+        buf[count++] = (byte) (v >>> 8);
+        buf[count++] = (byte) v;
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the backing array, only the first {@link #size()} bytes are valid.
+     */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, count, StandardCharsets.UTF_8);
+    }
+
+    private void writePaddedInt(int v, int width) {
+        ensureCapacity(count + width);
+        for (int i = count + width - 1; i >= count; i--) {
+            buf[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        count += width;
+    }
+
+    /**
+     * Escape the UTF-8 bytes written from `start` in place, bytes of multi-byte chars are never escaped.
+     */
+    private void escapeJson(int start) {
+        int i = start;
+        while (i < count && !needsJsonEscape(buf[i])) {
+            i++;
+        }
+        if (i == count) {
+            return;
+        }
+        byte[] raw = Arrays.copyOfRange(buf, i, count);
+        count = i;
+        for (byte b : raw) {
+            if (!needsJsonEscape(b)) {
+                write(b);
+                continue;
+            }
+            write('\\');
+            switch (b) {
+                case '"':
+                case '\\':
+                    write(b);
+                    break;
+                case '\b':
+                    write('b');
+                    break;
+                case '\f':
+                    write('f');
+                    break;
+                case '\n':
+                    write('n');
+                    break;
+                case '\r':
+                    write('r');
+                    break;
+                case '\t':
+                    write('t');
+                    break;
+                default:
+                    write('u');
+                    write('0');
+                    write('0');
+                    write(HEX_DIGITS[b >> 4]);
+                    write(HEX_DIGITS[b & 0xf]);
+            }
+        }
+    }
+
+    private static boolean needsJsonEscape(byte b) {
+        return (b >= 0 && b < 0x20) || '"' == b || '\\' == b;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, minCapacity));
+        }
+    }
+}
@@ -14,31 +14,46 @@
 
 package com.starrocks.connector.flink.row.sink;
 
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 
-import com.alibaba.fastjson.JSON;
-
-public class StarRocksCsvSerializer implements StarRocksISerializer {
+public class StarRocksCsvSerializer implements StarRocksIByteSerializer {
     
     private static final long serialVersionUID = 1L;
 
-    private final String columnSeparator;
+    private static final byte[] NULL_VALUE = "\\N".getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] columnSeparator;
 
     public StarRocksCsvSerializer(String sp) {
-        this.columnSeparator = StarRocksDelimiterParser.parse(sp, "\t");
+        this.columnSeparator = StarRocksDelimiterParser.parse(sp, "\t").getBytes(StandardCharsets.UTF_8);
     }
 
     @Override
-    public String serialize(Object[] values) {
-        StringBuilder sb = new StringBuilder();
-        int idx = 0;
-        for (Object val : values) {
-            sb.append(null == val ? "\\N" : ((val instanceof Map || val instanceof List) ? JSON.toJSONString(val) : val));
-            if (idx++ < values.length - 1) {
-                sb.append(columnSeparator);
+    public void serialize(Object[] values, StarRocksByteSink out) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(columnSeparator);
             }
+            writeValue(values[i], out);
+        }
+    }
+
+    private static void writeValue(Object val, StarRocksByteSink out) {
+        if (null == val) {
+            out.write(NULL_VALUE);
+        } else if (val instanceof String) {
+            out.writeUtf8((String) val);
+        } else if (val instanceof Long || val instanceof Integer || val instanceof Short || val instanceof Byte) {
+            out.writeLong(((Number) val).longValue());
+        } else if (val instanceof BigDecimal) {
+            out.writeUtf8(((BigDecimal) val).toPlainString());
+        } else if (val instanceof Map || val instanceof List) {
+            StarRocksJsonWriter.writeValue(val, out);
+        } else {
+            out.writeUtf8(val.toString());
         }
-        return sb.toString();
     }
 }
@@ -0,0 +1,30 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.row.sink;
+
+/**
+ * Serializer encoding a row straight into a {@link StarRocksByteSink}, without building an intermediate String.
+ */
+public interface StarRocksIByteSerializer extends StarRocksISerializer {
+
+    void serialize(Object[] values, StarRocksByteSink out);
+
+    @Override
+    default String serialize(Object[] values) {
+        StarRocksByteSink out = new StarRocksByteSink();
+        serialize(values, out);
+        return out.toString();
+    }
+}
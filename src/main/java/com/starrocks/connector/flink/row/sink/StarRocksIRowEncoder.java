@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.row.sink;
+
+/**
+ * Encoder writing a record straight into the stream load format, see {@link StarRocksIRowTransformer#createEncoder}.
+ */
+public interface StarRocksIRowEncoder<T> {
+
+    void encode(T record, StarRocksByteSink out);
+
+    /**
+     * Write the columns at `keyPositions` of the record, which tell the rows of a primary-key table apart.
+     * Each column is followed by the length of its bytes, -1 for null, so that different keys never write the same bytes.
+     */
+    void encodeKey(T record, int[] keyPositions, StarRocksByteSink out);
+
+    /**
+     * Encode only the columns at `positions` of the record, in that order, for `sink.partial-update`.
+     */
+    void encodeColumns(T record, int[] positions, StarRocksByteSink out);
+
+}
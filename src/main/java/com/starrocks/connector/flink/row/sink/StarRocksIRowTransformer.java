@@ -19,6 +19,8 @@ import java.io.Serializable;
 import org.apache.flink.api.common.functions.RuntimeContext;
 import org.apache.flink.table.api.TableSchema;
 
+import com.starrocks.connector.flink.table.sink.StarRocksSinkOptions;
+
 public interface StarRocksIRowTransformer<T> extends Serializable {
 
     void setTableSchema(TableSchema tableSchema);
@@ -26,5 +28,13 @@ public interface StarRocksIRowTransformer<T> extends Serializable {
     void setRuntimeContext(RuntimeContext ctx);
 
     Object[] transform(T record, boolean supportUpsertDelete);
+
+    /**
+     * @return an encoder writing the records straight to bytes in the stream load format of `sinkOptions`,
+     *         or null if the records have to be transformed and serialized.
+     */
+    default StarRocksIRowEncoder<T> createEncoder(StarRocksSinkOptions sinkOptions) {
+        return null;
+    }
     
 }
@@ -14,30 +14,48 @@
 
 package com.starrocks.connector.flink.row.sink;
 
-import java.util.HashMap;
 import java.util.Map;
 
-import com.alibaba.fastjson.JSON;
-
-public class StarRocksJsonSerializer implements StarRocksISerializer {
+/**
+ * Writes a row as a json object, with the field names taken from a pre-escaped name table.
+ */
+public class StarRocksJsonSerializer implements StarRocksIByteSerializer {
 
     private static final long serialVersionUID = 1L;
     
     private final String[] fieldNames;
+    private final byte[][] fieldPrefixes;
 
     public StarRocksJsonSerializer(String[] fieldNames) {
         this.fieldNames = fieldNames;
+        this.fieldPrefixes = new byte[fieldNames.length][];
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldPrefixes[i] = StarRocksJsonWriter.fieldPrefix(fieldNames[i]);
+        }
     }
 
     @Override
-    public String serialize(Object[] values) {
-        Map<String, Object> rowMap = new HashMap<>(values.length);
-        int idx = 0;
-        for (String fieldName : fieldNames) {
-            rowMap.put(fieldName, values[idx] instanceof Map ? JSON.toJSONString(values[idx]) : values[idx]);
-            idx++;
+    public void serialize(Object[] values, StarRocksByteSink out) {
+        out.write('{');
+        boolean isFirstField = true;
+        for (int i = 0; i < fieldNames.length; i++) {
+            Object value = values[i];
+            // null fields are left out
+            if (null == value) {
+                continue;
+            }
+            if (!isFirstField) {
+                out.write(',');
+            }
+            out.write(fieldPrefixes[i]);
+            if (value instanceof Map) {
+                StarRocksJsonWriter.writeValueAsString(value, out);
+            } else {
+                StarRocksJsonWriter.writeValue(value, out);
+            }
+            isFirstField = false;
         }
-        return JSON.toJSONString(rowMap);
+        out.write('}');
     }
     
 }
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.row.sink;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import com.alibaba.fastjson.JSON;
+
+import org.apache.flink.table.data.DecimalData;
+import org.apache.flink.table.data.StringData;
+import org.apache.flink.table.data.TimestampData;
+import org.apache.flink.table.data.binary.BinaryStringData;
+
+/**
+ * Writes json values by type straight into a {@link StarRocksByteSink}, without intermediate maps or strings.
+ * Values are written as the fastjson based serializers used to: null map entries are left out, while
+ * `StringData`, `DecimalData` and `TimestampData` are written as strings.
+ */
+public final class StarRocksJsonWriter {
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.UTF_8);
+
+    private StarRocksJsonWriter() {}
+
+    /**
+     * @return the pre-escaped `"name":` of a field.
+     */
+    public static byte[] fieldPrefix(String fieldName) {
+        StarRocksByteSink prefix = new StarRocksByteSink(fieldName.length() + 8);
+        prefix.writeJsonString(fieldName);
+        prefix.write(':');
+        return prefix.toByteArray();
+    }
+
+    /**
+     * Write the json of `value` as a quoted json string, as columns of nested maps are loaded.
+     */
+    public static void writeValueAsString(Object value, StarRocksByteSink out) {
+        int start = out.beginJsonString();
+        writeValue(value, out);
+        out.endJsonString(start);
+    }
+
+    public static void writeValue(Object value, StarRocksByteSink out) {
+        if (null == value) {
+            out.write(NULL);
+        } else if (value instanceof String) {
+            out.writeJsonString((String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            double doubleValue = ((Number) value).doubleValue();
+            if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+                out.write(NULL);
+            } else {
+                out.writeUtf8(value.toString());
+            }
+        } else if (value instanceof BigDecimal) {
+            out.writeUtf8(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof BinaryStringData) {
+            BinaryStringData stringValue = (BinaryStringData) value;
+            stringValue.ensureMaterialized();
+            out.writeJsonString(stringValue.getSegments(), stringValue.getOffset(), stringValue.getSizeInBytes());
+        } else if (value instanceof StringData) {
+            out.writeJsonString(value.toString());
+        } else if (value instanceof DecimalData) {
+            out.writeJsonString(((DecimalData) value).toBigDecimal().toPlainString());
+        } else if (value instanceof TimestampData) {
+            out.write('"');
+            out.writeDateTime(((TimestampData) value).getMillisecond(), ((TimestampData) value).getNanoOfMillisecond());
+            out.write('"');
+        } else if (value instanceof Map) {
+            writeMap((Map<?, ?>) value, out);
+        } else if (value instanceof List) {
+            writeList((List<?>) value, out);
+        } else {
+            // rare values, e.g. binary arrays
+            out.write(JSON.toJSONBytes(value));
+        }
+    }
+
+    private static void writeMap(Map<?, ?> map, StarRocksByteSink out) {
+        out.write('{');
+        boolean isFirstEntry = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (null == entry.getValue()) {
+                continue;
+            }
+            if (!isFirstEntry) {
+                out.write(',');
+            }
+            out.writeJsonString(String.valueOf(entry.getKey()));
+            out.write(':');
+            writeValue(entry.getValue(), out);
+            isFirstEntry = false;
+        }
+        out.write('}');
+    }
+
+    private static void writeList(List<?> list, StarRocksByteSink out) {
+        out.write('[');
+        for (int i = 0; i < list.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeValue(list.get(i), out);
+        }
+        out.write(']');
+    }
+}
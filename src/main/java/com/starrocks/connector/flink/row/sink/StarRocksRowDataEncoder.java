@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.row.sink;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.flink.table.data.RowData;
+
+/**
+ * Encoder of table rows compiled from the table schema: each column has its own field encoder,
+ * reading the field from the `RowData` and writing it as csv or json without boxing or type switches.
+ */
+public class StarRocksRowDataEncoder implements StarRocksIRowEncoder<RowData> {
+
+    private static final byte[] NULL_VALUE = "\\N".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Encodes the non-null field at `pos` of a row.
+     */
+    interface FieldEncoder {
+        void encode(RowData row, int pos, StarRocksByteSink out);
+    }
+
+    private final FieldEncoder[] fieldEncoders;
+    private final boolean supportUpsertDelete;
+    // csv column separator, null for json rows
+    private final byte[] columnSeparator;
+    // pre-encoded `"name":` of each json field, null for csv rows
+    private final byte[][] jsonFieldPrefixes;
+    private final byte[] jsonOpPrefix;
+
+    private StarRocksRowDataEncoder(FieldEncoder[] fieldEncoders, boolean supportUpsertDelete, byte[] columnSeparator, String[] fieldNames) {
+        this.fieldEncoders = fieldEncoders;
+        this.supportUpsertDelete = supportUpsertDelete;
+        this.columnSeparator = columnSeparator;
+        if (null == fieldNames) {
+            this.jsonFieldPrefixes = null;
+            this.jsonOpPrefix = null;
+            return;
+        }
+        this.jsonFieldPrefixes = new byte[fieldNames.length][];
+        for (int i = 0; i < fieldNames.length; i++) {
+            jsonFieldPrefixes[i] = StarRocksJsonWriter.fieldPrefix(fieldNames[i]);
+        }
+        this.jsonOpPrefix = StarRocksJsonWriter.fieldPrefix(StarRocksSinkOP.COLUMN_KEY);
+    }
+
+    static StarRocksRowDataEncoder csv(FieldEncoder[] fieldEncoders, boolean supportUpsertDelete, String columnSeparator) {
+        return new StarRocksRowDataEncoder(fieldEncoders, supportUpsertDelete, columnSeparator.getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    static StarRocksRowDataEncoder json(FieldEncoder[] fieldEncoders, boolean supportUpsertDelete, String[] fieldNames) {
+        return new StarRocksRowDataEncoder(fieldEncoders, supportUpsertDelete, null, fieldNames);
+    }
+
+    @Override
+    public void encode(RowData row, StarRocksByteSink out) {
+        if (null == jsonFieldPrefixes) {
+            encodeCsv(row, out);
+        } else {
+            encodeJson(row, out);
+        }
+    }
+
+    @Override
+    public void encodeKey(RowData row, int[] keyPositions, StarRocksByteSink out) {
+        for (int pos : keyPositions) {
+            if (row.isNullAt(pos)) {
+                out.writeRawInt(-1);
+                continue;
+            }
+            int start = out.size();
+            fieldEncoders[pos].encode(row, pos, out);
+            out.writeRawInt(out.size() - start);
+        }
+    }
+
+    @Override
+    public void encodeColumns(RowData row, int[] positions, StarRocksByteSink out) {
+        if (null != jsonFieldPrefixes) {
+            // null fields are left out of json rows anyway, the loaded columns are told by the `columns` header
+            encodeJson(row, out);
+            return;
+        }
+        for (int i = 0; i < positions.length; i++) {
+            if (i > 0) {
+                out.write(columnSeparator);
+            }
+            int pos = positions[i];
+            if (row.isNullAt(pos)) {
+                out.write(NULL_VALUE);
+            } else {
+                fieldEncoders[pos].encode(row, pos, out);
+            }
+        }
+        if (supportUpsertDelete) {
+            out.write(columnSeparator);
+            out.writeLong(StarRocksSinkOP.parse(row.getRowKind()).ordinal());
+        }
+    }
+
+    private void encodeCsv(RowData row, StarRocksByteSink out) {
+        for (int i = 0; i < fieldEncoders.length; i++) {
+            if (i > 0) {
+                out.write(columnSeparator);
+            }
+            if (row.isNullAt(i)) {
+                out.write(NULL_VALUE);
+            } else {
+                fieldEncoders[i].encode(row, i, out);
+            }
+        }
+        if (supportUpsertDelete) {
+            // set `__op` column
+            out.write(columnSeparator);
+            out.writeLong(StarRocksSinkOP.parse(row.getRowKind()).ordinal());
+        }
+    }
+
+    private void encodeJson(RowData row, StarRocksByteSink out) {
+        out.write('{');
+        boolean isFirstField = true;
+        for (int i = 0; i < fieldEncoders.length; i++) {
+            // null fields are left out, as the serializer does
+            if (row.isNullAt(i)) {
+                continue;
+            }
+            if (!isFirstField) {
+                out.write(',');
+            }
+            out.write(jsonFieldPrefixes[i]);
+            fieldEncoders[i].encode(row, i, out);
+            isFirstField = false;
+        }
+        if (supportUpsertDelete) {
+            if (!isFirstField) {
+                out.write(',');
+            }
+            out.write(jsonOpPrefix);
+            out.writeLong(StarRocksSinkOP.parse(row.getRowKind()).ordinal());
+        }
+        out.write('}');
+    }
+}
@@ -20,7 +20,7 @@ public class StarRocksSerializerFactory {
 
     private StarRocksSerializerFactory() {}
 
-    public static StarRocksISerializer createSerializer(StarRocksSinkOptions sinkOptions, String[] fieldNames) {
+    public static StarRocksIByteSerializer createSerializer(StarRocksSinkOptions sinkOptions, String[] fieldNames) {
         if (StarRocksSinkOptions.StreamLoadFormat.CSV.equals(sinkOptions.getStreamLoadFormat())) {
             return new StarRocksCsvSerializer(sinkOptions.getSinkStreamLoadProperties().get("column_separator"));
         }
@@ -17,6 +17,7 @@ package com.starrocks.connector.flink.row.sink;
 import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.sql.Date;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
@@ -44,6 +45,7 @@ import org.apache.flink.table.data.GenericArrayData;
 import org.apache.flink.table.data.GenericMapData;
 import org.apache.flink.table.data.MapData;
 import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.StringData;
 import org.apache.flink.table.data.TimestampData;
 import org.apache.flink.table.data.binary.BinaryArrayData;
 import org.apache.flink.table.data.binary.BinaryMapData;
@@ -56,14 +58,20 @@ import org.apache.flink.table.types.logical.LogicalTypeRoot;
 import org.apache.flink.table.types.logical.MapType;
 import org.apache.flink.table.types.logical.RowType;
 import org.apache.flink.table.types.logical.TimestampType;
+import org.apache.flink.table.types.logical.utils.LogicalTypeChecks;
+
+import com.starrocks.connector.flink.table.sink.StarRocksSinkOptions;
 
 public class StarRocksTableRowTransformer implements StarRocksIRowTransformer<RowData> {
 
     private static final long serialVersionUID = 1L;
 
+    private static final byte[] JSON_NULL = "null".getBytes(StandardCharsets.UTF_8);
+
     private TypeInformation<RowData> rowDataTypeInfo;
     private Function<RowData, RowData> valueTransform;
     private DataType[] dataTypes;
+    private String[] fieldNames;
     private final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
     
     public StarRocksTableRowTransformer(TypeInformation<RowData> rowDataTypeInfo) {
@@ -73,6 +81,7 @@ public class StarRocksTableRowTransformer implements StarRocksIRowTransformer<Ro
     @Override
     public void setTableSchema(TableSchema ts) {
         dataTypes = ts.getFieldDataTypes();
+        fieldNames = ts.getFieldNames();
     }
 
     @Override
@@ -100,6 +109,127 @@ public class StarRocksTableRowTransformer implements StarRocksIRowTransformer<Ro
         return values;
     }
 
+    /**
+     * Rows are encoded before the (possibly reused) record is handed back, so they are never copied here.
+     */
+    @Override
+    public StarRocksIRowEncoder<RowData> createEncoder(StarRocksSinkOptions sinkOptions) {
+        boolean json = StarRocksSinkOptions.StreamLoadFormat.JSON.equals(sinkOptions.getStreamLoadFormat());
+        StarRocksRowDataEncoder.FieldEncoder[] fieldEncoders = new StarRocksRowDataEncoder.FieldEncoder[dataTypes.length];
+        for (int i = 0; i < dataTypes.length; i++) {
+            fieldEncoders[i] = createFieldEncoder(dataTypes[i].getLogicalType(), json);
+        }
+        if (json) {
+            return StarRocksRowDataEncoder.json(fieldEncoders, sinkOptions.supportUpsertDelete(), fieldNames);
+        }
+        String columnSeparator = StarRocksDelimiterParser.parse(sinkOptions.getSinkStreamLoadProperties().get("column_separator"), "\t");
+        return StarRocksRowDataEncoder.csv(fieldEncoders, sinkOptions.supportUpsertDelete(), columnSeparator);
+    }
+
+    private StarRocksRowDataEncoder.FieldEncoder createFieldEncoder(LogicalType type, boolean json) {
+        switch (type.getTypeRoot()) {
+            case BOOLEAN:
+                return (row, pos, out) -> out.write(row.getBoolean(pos) ? '1' : '0');
+            case TINYINT:
+                return (row, pos, out) -> out.writeLong(row.getByte(pos));
+            case SMALLINT:
+                return (row, pos, out) -> out.writeLong(row.getShort(pos));
+            case INTEGER:
+                return (row, pos, out) -> out.writeLong(row.getInt(pos));
+            case BIGINT:
+                return (row, pos, out) -> out.writeLong(row.getLong(pos));
+            case FLOAT:
+                return (row, pos, out) -> {
+                    float value = row.getFloat(pos);
+                    if (json && (Float.isNaN(value) || Float.isInfinite(value))) {
+                        out.write(JSON_NULL);
+                        return;
+                    }
+                    out.writeUtf8(Float.toString(value));
+                };
+            case DOUBLE:
+                return (row, pos, out) -> {
+                    double value = row.getDouble(pos);
+                    if (json && (Double.isNaN(value) || Double.isInfinite(value))) {
+                        out.write(JSON_NULL);
+                        return;
+                    }
+                    out.writeUtf8(Double.toString(value));
+                };
+            case CHAR:
+            case VARCHAR:
+                return (row, pos, out) -> {
+                    StringData value = row.getString(pos);
+                    if (value instanceof BinaryStringData) {
+                        // copy the UTF-8 bytes as they are
+                        BinaryStringData binaryValue = (BinaryStringData) value;
+                        binaryValue.ensureMaterialized();
+                        if (json) {
+                            out.writeJsonString(binaryValue.getSegments(), binaryValue.getOffset(), binaryValue.getSizeInBytes());
+                        } else {
+                            out.write(binaryValue.getSegments(), binaryValue.getOffset(), binaryValue.getSizeInBytes());
+                        }
+                    } else if (json) {
+                        out.writeJsonString(value.toString());
+                    } else {
+                        out.writeUtf8(value.toString());
+                    }
+                };
+            case DATE:
+                return quoted(json, (row, pos, out) -> out.writeDate(row.getInt(pos)));
+            case TIMESTAMP_WITHOUT_TIME_ZONE:
+            case TIMESTAMP_WITH_LOCAL_TIME_ZONE:
+                final int timestampPrecision = LogicalTypeChecks.getPrecision(type);
+                return quoted(json, (row, pos, out) -> {
+                    TimestampData value = row.getTimestamp(pos, timestampPrecision);
+                    out.writeDateTime(value.getMillisecond(), value.getNanoOfMillisecond());
+                });
+            case DECIMAL: // for both largeint and decimal
+                final int decimalPrecision = ((DecimalType) type).getPrecision();
+                final int decimalScale = ((DecimalType) type).getScale();
+                return (row, pos, out) -> {
+                    DecimalData value = row.getDecimal(pos, decimalPrecision, decimalScale);
+                    if (value.isCompact()) {
+                        out.writeDecimal(value.toUnscaledLong(), value.scale());
+                    } else {
+                        out.writeUtf8(value.toBigDecimal().toPlainString());
+                    }
+                };
+            case BINARY:
+                return (row, pos, out) -> {
+                    final byte[] bts = row.getBinary(pos);
+                    long value = 0;
+                    for (int i = 0; i < bts.length; i++) {
+                        value += (bts[bts.length - i - 1] & 0xffL) << (8 * i);
+                    }
+                    out.writeLong(value);
+                };
+            default:
+                // nested types go through the java objects, encoded as the serializers do
+                return (row, pos, out) -> {
+                    Object value = typeConvertion(type, row, pos);
+                    if (json && value instanceof Map) {
+                        StarRocksJsonWriter.writeValueAsString(value, out);
+                    } else if (json || value instanceof Map || value instanceof List) {
+                        StarRocksJsonWriter.writeValue(value, out);
+                    } else {
+                        out.writeUtf8(value.toString());
+                    }
+                };
+        }
+    }
+
+    private static StarRocksRowDataEncoder.FieldEncoder quoted(boolean json, StarRocksRowDataEncoder.FieldEncoder encoder) {
+        if (!json) {
+            return encoder;
+        }
+        return (row, pos, out) -> {
+            out.write('"');
+            encoder.encode(row, pos, out);
+            out.write('"');
+        };
+    }
+
     private Object typeConvertion(LogicalType type, RowData record, int pos) {
         if (record.isNullAt(pos)) {
             return null;
@@ -0,0 +1,203 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.table.sink;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.flink.api.common.functions.Partitioner;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.table.api.TableSchema;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.StringData;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.starrocks.connector.flink.connection.StarRocksJdbcConnectionOptions;
+import com.starrocks.connector.flink.connection.StarRocksJdbcConnectionProvider;
+import com.starrocks.connector.flink.manager.StarRocksQueryVisitor;
+import com.starrocks.connector.flink.row.sink.StarRocksIRowTransformer;
+
+/**
+ * Selects the StarRocks bucket of each row for `sink.partition-by-bucket`, so that each sink subtask takes the rows of
+ * its own buckets (bucket % parallelism) and each load writes to the tablets of those buckets only.
+ * The bucket is computed the way StarRocks does for hash distributions: the zlib crc32 of the distribution columns,
+ * chained from one column to the next, modulo the number of buckets. Only the distribution columns of integer,
+ * boolean and string types are supported, whose bytes are hashed as they are (little-endian integers of the width
+ * of the StarRocks type, utf-8 strings); other tables are left to the default distribution of the rows.
+ */
+public class StarRocksBucketKeySelector<T> implements KeySelector<T, Integer> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(StarRocksBucketKeySelector.class);
+
+    // byte width of the integer types of StarRocks, 0 for the strings
+    private static final Map<String, Integer> TYPE_WIDTHS = new HashMap<>();
+    static {
+        TYPE_WIDTHS.put("boolean", 1);
+        TYPE_WIDTHS.put("tinyint", 1);
+        TYPE_WIDTHS.put("smallint", 2);
+        TYPE_WIDTHS.put("int", 4);
+        TYPE_WIDTHS.put("bigint", 8);
+        TYPE_WIDTHS.put("char", 0);
+        TYPE_WIDTHS.put("varchar", 0);
+        TYPE_WIDTHS.put("string", 0);
+    }
+    // StarRocks hashes a null as an int of 0
+    private static final byte[] NULL_BYTES = new byte[4];
+
+    private final int buckets;
+    private final int[] positions;
+    private final int[] widths;
+    // getters of the distribution columns of RowData rows, null if the rows are transformed
+    private final RowData.FieldGetter[] fieldGetters;
+    private final StarRocksIRowTransformer<T> rowTransformer;
+    private transient CRC32 crc;
+    private transient byte[] scratch;
+
+    StarRocksBucketKeySelector(int buckets, int[] positions, int[] widths, LogicalType[] fieldTypes, StarRocksIRowTransformer<T> rowTransformer) {
+        this.buckets = buckets;
+        this.positions = positions;
+        this.widths = widths;
+        this.rowTransformer = rowTransformer;
+        if (null == rowTransformer) {
+            this.fieldGetters = new RowData.FieldGetter[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                fieldGetters[i] = RowData.createFieldGetter(fieldTypes[positions[i]], positions[i]);
+            }
+        } else {
+            this.fieldGetters = null;
+        }
+    }
+
+    /**
+     * Look the distribution of the table up in StarRocks.
+     *
+     * @param rowTransformer transformer of the rows, null if the rows are {@link RowData} of the schema.
+     * @return null if the table is not hash distributed on supported columns, the rows are not partitioned by bucket then.
+     */
+    public static <T> StarRocksBucketKeySelector<T> create(StarRocksSinkOptions sinkOptions, TableSchema schema, StarRocksIRowTransformer<T> rowTransformer) {
+        StarRocksJdbcConnectionProvider jdbcConnProvider = new StarRocksJdbcConnectionProvider(
+            new StarRocksJdbcConnectionOptions(sinkOptions.getJdbcUrl(), sinkOptions.getUsername(), sinkOptions.getPassword()));
+        try {
+            StarRocksQueryVisitor queryVisitor = new StarRocksQueryVisitor(jdbcConnProvider, sinkOptions.getDatabaseName(), sinkOptions.getTableName());
+            return create(queryVisitor.getTablePartitions(), queryVisitor.getTableColumnsMetaData(), schema, rowTransformer);
+        } finally {
+            jdbcConnProvider.close();
+        }
+    }
+
+    static <T> StarRocksBucketKeySelector<T> create(List<Map<String, Object>> partitions, List<Map<String, Object>> columns,
+                                                    TableSchema schema, StarRocksIRowTransformer<T> rowTransformer) {
+        if (null == partitions || partitions.isEmpty()) {
+            LOG.warn("No partition found, the rows are not partitioned by bucket.");
+            return null;
+        }
+        // the buckets of the latest partition, which takes the most of the rows of time-partitioned tables
+        Map<String, Object> partition = partitions.get(partitions.size() - 1);
+        Object distributionKey = partition.get("DistributionKey");
+        int buckets;
+        try {
+            buckets = Integer.parseInt(String.valueOf(partition.get("Buckets")).trim());
+        } catch (NumberFormatException e) {
+            buckets = 0;
+        }
+        if (null == distributionKey || buckets <= 0) {
+            LOG.warn(String.format("Unknown distribution of the table: %s, the rows are not partitioned by bucket.", partition));
+            return null;
+        }
+        Map<String, String> columnTypes = new HashMap<>();
+        for (Map<String, Object> column : columns) {
+            columnTypes.put(String.valueOf(column.get("COLUMN_NAME")).toLowerCase(Locale.ROOT), String.valueOf(column.get("DATA_TYPE")).toLowerCase(Locale.ROOT));
+        }
+        List<String> fieldNames = Arrays.asList(schema.getFieldNames());
+        String[] distributionColumns = distributionKey.toString().split(",");
+        int[] positions = new int[distributionColumns.length];
+        int[] widths = new int[distributionColumns.length];
+        for (int i = 0; i < distributionColumns.length; i++) {
+            String column = distributionColumns[i].trim().replace("`", "");
+            positions[i] = -1;
+            for (int j = 0; j < fieldNames.size(); j++) {
+                if (fieldNames.get(j).equalsIgnoreCase(column)) {
+                    positions[i] = j;
+                }
+            }
+            Integer width = TYPE_WIDTHS.get(columnTypes.get(column.toLowerCase(Locale.ROOT)));
+            if (positions[i] < 0 || null == width) {
+                LOG.warn(String.format("Distribution column [%s] is missing from the sink or of a type not supported, the rows are not partitioned by bucket.", column));
+                return null;
+            }
+            widths[i] = width;
+        }
+        LOG.info(String.format("Partitioning the rows by the %d buckets of the distribution columns %s.", buckets, Arrays.toString(distributionColumns)));
+        if (null != rowTransformer) {
+            rowTransformer.setTableSchema(schema);
+        }
+        LogicalType[] fieldTypes = Arrays.stream(schema.getFieldDataTypes()).map(t -> t.getLogicalType()).toArray(LogicalType[]::new);
+        return new StarRocksBucketKeySelector<>(buckets, positions, widths, fieldTypes, rowTransformer);
+    }
+
+    @Override
+    public Integer getKey(T value) {
+        if (null == crc) {
+            crc = new CRC32();
+            scratch = new byte[8];
+        }
+        Object[] values = null == rowTransformer ? null : rowTransformer.transform(value, false);
+        // zlib crc32 seeded with the hash of the previous columns equals the crc32 of the columns one after another
+        crc.reset();
+        for (int i = 0; i < positions.length; i++) {
+            Object field = null == values ? fieldGetters[i].getFieldOrNull((RowData) value) : values[positions[i]];
+            if (null == field) {
+                crc.update(NULL_BYTES, 0, NULL_BYTES.length);
+            } else if (0 == widths[i]) {
+                byte[] bytes = field instanceof StringData ? ((StringData) field).toBytes() : field.toString().getBytes(StandardCharsets.UTF_8);
+                crc.update(bytes, 0, bytes.length);
+            } else {
+                long val = field instanceof Boolean ? (((Boolean) field) ? 1L : 0L)
+                    : field instanceof Number ? ((Number) field).longValue() : Long.parseLong(field.toString().trim());
+                for (int b = 0; b < widths[i]; b++) {
+                    scratch[b] = (byte) (val >>> (8 * b));
+                }
+                crc.update(scratch, 0, widths[i]);
+            }
+        }
+        return (int) (crc.getValue() % buckets);
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Sends the rows of a bucket to the subtask `bucket % parallelism`, so that each subtask owns a set of buckets.
+     */
+    public static final class BucketPartitioner implements Partitioner<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public int partition(Integer bucket, int numPartitions) {
+            return bucket % numPartitions;
+        }
+    }
+}
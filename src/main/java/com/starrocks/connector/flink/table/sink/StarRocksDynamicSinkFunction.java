@@ -14,10 +14,13 @@
 
 package com.starrocks.connector.flink.table.sink;
 
+import org.apache.flink.api.common.state.CheckpointListener;
 import org.apache.flink.api.common.state.ListState;
 import org.apache.flink.api.common.state.ListStateDescriptor;
 import org.apache.flink.api.common.typeinfo.TypeHint;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeutils.base.MapSerializer;
+import org.apache.flink.api.common.typeutils.base.StringSerializer;
 import org.apache.flink.configuration.Configuration;
 import org.apache.flink.metrics.Counter;
 import org.apache.flink.runtime.state.FunctionInitializationContext;
@@ -25,9 +28,7 @@ import org.apache.flink.runtime.state.FunctionSnapshotContext;
 import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
 import org.apache.flink.streaming.api.functions.sink.RichSinkFunction;
 import org.apache.flink.table.api.TableSchema;
-import org.apache.flink.table.data.RowData;
 import org.apache.flink.table.data.binary.NestedRowData;
-import org.apache.flink.types.RowKind;
 import org.apache.flink.util.InstantiationUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,42 +38,70 @@ import net.sf.jsqlparser.statement.Statement;
 import net.sf.jsqlparser.statement.alter.Alter;
 import net.sf.jsqlparser.statement.truncate.Truncate;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 import com.starrocks.connector.flink.manager.StarRocksSinkBufferEntity;
+import com.starrocks.connector.flink.manager.StarRocksSinkBufferEntitySerializer;
 import com.starrocks.connector.flink.manager.StarRocksSinkManager;
+import com.starrocks.connector.flink.manager.StarRocksSinkSegment;
+import com.starrocks.connector.flink.manager.StarRocksSinkTransaction;
 import com.starrocks.connector.flink.row.sink.StarRocksIRowTransformer;
-import com.starrocks.connector.flink.row.sink.StarRocksISerializer;
-import com.starrocks.connector.flink.row.sink.StarRocksSerializerFactory;
 
-public class StarRocksDynamicSinkFunction<T> extends RichSinkFunction<T> implements CheckpointedFunction {
+public class StarRocksDynamicSinkFunction<T> extends RichSinkFunction<T> implements CheckpointedFunction, CheckpointListener {
 
     private static final long serialVersionUID = 1L;
     private static final Logger LOG = LoggerFactory.getLogger(StarRocksDynamicSinkFunction.class);
 
     private StarRocksSinkManager sinkManager;
-    private StarRocksIRowTransformer<T> rowTransformer;
     private StarRocksSinkOptions sinkOptions;
-    private StarRocksISerializer serializer;
+    private StarRocksSinkRowWriter<T> rowWriter;
+    // names the spill directories of the subtasks, the same across the restarts of the job
+    private final String spillId = UUID.randomUUID().toString();
     private transient Counter totalInvokeRowsTime;
     private transient Counter totalInvokeRows;
     private static final String COUNTER_INVOKE_ROWS_COST_TIME = "totalInvokeRowsTimeNs";
     private static final String COUNTER_INVOKE_ROWS = "totalInvokeRows";
+    // the invoke time is measured for one row out of every 64 (a power of 2), and scaled up
+    private static final int INVOKE_TIME_SAMPLE_INTERVAL = 64;
+    private transient long invokedRows;
+
+    private static final String LEGACY_BUFFERED_ROWS_STATE = "buffered-rows";
 
     // state only works with `StarRocksSinkSemantic.EXACTLY_ONCE`
     private transient ListState<Map<String, StarRocksSinkBufferEntity>> checkpointedState;
+    // with `sink.exactly-once.spill` the descriptors of the spilled segments are checkpointed instead of the rows
+    private transient ListState<StarRocksSinkSegment> spilledSegmentState;
+    // and the paths of the segments of all the subtasks, to tell the ones to delete on restore
+    private transient ListState<String> spilledPathState;
+    private transient Set<String> restoredSpilledPaths;
+    // id of the checkpoint the segments of `spilledSegmentState` were spilled for
+    private transient long spilledCheckpointId = Long.MIN_VALUE;
+    private transient boolean finished;
+    // with `sink.exactly-once.transaction` the prepared transactions are checkpointed instead of the rows
+    private transient ListState<StarRocksSinkTransaction> preparedTransactionState;
+    // and the transactions begun after them, rolled back on restore
+    private transient ListState<StarRocksSinkTransaction> nextTransactionState;
+    // prepared transactions by the checkpoint they are committed with
+    private transient NavigableMap<Long, List<StarRocksSinkTransaction>> preparedTransactions;
  
     public StarRocksDynamicSinkFunction(StarRocksSinkOptions sinkOptions, TableSchema schema, StarRocksIRowTransformer<T> rowTransformer) {
         this.sinkManager = new StarRocksSinkManager(sinkOptions, schema);
-        rowTransformer.setTableSchema(schema);
-        this.serializer = StarRocksSerializerFactory.createSerializer(sinkOptions, schema.getFieldNames());
-        this.rowTransformer = rowTransformer;
+        this.rowWriter = new StarRocksSinkRowWriter<>(sinkManager, sinkOptions, schema, rowTransformer);
         this.sinkOptions = sinkOptions;
     }
  
     public StarRocksDynamicSinkFunction(StarRocksSinkOptions sinkOptions) {
         this.sinkManager = new StarRocksSinkManager(sinkOptions, null);
+        this.rowWriter = new StarRocksSinkRowWriter<>(sinkManager, sinkOptions);
         this.sinkOptions = sinkOptions;
     }
  
@@ -80,37 +109,24 @@ public class StarRocksDynamicSinkFunction<T> extends RichSinkFunction<T> impleme
     public void open(Configuration parameters) throws Exception {
         super.open(parameters);
         sinkManager.setRuntimeContext(getRuntimeContext());
+        if (null != restoredSpilledPaths) {
+            sinkManager.openSpillStore(spillId + "-" + getRuntimeContext().getIndexOfThisSubtask(), restoredSpilledPaths);
+        }
         totalInvokeRows = getRuntimeContext().getMetricGroup().counter(COUNTER_INVOKE_ROWS);
         totalInvokeRowsTime = getRuntimeContext().getMetricGroup().counter(COUNTER_INVOKE_ROWS_COST_TIME);
-        if (null != rowTransformer) {
-            rowTransformer.setRuntimeContext(getRuntimeContext());
-        }
+        rowWriter.open(getRuntimeContext());
         sinkManager.startScheduler();
         sinkManager.startAsyncFlushing();
     }
 
+    // invoke, snapshotState and close are all called by the task thread, the manager takes care of its own threads
     @Override
-    public synchronized void invoke(T value, Context context) throws Exception {
-        long start = System.nanoTime();
-        if (StarRocksSinkSemantic.EXACTLY_ONCE.equals(sinkOptions.getSemantic())) {
+    public void invoke(T value, Context context) throws Exception {
+        boolean timed = 0 == (invokedRows++ & (INVOKE_TIME_SAMPLE_INTERVAL - 1));
+        long start = timed ? System.nanoTime() : 0L;
+        if (hasCheckpointedRows()) {
             flushPreviousState();
         }
-        if (null == serializer) {
-            if (value instanceof StarRocksSinkRowDataWithMeta) {
-                StarRocksSinkRowDataWithMeta data = (StarRocksSinkRowDataWithMeta)value;
-                if (Strings.isNullOrEmpty(data.getDatabase()) || Strings.isNullOrEmpty(data.getTable()) || null == data.getDataRows()) {
-                    LOG.warn(String.format("json row data not fullfilled. {database: %s, table: %s, dataRows: %s}", data.getDatabase(), data.getTable(), data.getDataRows()));
-                    return;
-                }
-                sinkManager.writeRecords(data.getDatabase(), data.getTable(), data.getDataRows());
-                return;
-            }
-            // raw data sink
-            sinkManager.writeRecords(sinkOptions.getDatabaseName(), sinkOptions.getTableName(), (String) value);
-            totalInvokeRows.inc(1);
-            totalInvokeRowsTime.inc(System.nanoTime() - start);
-            return;
-        }
         if (value instanceof NestedRowData) {
             final int headerSize = 256;
             NestedRowData ddlData = (NestedRowData) value;
@@ -138,23 +154,16 @@ public class StarRocksDynamicSinkFunction<T> extends RichSinkFunction<T> impleme
                 Alter alter = (Alter) stmt;
             }
         }
-        if (value instanceof RowData) {
-            if (RowKind.UPDATE_BEFORE.equals(((RowData)value).getRowKind())) {
-                // do not need update_before, cauz an update action happened on the primary keys will be separated into `delete` and `create`
-                return;
-            }
-            if (!sinkOptions.supportUpsertDelete() && RowKind.DELETE.equals(((RowData)value).getRowKind())) {
-                // let go the UPDATE_AFTER and INSERT rows for tables who have a group of `unique` or `duplicate` keys.
-                return;
-            }
+        if (rowWriter.write(value)) {
+            countInvokedRow(timed, start);
         }
-        sinkManager.writeRecords(
-            sinkOptions.getDatabaseName(),
-            sinkOptions.getTableName(),
-            serializer.serialize(rowTransformer.transform(value, sinkOptions.supportUpsertDelete()))
-        );
+    }
+
+    private void countInvokedRow(boolean timed, long start) {
         totalInvokeRows.inc(1);
-        totalInvokeRowsTime.inc(System.nanoTime() - start);
+        if (timed) {
+            totalInvokeRowsTime.inc((System.nanoTime() - start) * INVOKE_TIME_SAMPLE_INTERVAL);
+        }
     }
 
     @Override
@@ -162,16 +171,73 @@ public class StarRocksDynamicSinkFunction<T> extends RichSinkFunction<T> impleme
         if (!StarRocksSinkSemantic.EXACTLY_ONCE.equals(sinkOptions.getSemantic())) {
             return;
         }
+        if (sinkOptions.isSinkExactlyOnceTransaction()) {
+            preparedTransactions = new TreeMap<>();
+            preparedTransactionState = context.getOperatorStateStore().getListState(
+                new ListStateDescriptor<>("prepared-transactions", StarRocksSinkTransaction.class));
+            nextTransactionState = context.getOperatorStateStore().getListState(
+                new ListStateDescriptor<>("next-transactions", StarRocksSinkTransaction.class));
+            // the transactions of the restored checkpoint, which has completed, might not have been committed before the failover
+            List<StarRocksSinkTransaction> restored = new ArrayList<>();
+            for (StarRocksSinkTransaction txn : preparedTransactionState.get()) {
+                restored.add(txn);
+            }
+            List<StarRocksSinkTransaction> next = new ArrayList<>();
+            for (StarRocksSinkTransaction txn : nextTransactionState.get()) {
+                next.add(txn);
+            }
+            sinkManager.restoreTransactions(restored, next);
+            preparedTransactionState.clear();
+            return;
+        }
+        if (sinkOptions.isSinkExactlyOnceSpill()) {
+            spilledSegmentState = context.getOperatorStateStore().getListState(
+                new ListStateDescriptor<>("spilled-segments", StarRocksSinkSegment.class));
+            spilledPathState = context.getOperatorStateStore().getUnionListState(
+                new ListStateDescriptor<>("spilled-segment-paths", String.class));
+            restoredSpilledPaths = new HashSet<>();
+            for (String path : spilledPathState.get()) {
+                restoredSpilledPaths.add(path);
+            }
+            return;
+        }
         ListStateDescriptor<Map<String, StarRocksSinkBufferEntity>> descriptor =
             new ListStateDescriptor<>(
-                "buffered-rows",
-                TypeInformation.of(new TypeHint<Map<String, StarRocksSinkBufferEntity>>(){})
+                "buffered-batches",
+                new MapSerializer<>(StringSerializer.INSTANCE, new StarRocksSinkBufferEntitySerializer(sinkOptions.isSinkExactlyOnceStateCompression()))
             );
         checkpointedState = context.getOperatorStateStore().getListState(descriptor);
+        if (context.isRestored()) {
+            // the rows checkpointed with Kryo before `StarRocksSinkBufferEntitySerializer`
+            ListState<Map<String, StarRocksSinkBufferEntity>> legacyState = context.getOperatorStateStore().getListState(
+                new ListStateDescriptor<>(LEGACY_BUFFERED_ROWS_STATE, TypeInformation.of(new TypeHint<Map<String, StarRocksSinkBufferEntity>>(){})));
+            for (Map<String, StarRocksSinkBufferEntity> state : legacyState.get()) {
+                checkpointedState.add(state);
+            }
+            legacyState.clear();
+        }
     }
 
     @Override
-    public synchronized void snapshotState(FunctionSnapshotContext context) throws Exception {
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        if (null != preparedTransactionState) {
+            preparedTransactions.put(context.getCheckpointId(), sinkManager.prepareTransactions());
+            List<StarRocksSinkTransaction> pending = new ArrayList<>();
+            for (List<StarRocksSinkTransaction> transactions : preparedTransactions.values()) {
+                pending.addAll(transactions);
+            }
+            preparedTransactionState.update(pending);
+            nextTransactionState.update(sinkManager.getNextTransactions());
+            return;
+        }
+        if (null != spilledSegmentState) {
+            flushPreviousState();
+            List<StarRocksSinkSegment> segments = sinkManager.spillBufferedBatches();
+            spilledSegmentState.update(segments);
+            spilledPathState.update(segments.stream().map(StarRocksSinkSegment::getPath).collect(Collectors.toList()));
+            spilledCheckpointId = context.getCheckpointId();
+            return;
+        }
         if (StarRocksSinkSemantic.EXACTLY_ONCE.equals(sinkOptions.getSemantic())) {
             flushPreviousState();
             // save state
@@ -182,15 +248,64 @@ public class StarRocksDynamicSinkFunction<T> extends RichSinkFunction<T> impleme
     }
 
     @Override
-    public synchronized void close() throws Exception {
+    public void notifyCheckpointComplete(long checkpointId) throws Exception {
+        if (null != spilledSegmentState) {
+            // the segments loaded before are not restored from the checkpoint any more
+            sinkManager.deleteLoadedSegments(checkpointId);
+            return;
+        }
+        if (null == preparedTransactions) {
+            return;
+        }
+        // a notification might be missed, the transactions of the checkpoints before are committed as well
+        NavigableMap<Long, List<StarRocksSinkTransaction>> completed = preparedTransactions.headMap(checkpointId, true);
+        for (List<StarRocksSinkTransaction> transactions : completed.values()) {
+            sinkManager.commitTransactions(transactions);
+        }
+        completed.clear();
+    }
+
+    @Override
+    public void finish() throws Exception {
+        finished = true;
+        if (null != preparedTransactions) {
+            // end of the input: no checkpoint follows to commit the rows loaded since the last one
+            preparedTransactions.put(Long.MAX_VALUE, sinkManager.prepareTransactions());
+            notifyCheckpointComplete(Long.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
         super.close();
-        if (StarRocksSinkSemantic.EXACTLY_ONCE.equals(sinkOptions.getSemantic())) {
+        if (hasCheckpointedRows()) {
             flushPreviousState();
         }
         sinkManager.close();
+        if (finished && null != spilledSegmentState) {
+            // no checkpoint is restored from after the end of the input, otherwise the segments of the last one are kept
+            sinkManager.deleteLoadedSegments(Long.MAX_VALUE);
+        }
+    }
+
+    private boolean hasCheckpointedRows() {
+        return null != checkpointedState || null != spilledSegmentState;
     }
 
     private void flushPreviousState() throws Exception {
+        if (null != spilledSegmentState) {
+            // load the segments spilled before the previous checkpoint
+            List<StarRocksSinkSegment> segments = new ArrayList<>();
+            for (StarRocksSinkSegment segment : spilledSegmentState.get()) {
+                segments.add(segment);
+            }
+            if (!segments.isEmpty()) {
+                // the files are deleted once a checkpoint without them completes
+                sinkManager.loadSegments(spilledCheckpointId, segments);
+                spilledSegmentState.clear();
+            }
+            return;
+        }
         // flush the batch saved at the previous checkpoint
         for (Map<String, StarRocksSinkBufferEntity> state : checkpointedState.get()) {
             sinkManager.setBufferedBatchMap(state);
@@ -198,4 +313,4 @@ public class StarRocksDynamicSinkFunction<T> extends RichSinkFunction<T> impleme
         }
         checkpointedState.clear();
     }
-}
\ No newline at end of file
+}
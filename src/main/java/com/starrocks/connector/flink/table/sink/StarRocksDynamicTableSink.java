@@ -17,8 +17,10 @@ package com.starrocks.connector.flink.table.sink;
 import com.starrocks.connector.flink.row.sink.StarRocksTableRowTransformer;
 
 import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.streaming.api.datastream.DataStreamSink;
 import org.apache.flink.table.api.TableSchema;
 import org.apache.flink.table.connector.ChangelogMode;
+import org.apache.flink.table.connector.sink.DataStreamSinkProvider;
 import org.apache.flink.table.connector.sink.DynamicTableSink;
 import org.apache.flink.table.connector.sink.SinkFunctionProvider;
 import org.apache.flink.table.data.RowData;
@@ -47,7 +49,19 @@ public class StarRocksDynamicTableSink implements DynamicTableSink {
             flinkSchema,
             new StarRocksTableRowTransformer(rowDataTypeInfo)
         );
-        return SinkFunctionProvider.of(starrocksSinkFunction, sinkOptions.getSinkParallelism());
+        if (!sinkOptions.isSinkPartitionByBucket()) {
+            return SinkFunctionProvider.of(starrocksSinkFunction, sinkOptions.getSinkParallelism());
+        }
+        Integer parallelism = sinkOptions.getSinkParallelism();
+        // the planner asks for the provider on each planning pass, the distribution is only looked up once the job is translated
+        return (DataStreamSinkProvider) dataStream -> {
+            StarRocksBucketKeySelector<RowData> bucketSelector = StarRocksBucketKeySelector.create(sinkOptions, flinkSchema, null);
+            DataStreamSink<RowData> sink = (null == bucketSelector ? dataStream
+                : dataStream.partitionCustom(new StarRocksBucketKeySelector.BucketPartitioner(), bucketSelector))
+                .addSink(starrocksSinkFunction)
+                .name(asSummaryString());
+            return null == parallelism ? sink : sink.setParallelism(parallelism);
+        };
     }
  
     @Override
@@ -61,10 +61,35 @@ public class StarRocksDynamicTableSinkFactory implements DynamicTableSinkFactory
         optionalOptions.add(StarRocksSinkOptions.SINK_BATCH_MAX_ROWS);
         optionalOptions.add(StarRocksSinkOptions.SINK_BATCH_FLUSH_INTERVAL);
         optionalOptions.add(StarRocksSinkOptions.SINK_MAX_RETRIES);
+        optionalOptions.add(StarRocksSinkOptions.SINK_RETRY_BACKOFF);
+        optionalOptions.add(StarRocksSinkOptions.SINK_RETRY_MAX_BACKOFF);
         optionalOptions.add(StarRocksSinkOptions.SINK_SEMANTIC);
         optionalOptions.add(StarRocksSinkOptions.SINK_BATCH_OFFER_TIMEOUT);
         optionalOptions.add(StarRocksSinkOptions.SINK_PARALLELISM);
         optionalOptions.add(StarRocksSinkOptions.SINK_LABEL_PREFIX);
+        optionalOptions.add(StarRocksSinkOptions.SINK_IO_THREAD_COUNT);
+        optionalOptions.add(StarRocksSinkOptions.SINK_IO_MAX_INFLIGHT_LOADS);
+        optionalOptions.add(StarRocksSinkOptions.SINK_BUFFER_OFF_HEAP);
+        optionalOptions.add(StarRocksSinkOptions.SINK_BUFFER_OFF_HEAP_CHUNK_SIZE);
+        optionalOptions.add(StarRocksSinkOptions.SINK_BUFFER_OFF_HEAP_MAX_BYTES);
+        optionalOptions.add(StarRocksSinkOptions.SINK_LOAD_URL_HEALTH_CHECK_INTERVAL);
+        optionalOptions.add(StarRocksSinkOptions.SINK_LOAD_URL_DIRECT_BACKEND);
+        optionalOptions.add(StarRocksSinkOptions.SINK_EXACTLY_ONCE_TRANSACTION);
+        optionalOptions.add(StarRocksSinkOptions.SINK_EXACTLY_ONCE_SPILL);
+        optionalOptions.add(StarRocksSinkOptions.SINK_EXACTLY_ONCE_STATE_COMPRESSION);
+        optionalOptions.add(StarRocksSinkOptions.SINK_LOAD_URL_BACKEND_REFRESH_INTERVAL);
+        optionalOptions.add(StarRocksSinkOptions.SINK_BUFFER_MAX_BYTES);
+        optionalOptions.add(StarRocksSinkOptions.SINK_BUFFER_COMPACTION);
+        optionalOptions.add(StarRocksSinkOptions.SINK_PARTIAL_UPDATE);
+        optionalOptions.add(StarRocksSinkOptions.SINK_DEAD_LETTER_DIR);
+        optionalOptions.add(StarRocksSinkOptions.SINK_DEAD_LETTER_MAX_BISECT_LOADS);
+        optionalOptions.add(StarRocksSinkOptions.SINK_PARTITION_BY_BUCKET);
+        optionalOptions.add(StarRocksSinkOptions.SINK_PARTITION_GROUPING);
+        optionalOptions.add(StarRocksSinkOptions.SINK_PARTITION_GROUPING_LATE_FLUSH_INTERVAL);
+        optionalOptions.add(StarRocksSinkOptions.SINK_COMPRESSION);
+        optionalOptions.add(StarRocksSinkOptions.SINK_BATCH_ADAPTIVE);
+        optionalOptions.add(StarRocksSinkOptions.SINK_BATCH_ADAPTIVE_MIN_SIZE);
+        optionalOptions.add(StarRocksSinkOptions.SINK_BATCH_ADAPTIVE_TARGET_LOAD_TIME);
         return optionalOptions;
     }
 }
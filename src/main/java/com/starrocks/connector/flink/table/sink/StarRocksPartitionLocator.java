@@ -0,0 +1,248 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.table.sink;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.data.TimestampData;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.table.types.logical.LogicalTypeRoot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Locates the StarRocks partition of each row for `sink.buffer.partition-grouping`, from the ranges of `SHOW PARTITIONS`.
+ * Only tables range partitioned on a single column of a date, datetime or integer type are supported.
+ * The partitions are cached, and fetched again at most once a minute when a row falls out of all of them,
+ * e.g. after a dynamic partition is created. The bounds and the values are compared as longs: the integers as they are,
+ * the dates and datetimes as microseconds since the epoch.
+ * Created by each subtask when it opens, as the partitions and the latest one written to are its own.
+ */
+class StarRocksPartitionLocator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StarRocksPartitionLocator.class);
+
+    private static final long REFRESH_INTERVAL_MS = 60000L;
+    // e.g. `[types: [DATE]; keys: [2022-01-01]; ..types: [DATE]; keys: [2022-02-01]; )`
+    private static final Pattern RANGE_BOUND = Pattern.compile("types: \\[([A-Z]+)\\]; keys: \\[([^\\]]*)\\];");
+    private static final List<String> DATE_TYPES = Arrays.asList("DATE", "DATETIME");
+    private static final List<String> INTEGER_TYPES = Arrays.asList("TINYINT", "SMALLINT", "INT", "BIGINT");
+
+    private final Supplier<List<Map<String, Object>>> partitionsSupplier;
+    private final int position;
+    private final RowData.FieldGetter fieldGetter;
+    private final boolean dateField;
+    private boolean datePartitioned;
+    // sorted by the lower bounds, which do not overlap
+    private Partition[] partitions;
+    private long lastRefreshTime;
+    // incremented each time the partitions are fetched again
+    private int version;
+    // lower bound of the latest partition written to, the rows of the earlier ones are late
+    private long latestLowerBound = Long.MIN_VALUE;
+
+    private StarRocksPartitionLocator(Supplier<List<Map<String, Object>>> partitionsSupplier, int position, LogicalType fieldType) {
+        this.partitionsSupplier = partitionsSupplier;
+        this.position = position;
+        this.fieldGetter = RowData.createFieldGetter(fieldType, position);
+        this.dateField = LogicalTypeRoot.DATE.equals(fieldType.getTypeRoot());
+    }
+
+    /**
+     * @param partitionsSupplier rows of `SHOW PARTITIONS` of the table.
+     * @param fieldNames fields of the sink, the partition column is one of them.
+     * @return null if the table is not range partitioned on a single supported column of the sink, the rows are not grouped then.
+     */
+    static StarRocksPartitionLocator create(Supplier<List<Map<String, Object>>> partitionsSupplier, String[] fieldNames, LogicalType[] fieldTypes) {
+        List<Map<String, Object>> rows = partitionsSupplier.get();
+        Object partitionKey = null == rows || rows.isEmpty() ? null : rows.get(0).get("PartitionKey");
+        if (null == partitionKey || partitionKey.toString().trim().isEmpty() || partitionKey.toString().contains(",")) {
+            LOG.warn(String.format("Table is not range partitioned on a single column: %s, the rows are not grouped by partition.", partitionKey));
+            return null;
+        }
+        String column = partitionKey.toString().trim().replace("`", "");
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (fieldNames[i].equalsIgnoreCase(column)) {
+                StarRocksPartitionLocator locator = new StarRocksPartitionLocator(partitionsSupplier, i, fieldTypes[i]);
+                if (!locator.load(rows)) {
+                    return null;
+                }
+                LOG.info(String.format("Grouping the rows by the %d partitions of the partition column [%s].", locator.partitions.length, column));
+                return locator;
+            }
+        }
+        LOG.warn(String.format("Partition column [%s] is missing from the sink, the rows are not grouped by partition.", column));
+        return null;
+    }
+
+    /**
+     * @param value the row if {@code values} is null, otherwise the transformed values of the row.
+     * @return null if the partition is unknown, the row goes to the batch of the rows of no partition then.
+     */
+    Partition locate(Object value, Object[] values) {
+        Object field = null == values ? fieldGetter.getFieldOrNull((RowData) value) : values[position];
+        if (null == field) {
+            return null;
+        }
+        long key;
+        try {
+            key = toKey(field);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        Partition partition = find(key);
+        if (null == partition && System.currentTimeMillis() - lastRefreshTime >= REFRESH_INTERVAL_MS) {
+            LOG.info(String.format("No partition found for [%s], fetching the partitions again.", field));
+            try {
+                if (load(partitionsSupplier.get())) {
+                    version++;
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to fetch the partitions of the table.", e);
+                lastRefreshTime = System.currentTimeMillis();
+            }
+            partition = find(key);
+        }
+        return partition;
+    }
+
+    /**
+     * @return the number of times the partitions were fetched again, the rows of no partition so far might belong to the new ones.
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if a later partition has been written to, the rows of the partition are late then.
+     */
+    boolean isLate(Partition partition) {
+        if (partition.lowerBound > latestLowerBound) {
+            latestLowerBound = partition.lowerBound;
+        }
+        return partition.lowerBound < latestLowerBound;
+    }
+
+    private Partition find(long key) {
+        int low = 0;
+        int high = partitions.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Partition partition = partitions[mid];
+            if (key < partition.lowerBound) {
+                high = mid - 1;
+            } else if (key >= partition.upperBound) {
+                low = mid + 1;
+            } else {
+                return partition;
+            }
+        }
+        return null;
+    }
+
+    private boolean load(List<Map<String, Object>> rows) {
+        lastRefreshTime = System.currentTimeMillis();
+        List<Partition> loaded = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            String name = String.valueOf(row.get("PartitionName"));
+            Matcher matcher = RANGE_BOUND.matcher(String.valueOf(row.get("Range")));
+            String type = null;
+            String[] bounds = new String[2];
+            for (int i = 0; i < 2 && matcher.find(); i++) {
+                type = matcher.group(1);
+                bounds[i] = matcher.group(2).trim();
+            }
+            if (null == bounds[1] || !(DATE_TYPES.contains(type) || INTEGER_TYPES.contains(type))) {
+                LOG.warn(String.format("Unsupported range of the partition [%s]: %s, the rows are not grouped by partition.", name, row.get("Range")));
+                return false;
+            }
+            datePartitioned = DATE_TYPES.contains(type);
+            try {
+                loaded.add(new Partition(name, toKey(bounds[0]), toKey(bounds[1])));
+            } catch (RuntimeException e) {
+                LOG.warn(String.format("Unsupported range of the partition [%s]: %s, the rows are not grouped by partition.", name, row.get("Range")));
+                return false;
+            }
+        }
+        loaded.sort(Comparator.comparingLong(p -> p.lowerBound));
+        partitions = loaded.toArray(new Partition[0]);
+        return true;
+    }
+
+    private long toKey(Object field) {
+        if (!datePartitioned) {
+            return field instanceof Number ? ((Number) field).longValue() : Long.parseLong(field.toString().trim());
+        }
+        LocalDateTime dateTime;
+        if (field instanceof Integer && dateField) {
+            dateTime = LocalDate.ofEpochDay((Integer) field).atStartOfDay();
+        } else if (field instanceof TimestampData) {
+            dateTime = ((TimestampData) field).toLocalDateTime();
+        } else if (field instanceof LocalDateTime) {
+            dateTime = (LocalDateTime) field;
+        } else if (field instanceof LocalDate) {
+            dateTime = ((LocalDate) field).atStartOfDay();
+        } else if (field instanceof Timestamp) {
+            dateTime = ((Timestamp) field).toLocalDateTime();
+        } else if (field instanceof java.sql.Date) {
+            dateTime = ((java.sql.Date) field).toLocalDate().atStartOfDay();
+        } else {
+            dateTime = parseDateTime(field.toString().trim());
+        }
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1000000L + dateTime.getNano() / 1000;
+    }
+
+    private static LocalDateTime parseDateTime(String val) {
+        try {
+            return val.length() <= 10 ? LocalDate.parse(val).atStartOfDay() : LocalDateTime.parse(val.replace(' ', 'T').toUpperCase(Locale.ROOT));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(String.format("Unsupported date value [%s] of the partition column.", val), e);
+        }
+    }
+
+    /**
+     * A range partition of the table, [lowerBound, upperBound).
+     */
+    static final class Partition {
+
+        private final String name;
+        private final long lowerBound;
+        private final long upperBound;
+
+        private Partition(String name, long lowerBound, long upperBound) {
+            this.name = name;
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+}
@@ -41,6 +41,14 @@ public class StarRocksSinkOptions implements Serializable {
         CSV, JSON;
     }
 
+    public enum StreamLoadCompression {
+        NONE, GZIP, LZ4_FRAME;
+
+        public String getName() {
+            return name().toLowerCase();
+        }
+    }
+
     private static final String FORMAT_KEY = "format";
     
     // required sink configurations
@@ -62,23 +70,88 @@ public class StarRocksSinkOptions implements Serializable {
         .stringType().noDefaultValue().withDescription("The prefix of the stream load label. Available values are within [-_A-Za-z0-9]");
     public static final ConfigOption<Integer> SINK_CONNECT_TIMEOUT = ConfigOptions.key("sink.connect.timeout-ms")
         .intType().defaultValue(1000).withDescription("Timeout in millisecond for connecting to the `load-url`.");
+    public static final ConfigOption<Long> SINK_LOAD_URL_HEALTH_CHECK_INTERVAL = ConfigOptions.key("sink.load-url.health-check-interval-ms")
+        .longType().defaultValue(10000L).withDescription("Interval in millisecond of checking whether the hosts of `load-url` can be connected, " +
+            "hosts failing a load are ejected for at least this long.");
+    public static final ConfigOption<Boolean> SINK_LOAD_URL_DIRECT_BACKEND = ConfigOptions.key("sink.load-url.direct-backend")
+        .booleanType().defaultValue(false).withDescription("Send the stream loads straight to the http ports of the backends in rotation instead of " +
+            "being redirected by the frontends of `load-url`, falling back to `load-url` if a backend fails.");
+    public static final ConfigOption<Long> SINK_LOAD_URL_BACKEND_REFRESH_INTERVAL = ConfigOptions.key("sink.load-url.direct-backend.refresh-interval-ms")
+        .longType().defaultValue(60000L).withDescription("Interval in millisecond of refreshing the backends with `SHOW BACKENDS` for `sink.load-url.direct-backend`.");
     public static final ConfigOption<String> SINK_SEMANTIC = ConfigOptions.key("sink.semantic")
         .stringType().defaultValue(StarRocksSinkSemantic.AT_LEAST_ONCE.getName()).withDescription("Fault tolerance guarantee. `at-least-once` or `exactly-once`");
+    public static final ConfigOption<Boolean> SINK_EXACTLY_ONCE_TRANSACTION = ConfigOptions.key("sink.exactly-once.transaction")
+        .booleanType().defaultValue(false).withDescription("Load the rows with the stream load transactions of StarRocks for `exactly-once`: " +
+            "rows are loaded between checkpoints, the transactions are prepared at checkpoints and committed once the checkpoints complete.");
+    public static final ConfigOption<Boolean> SINK_EXACTLY_ONCE_SPILL = ConfigOptions.key("sink.exactly-once.spill")
+        .booleanType().defaultValue(false).withDescription("Spill the batches reaching `sink.buffer-flush.max-bytes` or `sink.buffer-flush.max-rows` to local segment files " +
+            "with `exactly-once` (without `sink.exactly-once.transaction`), and checkpoint the descriptors of the segments instead of the rows.");
+    public static final ConfigOption<Boolean> SINK_EXACTLY_ONCE_STATE_COMPRESSION = ConfigOptions.key("sink.exactly-once.state-compression")
+        .booleanType().defaultValue(false).withDescription("Compress the blocks of rows checkpointed with `exactly-once` with lz4.");
     public static final ConfigOption<Long> SINK_BATCH_MAX_SIZE = ConfigOptions.key("sink.buffer-flush.max-bytes")
         .longType().defaultValue(90L * MEGA_BYTES_SCALE).withDescription("Max data bytes of the flush.");
     public static final ConfigOption<Long> SINK_BATCH_MAX_ROWS = ConfigOptions.key("sink.buffer-flush.max-rows")
         .longType().defaultValue(500000L).withDescription("Max row count of the flush.");
     public static final ConfigOption<Long> SINK_BATCH_FLUSH_INTERVAL = ConfigOptions.key("sink.buffer-flush.interval-ms")
         .longType().defaultValue(300000L).withDescription("Flush interval of the row batch in millisecond.");
+    public static final ConfigOption<Boolean> SINK_BATCH_ADAPTIVE = ConfigOptions.key("sink.buffer-flush.adaptive")
+        .booleanType().defaultValue(false).withDescription("Grow or shrink the flushed batches between `sink.buffer-flush.adaptive.min-bytes` and " +
+            "`sink.buffer-flush.max-bytes` (and the row count in proportion) to keep the stream load time close to the target.");
+    public static final ConfigOption<Long> SINK_BATCH_ADAPTIVE_MIN_SIZE = ConfigOptions.key("sink.buffer-flush.adaptive.min-bytes")
+        .longType().defaultValue(16L * MEGA_BYTES_SCALE).withDescription("Min data bytes of the flush with `sink.buffer-flush.adaptive`.");
+    public static final ConfigOption<Long> SINK_BATCH_ADAPTIVE_TARGET_LOAD_TIME = ConfigOptions.key("sink.buffer-flush.adaptive.target-load-ms")
+        .longType().defaultValue(10000L).withDescription("Stream load time in millisecond the batches are sized for with `sink.buffer-flush.adaptive`.");
     public static final ConfigOption<Integer> SINK_MAX_RETRIES = ConfigOptions.key("sink.max-retries")
         .intType().defaultValue(3).withDescription("Max flushing retry times of the row batch.");
+    public static final ConfigOption<Long> SINK_RETRY_BACKOFF = ConfigOptions.key("sink.retry.backoff-ms")
+        .longType().defaultValue(1000L).withDescription("Backoff before the first retry of a failed batch, doubled for each following retry, with jitter.");
+    public static final ConfigOption<Long> SINK_RETRY_MAX_BACKOFF = ConfigOptions.key("sink.retry.max-backoff-ms")
+        .longType().defaultValue(10000L).withDescription("Max backoff between the retries of a failed batch.");
     public static final ConfigOption<Long> SINK_BATCH_OFFER_TIMEOUT = ConfigOptions.key("sink.buffer-flush.enqueue-timeout-ms")
         .longType().defaultValue(600000L).withDescription("Offer to flushQueue timeout in millisecond.");
     public static final ConfigOption<Integer> SINK_METRIC_HISTOGRAM_WINDOW_SIZE = ConfigOptions.key("sink.metric.histogram-window-size")
         .intType().defaultValue(100).withDescription("Window size of histogram metrics.");
+    public static final ConfigOption<Integer> SINK_IO_THREAD_COUNT = ConfigOptions.key("sink.io.thread-count")
+        .intType().defaultValue(1).withDescription("Number of threads doing the stream load of the flushed batches.");
+    public static final ConfigOption<Integer> SINK_IO_MAX_INFLIGHT_LOADS = ConfigOptions.key("sink.io.max-inflight-loads")
+        .intType().defaultValue(2).withDescription("Max number of flushed batches which are waiting for or doing the stream load.");
+    public static final ConfigOption<Boolean> SINK_BUFFER_OFF_HEAP = ConfigOptions.key("sink.buffer.off-heap")
+        .booleanType().defaultValue(false).withDescription("Buffer the serialized rows in pooled direct memory chunks instead of heap arrays.");
+    public static final ConfigOption<Long> SINK_BUFFER_OFF_HEAP_CHUNK_SIZE = ConfigOptions.key("sink.buffer.off-heap.chunk-size")
+        .longType().defaultValue(MEGA_BYTES_SCALE).withDescription("Size of the direct memory chunks of the off-heap buffer.");
+    public static final ConfigOption<Long> SINK_BUFFER_OFF_HEAP_MAX_BYTES = ConfigOptions.key("sink.buffer.off-heap.max-bytes")
+        .longType().noDefaultValue().withDescription("Max direct memory of the off-heap buffer, writing blocks once it is used up. " +
+            "Defaults to `sink.buffer-flush.max-bytes` * (`sink.io.max-inflight-loads` + 1).");
+    public static final ConfigOption<Boolean> SINK_BUFFER_COMPACTION = ConfigOptions.key("sink.buffer.compaction")
+        .booleanType().defaultValue(false).withDescription("Keep only the last row of each primary key within a batch, for primary-key tables.");
+    public static final ConfigOption<Boolean> SINK_PARTIAL_UPDATE = ConfigOptions.key("sink.partial-update")
+        .booleanType().defaultValue(false).withDescription("Load only the primary key and the non-null columns of each row, for primary-key tables. " +
+            "Rows with the same columns are loaded together, with the `columns` and `partial_update` headers of their own. " +
+            "A null column is left out of the row, so a partial update keeps its current value: columns can not be set to NULL this way.");
+    public static final ConfigOption<Long> SINK_BUFFER_MAX_BYTES = ConfigOptions.key("sink.buffer.max-bytes")
+        .longType().noDefaultValue().withDescription("Max bytes of the rows buffered across all the tables, the largest buffers are flushed once it is exceeded. " +
+            "Defaults to 2 * `sink.buffer-flush.max-bytes`.");
+    public static final ConfigOption<String> SINK_COMPRESSION = ConfigOptions.key("sink.compression")
+        .stringType().defaultValue(StreamLoadCompression.NONE.getName()).withDescription("Compression of the stream load body: `none`, `gzip` or `lz4_frame`.");
+    public static final ConfigOption<Boolean> SINK_PARTITION_BY_BUCKET = ConfigOptions.key("sink.partition-by-bucket")
+        .booleanType().defaultValue(false).withDescription("Partition the rows among the sink subtasks by the StarRocks bucket they go to, " +
+            "so that each subtask loads the tablets of its own buckets. For hash distributions on integer, boolean and string columns.");
+    public static final ConfigOption<Boolean> SINK_PARTITION_GROUPING = ConfigOptions.key("sink.buffer.partition-grouping")
+        .booleanType().defaultValue(false).withDescription("Buffer the rows of each partition of the table in batches of their own, so that each load writes to a single partition. " +
+            "For tables range partitioned on a single column of a date, datetime or integer type.");
+    public static final ConfigOption<Long> SINK_PARTITION_GROUPING_LATE_FLUSH_INTERVAL = ConfigOptions.key("sink.buffer.partition-grouping.late-flush-interval-ms")
+        .longType().defaultValue(600000L).withDescription("Flush interval in millisecond of the batches of the partitions earlier than the latest one written to, with `sink.buffer.partition-grouping`.");
+    public static final ConfigOption<String> SINK_DEAD_LETTER_DIR = ConfigOptions.key("sink.dead-letter.dir")
+        .stringType().noDefaultValue().withDescription("Local directory of the rows failing the load on data quality. If set, the batches failing on data quality " +
+            "are split in halves until the failing rows are isolated, the other rows are loaded and the failing ones are written to a file in the directory. " +
+            "The rows filtered out within `max_filter_ratio` by a half which is loaded are dropped, without being written to the file.");
+    public static final ConfigOption<Integer> SINK_DEAD_LETTER_MAX_BISECT_LOADS = ConfigOptions.key("sink.dead-letter.max-bisect-loads")
+        .intType().defaultValue(64).withDescription("Max number of loads of the halves of a batch failing on data quality, with `sink.dead-letter.dir`. " +
+            "Once reached, the failing halves are written to the dead-letter file as a whole, with their rows not failing the load, instead of being split again.");
 
     public static final ConfigOption<Integer> SINK_PARALLELISM = FactoryUtil.SINK_PARALLELISM;
 
+    private static final Set<String> SINK_COMPRESSION_ENUMS = Arrays.stream(StreamLoadCompression.values()).map(c -> c.getName()).collect(Collectors.toSet());
     // Sink semantic
     private static final Set<String> SINK_SEMANTIC_ENUMS = Arrays.stream(StarRocksSinkSemantic.values()).map(s -> s.getName()).collect(Collectors.toSet());
     // wild stream load properties' prefix
@@ -136,6 +209,14 @@ public class StarRocksSinkOptions implements Serializable {
         return tableOptions.get(SINK_MAX_RETRIES).intValue();
     }
 
+    public long getSinkRetryBackoff() {
+        return tableOptions.get(SINK_RETRY_BACKOFF).longValue();
+    }
+
+    public long getSinkRetryMaxBackoff() {
+        return tableOptions.get(SINK_RETRY_MAX_BACKOFF).longValue();
+    }
+
     public long getSinkMaxFlushInterval() {
         return tableOptions.get(SINK_BATCH_FLUSH_INTERVAL).longValue();
     }
@@ -148,6 +229,18 @@ public class StarRocksSinkOptions implements Serializable {
         return tableOptions.get(SINK_BATCH_MAX_SIZE).longValue();
     }
 
+    public boolean isSinkBatchAdaptive() {
+        return tableOptions.get(SINK_BATCH_ADAPTIVE);
+    }
+
+    public long getSinkAdaptiveMinBytes() {
+        return Math.min(tableOptions.get(SINK_BATCH_ADAPTIVE_MIN_SIZE).longValue(), getSinkMaxBytes());
+    }
+
+    public long getSinkAdaptiveTargetLoadTime() {
+        return tableOptions.get(SINK_BATCH_ADAPTIVE_TARGET_LOAD_TIME).longValue();
+    }
+
     public int getConnectTimeout() {
         int connectTimeout = tableOptions.get(SINK_CONNECT_TIMEOUT).intValue();
         if (connectTimeout < 100) {
@@ -159,6 +252,36 @@ public class StarRocksSinkOptions implements Serializable {
         return connectTimeout;
     }
 
+    public long getSinkLoadUrlHealthCheckInterval() {
+        return tableOptions.get(SINK_LOAD_URL_HEALTH_CHECK_INTERVAL).longValue();
+    }
+
+    /**
+     * @return true if `exactly-once` is done by stream load transactions rather than checkpointing the buffered rows.
+     */
+    public boolean isSinkExactlyOnceTransaction() {
+        return StarRocksSinkSemantic.EXACTLY_ONCE.equals(getSemantic()) && tableOptions.get(SINK_EXACTLY_ONCE_TRANSACTION).booleanValue();
+    }
+
+    /**
+     * @return true if the batches buffered until checkpoints are spilled to local segment files.
+     */
+    public boolean isSinkExactlyOnceSpill() {
+        return StarRocksSinkSemantic.EXACTLY_ONCE.equals(getSemantic()) && !isSinkExactlyOnceTransaction() && tableOptions.get(SINK_EXACTLY_ONCE_SPILL).booleanValue();
+    }
+
+    public boolean isSinkExactlyOnceStateCompression() {
+        return tableOptions.get(SINK_EXACTLY_ONCE_STATE_COMPRESSION).booleanValue();
+    }
+
+    public boolean isSinkLoadUrlDirectBackend() {
+        return tableOptions.get(SINK_LOAD_URL_DIRECT_BACKEND).booleanValue();
+    }
+
+    public long getSinkLoadUrlBackendRefreshInterval() {
+        return tableOptions.get(SINK_LOAD_URL_BACKEND_REFRESH_INTERVAL).longValue();
+    }
+
     public long getSinkOfferTimeout() {
         return tableOptions.get(SINK_BATCH_OFFER_TIMEOUT).longValue();
     }
@@ -167,6 +290,62 @@ public class StarRocksSinkOptions implements Serializable {
         return tableOptions.get(SINK_METRIC_HISTOGRAM_WINDOW_SIZE);
     }
 
+    public int getSinkIoThreadCount() {
+        return tableOptions.get(SINK_IO_THREAD_COUNT);
+    }
+
+    public int getSinkMaxInflightLoads() {
+        return tableOptions.get(SINK_IO_MAX_INFLIGHT_LOADS);
+    }
+
+    public boolean isSinkBufferOffHeap() {
+        return tableOptions.get(SINK_BUFFER_OFF_HEAP);
+    }
+
+    public int getSinkBufferOffHeapChunkSize() {
+        return tableOptions.get(SINK_BUFFER_OFF_HEAP_CHUNK_SIZE).intValue();
+    }
+
+    public long getSinkBufferOffHeapMaxBytes() {
+        return tableOptions.getOptional(SINK_BUFFER_OFF_HEAP_MAX_BYTES).orElse(getSinkMaxBytes() * (getSinkMaxInflightLoads() + 1));
+    }
+
+    public boolean isSinkBufferCompaction() {
+        return tableOptions.get(SINK_BUFFER_COMPACTION);
+    }
+
+    public boolean isSinkPartialUpdate() {
+        return tableOptions.get(SINK_PARTIAL_UPDATE);
+    }
+
+    public long getSinkBufferMaxBytes() {
+        return tableOptions.getOptional(SINK_BUFFER_MAX_BYTES).orElse(getSinkMaxBytes() * 2);
+    }
+
+    public boolean isSinkPartitionByBucket() {
+        return tableOptions.get(SINK_PARTITION_BY_BUCKET);
+    }
+
+    public boolean isSinkPartitionGrouping() {
+        return tableOptions.get(SINK_PARTITION_GROUPING);
+    }
+
+    public long getSinkPartitionGroupingLateFlushInterval() {
+        return tableOptions.get(SINK_PARTITION_GROUPING_LATE_FLUSH_INTERVAL).longValue();
+    }
+
+    public String getSinkDeadLetterDir() {
+        return tableOptions.getOptional(SINK_DEAD_LETTER_DIR).orElse(null);
+    }
+
+    public int getSinkDeadLetterMaxBisectLoads() {
+        return tableOptions.get(SINK_DEAD_LETTER_MAX_BISECT_LOADS).intValue();
+    }
+
+    public StreamLoadCompression getSinkCompression() {
+        return StreamLoadCompression.valueOf(tableOptions.get(SINK_COMPRESSION).toUpperCase());
+    }
+
     public Integer getSinkParallelism() {
         return tableOptions.getOptional(SINK_PARALLELISM).orElse(null);
     }
@@ -236,6 +415,20 @@ public class StarRocksSinkOptions implements Serializable {
                         val, SINK_MAX_RETRIES.key()));
             }
         });
+        tableOptions.getOptional(SINK_RETRY_BACKOFF).ifPresent(val -> {
+            if (val.longValue() < 10 || val.longValue() > 600000) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. Supported value range: [10, 600000].",
+                        val, SINK_RETRY_BACKOFF.key()));
+            }
+        });
+        tableOptions.getOptional(SINK_RETRY_MAX_BACKOFF).ifPresent(val -> {
+            if (val.longValue() < tableOptions.get(SINK_RETRY_BACKOFF) || val.longValue() > 3600000) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. Supported value range: ['%s', 3600000].",
+                        val, SINK_RETRY_MAX_BACKOFF.key(), SINK_RETRY_BACKOFF.key()));
+            }
+        });
         tableOptions.getOptional(SINK_BATCH_FLUSH_INTERVAL).ifPresent(val -> {
             if (val.longValue() < 1000l || val.longValue() > 3600000l) {
                 throw new ValidationException(
@@ -243,6 +436,20 @@ public class StarRocksSinkOptions implements Serializable {
                         val, SINK_BATCH_FLUSH_INTERVAL.key()));
             }
         });
+        tableOptions.getOptional(SINK_PARTITION_GROUPING_LATE_FLUSH_INTERVAL).ifPresent(val -> {
+            if (val.longValue() < 1000l || val.longValue() > 3600000l) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. Supported value range: [1000, 3600000].",
+                        val, SINK_PARTITION_GROUPING_LATE_FLUSH_INTERVAL.key()));
+            }
+        });
+        tableOptions.getOptional(SINK_DEAD_LETTER_MAX_BISECT_LOADS).ifPresent(val -> {
+            if (val.intValue() < 2 || val.intValue() > 100000) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. Supported value range: [2, 100000].",
+                        val, SINK_DEAD_LETTER_MAX_BISECT_LOADS.key()));
+            }
+        });
         tableOptions.getOptional(SINK_BATCH_MAX_ROWS).ifPresent(val -> {
             if (val.longValue() < 64000 || val.longValue() > 5000000) {
                 throw new ValidationException(
@@ -257,6 +464,34 @@ public class StarRocksSinkOptions implements Serializable {
                         val, SINK_BATCH_MAX_SIZE.key(), 64 * MEGA_BYTES_SCALE, 10 * GIGA_BYTES_SCALE));
             }
         });
+        tableOptions.getOptional(SINK_BATCH_ADAPTIVE_MIN_SIZE).ifPresent(val -> {
+            if (val.longValue() < MEGA_BYTES_SCALE || val.longValue() > tableOptions.get(SINK_BATCH_MAX_SIZE)) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. Supported value range: [%d, '%s'].",
+                        val, SINK_BATCH_ADAPTIVE_MIN_SIZE.key(), MEGA_BYTES_SCALE, SINK_BATCH_MAX_SIZE.key()));
+            }
+        });
+        tableOptions.getOptional(SINK_BATCH_ADAPTIVE_TARGET_LOAD_TIME).ifPresent(val -> {
+            if (val.longValue() < 1000 || val.longValue() > 600000) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. Supported value range: [1000, 600000].",
+                        val, SINK_BATCH_ADAPTIVE_TARGET_LOAD_TIME.key()));
+            }
+        });
+        tableOptions.getOptional(SINK_LOAD_URL_HEALTH_CHECK_INTERVAL).ifPresent(val -> {
+            if (val.longValue() < 1000 || val.longValue() > 3600000) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. Supported value range: [1000, 3600000].",
+                        val, SINK_LOAD_URL_HEALTH_CHECK_INTERVAL.key()));
+            }
+        });
+        tableOptions.getOptional(SINK_LOAD_URL_BACKEND_REFRESH_INTERVAL).ifPresent(val -> {
+            if (val.longValue() < 1000 || val.longValue() > 3600000) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. Supported value range: [1000, 3600000].",
+                        val, SINK_LOAD_URL_BACKEND_REFRESH_INTERVAL.key()));
+            }
+        });
         tableOptions.getOptional(SINK_BATCH_OFFER_TIMEOUT).ifPresent(val -> {
             if (val.longValue() < 300000 || val.longValue() > Long.MAX_VALUE) {
                 throw new ValidationException(
@@ -264,6 +499,70 @@ public class StarRocksSinkOptions implements Serializable {
                         val, SINK_BATCH_OFFER_TIMEOUT.key()));
             }
         });
+        tableOptions.getOptional(SINK_IO_THREAD_COUNT).ifPresent(val -> {
+            if (val.intValue() < 1 || val.intValue() > 128) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. Supported value range: [1, 128].",
+                        val, SINK_IO_THREAD_COUNT.key()));
+            }
+        });
+        tableOptions.getOptional(SINK_IO_MAX_INFLIGHT_LOADS).ifPresent(val -> {
+            if (val.intValue() < 1 || val.intValue() > 1024) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. Supported value range: [1, 1024].",
+                        val, SINK_IO_MAX_INFLIGHT_LOADS.key()));
+            }
+        });
+        tableOptions.getOptional(SINK_BUFFER_OFF_HEAP_CHUNK_SIZE).ifPresent(val -> {
+            if (val.longValue() < 64 * KILO_BYTES_SCALE || val.longValue() > 256 * MEGA_BYTES_SCALE) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. Supported value range: [%d, %d].",
+                        val, SINK_BUFFER_OFF_HEAP_CHUNK_SIZE.key(), 64 * KILO_BYTES_SCALE, 256 * MEGA_BYTES_SCALE));
+            }
+        });
+        tableOptions.getOptional(SINK_BUFFER_OFF_HEAP_MAX_BYTES).ifPresent(val -> {
+            if (val.longValue() < tableOptions.get(SINK_BUFFER_OFF_HEAP_CHUNK_SIZE)) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. It should not be less than '%s'.",
+                        val, SINK_BUFFER_OFF_HEAP_MAX_BYTES.key(), SINK_BUFFER_OFF_HEAP_CHUNK_SIZE.key()));
+            }
+        });
+        tableOptions.getOptional(SINK_BUFFER_MAX_BYTES).ifPresent(val -> {
+            if (val.longValue() < MEGA_BYTES_SCALE) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%d' for '%s'. Supported value range: [%d, Long.MAX_VALUE].",
+                        val, SINK_BUFFER_MAX_BYTES.key(), MEGA_BYTES_SCALE));
+            }
+        });
+        tableOptions.getOptional(SINK_COMPRESSION).ifPresent(val -> {
+            if (!SINK_COMPRESSION_ENUMS.contains(val.toLowerCase())) {
+                throw new ValidationException(
+                    String.format("Unsupported value '%s' for '%s'. Supported values are ['none', 'gzip', 'lz4_frame'].",
+                        val, SINK_COMPRESSION.key()));
+            }
+        });
+        if (tableOptions.get(SINK_BUFFER_OFF_HEAP) && StarRocksSinkSemantic.EXACTLY_ONCE.equals(sinkSemantic) && !tableOptions.get(SINK_EXACTLY_ONCE_TRANSACTION)) {
+            throw new ValidationException(
+                String.format("'%s' is not supported with the '%s' semantic.", SINK_BUFFER_OFF_HEAP.key(), StarRocksSinkSemantic.EXACTLY_ONCE.getName()));
+        }
+        if (tableOptions.get(SINK_BUFFER_OFF_HEAP) && tableOptions.get(SINK_BUFFER_COMPACTION)) {
+            throw new ValidationException(
+                String.format("'%s' is not supported with '%s'.", SINK_BUFFER_COMPACTION.key(), SINK_BUFFER_OFF_HEAP.key()));
+        }
+        if (tableOptions.get(SINK_BUFFER_OFF_HEAP) && tableOptions.get(SINK_PARTIAL_UPDATE)) {
+            throw new ValidationException(
+                String.format("'%s' is not supported with '%s'.", SINK_PARTIAL_UPDATE.key(), SINK_BUFFER_OFF_HEAP.key()));
+        }
+        // the batches of the different column sets are flushed at checkpoints at once, regardless of the order of their rows
+        if (tableOptions.get(SINK_PARTIAL_UPDATE) && StarRocksSinkSemantic.EXACTLY_ONCE.equals(sinkSemantic) && !tableOptions.get(SINK_EXACTLY_ONCE_TRANSACTION)) {
+            throw new ValidationException(
+                String.format("'%s' with the '%s' semantic requires '%s'.", SINK_PARTIAL_UPDATE.key(), StarRocksSinkSemantic.EXACTLY_ONCE.getName(), SINK_EXACTLY_ONCE_TRANSACTION.key()));
+        }
+        // the halves are loaded with new labels, which loading the same batch again after a failover would not reuse
+        if (tableOptions.getOptional(SINK_DEAD_LETTER_DIR).isPresent() && StarRocksSinkSemantic.EXACTLY_ONCE.equals(sinkSemantic)) {
+            throw new ValidationException(
+                String.format("'%s' is not supported with the '%s' semantic.", SINK_DEAD_LETTER_DIR.key(), StarRocksSinkSemantic.EXACTLY_ONCE.getName()));
+        }
     }
 
     private void validateRequired() {
@@ -0,0 +1,268 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.table.sink;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.calcite.shaded.com.google.common.base.Strings;
+import org.apache.flink.table.api.TableSchema;
+import org.apache.flink.table.data.RowData;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.apache.flink.types.RowKind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.starrocks.connector.flink.manager.StarRocksSinkManager;
+import com.starrocks.connector.flink.row.sink.StarRocksByteSink;
+import com.starrocks.connector.flink.row.sink.StarRocksIByteSerializer;
+import com.starrocks.connector.flink.row.sink.StarRocksIRowEncoder;
+import com.starrocks.connector.flink.row.sink.StarRocksIRowTransformer;
+import com.starrocks.connector.flink.row.sink.StarRocksSerializerFactory;
+
+/**
+ * Transforms, serializes and writes the records to the buffers of the sink manager,
+ * shared by {@link StarRocksDynamicSinkFunction} and the writer of {@link StarRocksUnifiedSink}.
+ * Not thread safe: the bytes of the rows are encoded into buffers reused by every record.
+ */
+class StarRocksSinkRowWriter<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOG = LoggerFactory.getLogger(StarRocksSinkRowWriter.class);
+
+    private final StarRocksSinkManager sinkManager;
+    private final StarRocksSinkOptions sinkOptions;
+    private final StarRocksIRowTransformer<T> rowTransformer;
+    private final StarRocksIByteSerializer serializer;
+    // reused by every row, the serialized bytes are copied into the sink buffer
+    private transient StarRocksByteSink rowBytes;
+    private transient StarRocksIRowEncoder<T> rowEncoder;
+    // positions of the primary key columns with `sink.buffer.compaction` or `sink.partial-update`, null if the rows are not keyed
+    private int[] primaryKeyPositions;
+    private transient StarRocksByteSink keyBytes;
+    // field names of the table with `sink.partial-update`, null if the rows have all the columns
+    private String[] partialUpdateFieldNames;
+    // the column sets seen so far, looked up by the set of the current row which is reused
+    private transient Map<BitSet, PartialColumns> partialColumnSets;
+    private transient BitSet columnSet;
+    // fields of the schema with `sink.buffer.partition-grouping`, the partition column is looked up among them when opening
+    private String[] fieldNames;
+    private LogicalType[] fieldTypes;
+    // locates the partition of each row with `sink.buffer.partition-grouping`, null if the rows are not grouped by partition
+    private transient StarRocksPartitionLocator partitionLocator;
+    // version of the partitions the rows were last written with
+    private transient int partitionsVersion;
+
+    StarRocksSinkRowWriter(StarRocksSinkManager sinkManager, StarRocksSinkOptions sinkOptions, TableSchema schema, StarRocksIRowTransformer<T> rowTransformer) {
+        this.sinkManager = sinkManager;
+        this.sinkOptions = sinkOptions;
+        rowTransformer.setTableSchema(schema);
+        this.serializer = StarRocksSerializerFactory.createSerializer(sinkOptions, schema.getFieldNames());
+        this.rowTransformer = rowTransformer;
+        // the manager has validated the primary keys against the StarRocks table, which enables upsert and delete
+        if ((sinkOptions.isSinkBufferCompaction() || sinkOptions.isSinkPartialUpdate()) && sinkOptions.supportUpsertDelete() && schema.getPrimaryKey().isPresent()) {
+            List<String> fieldNames = Arrays.asList(schema.getFieldNames());
+            this.primaryKeyPositions = schema.getPrimaryKey().get().getColumns().stream().mapToInt(fieldNames::indexOf).toArray();
+            if (sinkOptions.isSinkPartialUpdate()) {
+                this.partialUpdateFieldNames = schema.getFieldNames();
+            }
+        }
+        if (sinkOptions.isSinkPartitionGrouping()) {
+            this.fieldNames = schema.getFieldNames();
+            this.fieldTypes = Arrays.stream(schema.getFieldDataTypes()).map(t -> t.getLogicalType()).toArray(LogicalType[]::new);
+        }
+    }
+
+    // raw data (strings, or json rows with their tables)
+    StarRocksSinkRowWriter(StarRocksSinkManager sinkManager, StarRocksSinkOptions sinkOptions) {
+        this.sinkManager = sinkManager;
+        this.sinkOptions = sinkOptions;
+        this.rowTransformer = null;
+        this.serializer = null;
+    }
+
+    /**
+     * @param runtimeCtx null with the unified sink, which only takes the generic transformers not depending on it.
+     */
+    void open(RuntimeContext runtimeCtx) {
+        if (null != rowTransformer) {
+            rowTransformer.setRuntimeContext(runtimeCtx);
+            rowEncoder = rowTransformer.createEncoder(sinkOptions);
+        }
+        rowBytes = new StarRocksByteSink();
+        if (null != primaryKeyPositions) {
+            keyBytes = new StarRocksByteSink(64);
+        }
+        if (null != partialUpdateFieldNames) {
+            partialColumnSets = new HashMap<>();
+            columnSet = new BitSet(partialUpdateFieldNames.length);
+        }
+        if (null != fieldNames) {
+            partitionLocator = StarRocksPartitionLocator.create(sinkManager::getTablePartitions, fieldNames, fieldTypes);
+        }
+    }
+
+    /**
+     * @return false if the record is not counted as an invoked row, e.g. it is left out or it carries rows of other tables.
+     */
+    boolean write(T value) throws Exception {
+        if (null == serializer) {
+            if (value instanceof StarRocksSinkRowDataWithMeta) {
+                StarRocksSinkRowDataWithMeta data = (StarRocksSinkRowDataWithMeta)value;
+                if (Strings.isNullOrEmpty(data.getDatabase()) || Strings.isNullOrEmpty(data.getTable()) || null == data.getDataRows()) {
+                    LOG.warn(String.format("json row data not fullfilled. {database: %s, table: %s, dataRows: %s}", data.getDatabase(), data.getTable(), data.getDataRows()));
+                    return false;
+                }
+                sinkManager.writeRecords(data.getDatabase(), data.getTable(), data.getDataRows());
+                return false;
+            }
+            // raw data sink
+            sinkManager.writeRecords(sinkOptions.getDatabaseName(), sinkOptions.getTableName(), (String) value);
+            return true;
+        }
+        if (value instanceof RowData) {
+            if (RowKind.UPDATE_BEFORE.equals(((RowData)value).getRowKind())) {
+                // do not need update_before, cauz an update action happened on the primary keys will be separated into `delete` and `create`
+                return false;
+            }
+            if (!sinkOptions.supportUpsertDelete() && RowKind.DELETE.equals(((RowData)value).getRowKind())) {
+                // let go the UPDATE_AFTER and INSERT rows for tables who have a group of `unique` or `duplicate` keys.
+                return false;
+            }
+        }
+        rowBytes.reset();
+        if (null != keyBytes) {
+            keyBytes.reset();
+        }
+        PartialColumns partialColumns = null;
+        Object[] values = null;
+        if (null != rowEncoder) {
+            if (null != partialUpdateFieldNames) {
+                RowData row = (RowData) value;
+                columnSet.clear();
+                for (int i = 0; i < partialUpdateFieldNames.length; i++) {
+                    if (!row.isNullAt(i)) {
+                        columnSet.set(i);
+                    }
+                }
+                partialColumns = getPartialColumns();
+                rowEncoder.encodeColumns(value, partialColumns.positions, rowBytes);
+            } else {
+                rowEncoder.encode(value, rowBytes);
+            }
+            if (null != keyBytes) {
+                rowEncoder.encodeKey(value, primaryKeyPositions, keyBytes);
+            }
+        } else {
+            values = rowTransformer.transform(value, sinkOptions.supportUpsertDelete());
+            if (null != partialUpdateFieldNames) {
+                columnSet.clear();
+                for (int i = 0; i < partialUpdateFieldNames.length; i++) {
+                    if (null != values[i]) {
+                        columnSet.set(i);
+                    }
+                }
+                partialColumns = getPartialColumns();
+                serializer.serialize(partialColumns.select(values, sinkOptions.getStreamLoadFormat()), rowBytes);
+            } else {
+                serializer.serialize(values, rowBytes);
+            }
+            if (null != keyBytes) {
+                encodeKey(values);
+            }
+        }
+        StarRocksPartitionLocator.Partition partition = null == partitionLocator ? null : partitionLocator.locate(value, values);
+        if (null != partitionLocator && partitionLocator.getVersion() != partitionsVersion) {
+            // the rows written to the batches of no partition so far might belong to the partitions fetched again, load them before
+            // the batches of the partitions, which the later rows of the same keys go to
+            sinkManager.flushUnknownPartitions(sinkOptions.getDatabaseName(), sinkOptions.getTableName());
+            partitionsVersion = partitionLocator.getVersion();
+        }
+        String partitionName = null == partition ? null : partition.getName();
+        boolean latePartition = null != partition && partitionLocator.isLate(partition);
+        if (null != keyBytes) {
+            sinkManager.writeRecord(sinkOptions.getDatabaseName(), sinkOptions.getTableName(), partitionName, latePartition,
+                null == partialColumns ? null : partialColumns.names, ByteBuffer.wrap(keyBytes.toByteArray()), rowBytes.getBuffer(), 0, rowBytes.size());
+        } else {
+            sinkManager.writeRecord(sinkOptions.getDatabaseName(), sinkOptions.getTableName(), partitionName, latePartition,
+                rowBytes.getBuffer(), 0, rowBytes.size());
+        }
+        return true;
+    }
+
+    // the primary key columns are always loaded, even if they were null they would not be updated
+    private PartialColumns getPartialColumns() {
+        for (int pos : primaryKeyPositions) {
+            columnSet.set(pos);
+        }
+        PartialColumns partialColumns = partialColumnSets.get(columnSet);
+        if (null == partialColumns) {
+            BitSet key = (BitSet) columnSet.clone();
+            partialColumns = new PartialColumns(key.stream().toArray(), partialUpdateFieldNames);
+            partialColumnSets.put(key, partialColumns);
+        }
+        return partialColumns;
+    }
+
+    // the same layout as `StarRocksIRowEncoder#encodeKey`, from the transformed values
+    private void encodeKey(Object[] values) {
+        for (int pos : primaryKeyPositions) {
+            if (null == values[pos]) {
+                keyBytes.writeRawInt(-1);
+                continue;
+            }
+            int start = keyBytes.size();
+            keyBytes.writeUtf8(values[pos].toString());
+            keyBytes.writeRawInt(keyBytes.size() - start);
+        }
+    }
+
+    /**
+     * Columns loaded for the rows with the same non-null columns with `sink.partial-update`.
+     */
+    private static final class PartialColumns {
+
+        private final int[] positions;
+        private final String[] names;
+
+        private PartialColumns(int[] positions, String[] fieldNames) {
+            this.positions = positions;
+            this.names = new String[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                names[i] = fieldNames[positions[i]];
+            }
+        }
+
+        // csv rows are positional, json rows leave the null fields out by themselves
+        private Object[] select(Object[] values, StarRocksSinkOptions.StreamLoadFormat format) {
+            if (StarRocksSinkOptions.StreamLoadFormat.JSON.equals(format)) {
+                return values;
+            }
+            // the `__op` value follows the fields
+            Object[] selected = new Object[positions.length + 1];
+            for (int i = 0; i < positions.length; i++) {
+                selected[i] = values[positions[i]];
+            }
+            selected[positions.length] = values[values.length - 1];
+            return selected;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.table.sink;
+
+import java.io.IOException;
+
+import org.apache.flink.core.io.SimpleVersionedSerializer;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+
+import com.starrocks.connector.flink.manager.StarRocksSinkTransaction;
+
+/**
+ * Serializer of the transactions handed from the writers to the committers of {@link StarRocksUnifiedSink}.
+ */
+public class StarRocksSinkTransactionSerializer implements SimpleVersionedSerializer<StarRocksSinkTransaction> {
+
+    private static final int VERSION = 1;
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public byte[] serialize(StarRocksSinkTransaction txn) throws IOException {
+        DataOutputSerializer out = new DataOutputSerializer(64);
+        out.writeUTF(txn.getDatabase());
+        out.writeUTF(txn.getTable());
+        out.writeUTF(txn.getLabel());
+        return out.getCopyOfBuffer();
+    }
+
+    @Override
+    public StarRocksSinkTransaction deserialize(int version, byte[] serialized) throws IOException {
+        if (VERSION != version) {
+            throw new IOException(String.format("Unsupported version %d of the serialized StarRocks transaction.", version));
+        }
+        DataInputDeserializer in = new DataInputDeserializer(serialized);
+        return new StarRocksSinkTransaction(in.readUTF(), in.readUTF(), in.readUTF());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.table.sink;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.flink.api.connector.sink.Committer;
+import org.apache.flink.api.connector.sink.GlobalCommitter;
+import org.apache.flink.api.connector.sink.Sink;
+import org.apache.flink.api.connector.sink.SinkWriter;
+import org.apache.flink.core.io.SimpleVersionedSerializer;
+import org.apache.flink.table.api.TableSchema;
+
+import com.starrocks.connector.flink.manager.StarRocksSinkManager;
+import com.starrocks.connector.flink.manager.StarRocksSinkTransaction;
+import com.starrocks.connector.flink.row.sink.StarRocksGenericRowTransformer;
+import com.starrocks.connector.flink.row.sink.StarRocksIRowTransformer;
+
+/**
+ * StarRocks sink on the unified sink API, for DataStream jobs in both streaming and batch execution.
+ * The writers load the rows with the same manager as {@link StarRocksDynamicSinkFunction}: at checkpoints, and at the end of
+ * a bounded input, they flush everything they buffered. With `exactly-once` the writers prepare the stream load transactions
+ * of `sink.exactly-once.transaction` instead, which are handed to the committers and committed once the checkpoint completes.
+ * The state of the writers is the transactions they begin next, which are rolled back on restore.
+ */
+public class StarRocksUnifiedSink<T> implements Sink<T, StarRocksSinkTransaction, StarRocksSinkTransaction, Void> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final StarRocksSinkManager sinkManager;
+    private final StarRocksSinkOptions sinkOptions;
+    private final StarRocksSinkRowWriter<T> rowWriter;
+
+    /**
+     * @param rowTransformer a {@link StarRocksGenericRowTransformer}: the writers of the unified sink API have no
+     *                       {@link org.apache.flink.api.common.functions.RuntimeContext} to set up the other transformers with.
+     */
+    public StarRocksUnifiedSink(StarRocksSinkOptions sinkOptions, TableSchema schema, StarRocksIRowTransformer<T> rowTransformer) {
+        validateSemantic(sinkOptions);
+        if (!(rowTransformer instanceof StarRocksGenericRowTransformer)) {
+            throw new IllegalArgumentException(String.format("The unified StarRocks sink only supports %s, not %s which might need a runtime context.",
+                StarRocksGenericRowTransformer.class.getSimpleName(), rowTransformer.getClass().getName()));
+        }
+        this.sinkManager = new StarRocksSinkManager(sinkOptions, schema);
+        this.rowWriter = new StarRocksSinkRowWriter<>(sinkManager, sinkOptions, schema, rowTransformer);
+        this.sinkOptions = sinkOptions;
+    }
+
+    public StarRocksUnifiedSink(StarRocksSinkOptions sinkOptions) {
+        validateSemantic(sinkOptions);
+        this.sinkManager = new StarRocksSinkManager(sinkOptions, null);
+        this.rowWriter = new StarRocksSinkRowWriter<>(sinkManager, sinkOptions);
+        this.sinkOptions = sinkOptions;
+    }
+
+    // the writers have no state to buffer the rows until the checkpoint completes, only the transactions are committed later
+    private static void validateSemantic(StarRocksSinkOptions sinkOptions) {
+        if (StarRocksSinkSemantic.EXACTLY_ONCE.equals(sinkOptions.getSemantic()) && !sinkOptions.isSinkExactlyOnceTransaction()) {
+            throw new IllegalArgumentException(String.format("The unified StarRocks sink supports `%s` only with `%s` enabled.",
+                StarRocksSinkSemantic.EXACTLY_ONCE.getName(), StarRocksSinkOptions.SINK_EXACTLY_ONCE_TRANSACTION.key()));
+        }
+    }
+
+    @Override
+    public SinkWriter<T, StarRocksSinkTransaction, StarRocksSinkTransaction> createWriter(InitContext context, List<StarRocksSinkTransaction> states) throws IOException {
+        return new StarRocksUnifiedSinkWriter<>(sinkManager, sinkOptions, rowWriter, context, states);
+    }
+
+    @Override
+    public Optional<SimpleVersionedSerializer<StarRocksSinkTransaction>> getWriterStateSerializer() {
+        if (!sinkOptions.isSinkExactlyOnceTransaction()) {
+            return Optional.empty();
+        }
+        return Optional.of(new StarRocksSinkTransactionSerializer());
+    }
+
+    @Override
+    public Optional<Committer<StarRocksSinkTransaction>> createCommitter() throws IOException {
+        if (!sinkOptions.isSinkExactlyOnceTransaction()) {
+            return Optional.empty();
+        }
+        return Optional.of(new StarRocksUnifiedSinkCommitter(sinkOptions));
+    }
+
+    @Override
+    public Optional<GlobalCommitter<StarRocksSinkTransaction, Void>> createGlobalCommitter() throws IOException {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<SimpleVersionedSerializer<StarRocksSinkTransaction>> getCommittableSerializer() {
+        if (!sinkOptions.isSinkExactlyOnceTransaction()) {
+            return Optional.empty();
+        }
+        return Optional.of(new StarRocksSinkTransactionSerializer());
+    }
+
+    @Override
+    public Optional<SimpleVersionedSerializer<Void>> getGlobalCommittableSerializer() {
+        return Optional.empty();
+    }
+}
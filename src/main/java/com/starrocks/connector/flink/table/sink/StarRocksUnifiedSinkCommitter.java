@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.table.sink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.flink.api.connector.sink.Committer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.starrocks.connector.flink.manager.StarRocksSinkTransaction;
+import com.starrocks.connector.flink.manager.StarRocksStreamLoadFailedException;
+import com.starrocks.connector.flink.manager.StarRocksStreamLoadVisitor;
+
+/**
+ * Committer of {@link StarRocksUnifiedSink}, commits the transactions prepared by the writers once the checkpoint completes.
+ * The committables are checkpointed by flink until they are committed, and committing one twice after a failover is a no-op.
+ * Transactions StarRocks could not be reached for are handed back to be retried. The ones it refused to commit, aborted on
+ * timeout for instance, are logged and dropped: failing the job would restore the same committables and fail again.
+ */
+class StarRocksUnifiedSinkCommitter implements Committer<StarRocksSinkTransaction> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StarRocksUnifiedSinkCommitter.class);
+
+    private final StarRocksStreamLoadVisitor streamLoadVisitor;
+
+    StarRocksUnifiedSinkCommitter(StarRocksSinkOptions sinkOptions) {
+        this.streamLoadVisitor = new StarRocksStreamLoadVisitor(sinkOptions, new String[]{}, false);
+        streamLoadVisitor.open();
+    }
+
+    @Override
+    public List<StarRocksSinkTransaction> commit(List<StarRocksSinkTransaction> committables) throws IOException {
+        List<StarRocksSinkTransaction> retries = new ArrayList<>();
+        for (StarRocksSinkTransaction txn : committables) {
+            try {
+                streamLoadVisitor.commitTransaction(txn);
+            } catch (StarRocksStreamLoadFailedException e) {
+                LOG.error(String.format("StarRocks refused to commit the transaction %s, its rows are not loaded.", txn), e);
+            } catch (IOException e) {
+                LOG.warn(String.format("Failed to commit the transaction %s, it is retried later.", txn), e);
+                retries.add(txn);
+            }
+        }
+        return retries;
+    }
+
+    @Override
+    public void close() {
+        streamLoadVisitor.close();
+    }
+}
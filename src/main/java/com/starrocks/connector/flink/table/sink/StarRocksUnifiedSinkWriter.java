@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.table.sink;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.flink.api.connector.sink.Sink;
+import org.apache.flink.api.connector.sink.SinkWriter;
+import org.apache.flink.metrics.Counter;
+
+import com.starrocks.connector.flink.manager.StarRocksSinkManager;
+import com.starrocks.connector.flink.manager.StarRocksSinkTransaction;
+
+/**
+ * Writer of {@link StarRocksUnifiedSink}: everything buffered is loaded, or prepared in transactions, before each checkpoint.
+ * With `sink.exactly-once.transaction` the state is the transactions to be begun after the checkpoint, as the sink function
+ * keeps them, so that the ones begun before a failover are rolled back on restore instead of waiting for their timeout.
+ */
+class StarRocksUnifiedSinkWriter<T> implements SinkWriter<T, StarRocksSinkTransaction, StarRocksSinkTransaction> {
+
+    private static final String COUNTER_INVOKE_ROWS = "totalInvokeRows";
+
+    private final StarRocksSinkManager sinkManager;
+    private final StarRocksSinkOptions sinkOptions;
+    private final StarRocksSinkRowWriter<T> rowWriter;
+    private final Counter totalInvokeRows;
+
+    StarRocksUnifiedSinkWriter(StarRocksSinkManager sinkManager, StarRocksSinkOptions sinkOptions,
+                               StarRocksSinkRowWriter<T> rowWriter, Sink.InitContext context, List<StarRocksSinkTransaction> states) throws IOException {
+        this.sinkManager = sinkManager;
+        this.sinkOptions = sinkOptions;
+        this.rowWriter = rowWriter;
+        this.totalInvokeRows = context.metricGroup().counter(COUNTER_INVOKE_ROWS);
+        // spilling is for the sink function only, the tmp directories are not needed
+        sinkManager.setRuntimeContext(context.metricGroup(), null);
+        // there is no runtime context here, the sink only takes the generic transformers which do not use it
+        rowWriter.open(null);
+        sinkManager.startScheduler();
+        sinkManager.startAsyncFlushing();
+        if (sinkOptions.isSinkExactlyOnceTransaction()) {
+            // the prepared transactions are restored by the committers
+            sinkManager.restoreTransactions(Collections.emptyList(), states);
+        }
+    }
+
+    // write, prepareCommit and close are all called by the task thread, the manager takes care of its own threads
+    @Override
+    public void write(T element, Context context) throws IOException {
+        try {
+            if (rowWriter.write(element)) {
+                totalInvokeRows.inc();
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Writing records to StarRocks failed.", e);
+        }
+    }
+
+    /**
+     * Called before each checkpoint and at the end of a bounded input.
+     */
+    @Override
+    public List<StarRocksSinkTransaction> prepareCommit(boolean flush) throws IOException {
+        try {
+            if (sinkOptions.isSinkExactlyOnceTransaction()) {
+                return sinkManager.prepareTransactions();
+            }
+            sinkManager.flush(null, true);
+            return Collections.emptyList();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Flushing records to StarRocks failed.", e);
+        }
+    }
+
+    @Override
+    public List<StarRocksSinkTransaction> snapshotState() {
+        if (sinkOptions.isSinkExactlyOnceTransaction()) {
+            return sinkManager.getNextTransactions();
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void close() throws Exception {
+        sinkManager.close();
+    }
+}
@@ -119,9 +119,8 @@ public abstract class StarRocksSinkBaseTest {
                             public void run() {
                                 try {
                                     InputStream in = socket.getInputStream();
-                                    byte[] b = new byte[in.available()];
-                                    int len = in.read(b);
                                     OutputStream out = socket.getOutputStream();
+                                    int len = readRequest(in, out);
                                     if (0 == len) {
                                         out.write("".getBytes());
                                     } else {
@@ -151,6 +150,61 @@ public abstract class StarRocksSinkBaseTest {
         }).start();
     }
 
+    // read the whole request, so that the socket is not closed while the client is still writing the body
+    private static int readRequest(InputStream in, OutputStream out) throws IOException {
+        StringBuilder header = new StringBuilder();
+        int b;
+        while (-1 != (b = in.read())) {
+            header.append((char) b);
+            if (header.length() >= 4 && "\r\n\r\n".equals(header.substring(header.length() - 4))) {
+                break;
+            }
+        }
+        String[] lines = header.toString().split("\r\n");
+        for (String line : lines) {
+            if (line.toLowerCase().startsWith("expect:") && line.toLowerCase().contains("100-continue")) {
+                out.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes());
+                out.flush();
+            }
+        }
+        for (String line : lines) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                skip(in, Long.parseLong(line.substring("content-length:".length()).trim()));
+            }
+            if (line.toLowerCase().startsWith("transfer-encoding:") && line.toLowerCase().contains("chunked")) {
+                // chunks of `<hex size>\r\n<bytes>\r\n` until the empty one
+                while (true) {
+                    String size = readLine(in).split(";")[0].trim();
+                    long chunkSize = size.isEmpty() ? 0 : Long.parseLong(size, 16);
+                    if (0 == chunkSize) {
+                        readLine(in);
+                        break;
+                    }
+                    skip(in, chunkSize);
+                    readLine(in);
+                }
+            }
+        }
+        return header.length();
+    }
+
+    private static void skip(InputStream in, long bytes) throws IOException {
+        while (bytes > 0 && -1 != in.read()) {
+            bytes--;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while (-1 != (b = in.read()) && '\n' != b) {
+            if ('\r' != b) {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
     @After
     public void stopHttpServer() throws IOException {
         if (serverSocket != null) {
@@ -167,6 +221,7 @@ public abstract class StarRocksSinkBaseTest {
                 serverSocket = new ServerSocket(port);
                 LOAD_URL = "127.0.0.1:1;127.0.0.1:" + port;
                 initializeOptions();
+                break;
             } catch (IOException e) {}
         }
     }
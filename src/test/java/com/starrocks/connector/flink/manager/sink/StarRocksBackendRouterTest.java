@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager.sink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.starrocks.connector.flink.StarRocksSinkBaseTest;
+import com.starrocks.connector.flink.manager.StarRocksBackendRouter;
+
+import mockit.Expectations;
+
+public class StarRocksBackendRouterTest extends StarRocksSinkBaseTest {
+
+    @Test
+    public void testLearnFromRedirects() {
+        StarRocksBackendRouter router = new StarRocksBackendRouter(null, 1000L);
+        router.open();
+        try {
+            assertNull(router.select());
+            router.onRedirected(URI.create("http://127.0.0.1:8040/api/test/test_tbl/_stream_load"));
+            router.onRedirected(URI.create("http://127.0.0.2:8040/api/test/test_tbl/_stream_load"));
+            router.onRedirected(URI.create("http://127.0.0.1:8040/api/test/test_tbl/_stream_load"));
+            assertEquals(Arrays.asList("http://127.0.0.1:8040", "http://127.0.0.2:8040"), router.getBackends());
+            // loads rotate over the backends
+            Set<String> selected = new HashSet<>();
+            selected.add(router.select());
+            selected.add(router.select());
+            assertEquals(2, selected.size());
+        } finally {
+            router.close();
+        }
+    }
+
+    @Test
+    public void testListAndSkipFailedBackends() throws Exception {
+        new Expectations(){
+            {
+                v.getBackendHttpAddresses();
+                result = Arrays.asList("127.0.0.1:8040", "127.0.0.2:8040");
+            }
+        };
+        StarRocksBackendRouter router = new StarRocksBackendRouter(v, 1000L);
+        router.open();
+        try {
+            for (int i = 0; i < 50 && router.getBackends().isEmpty(); i++) {
+                TimeUnit.MILLISECONDS.sleep(100L);
+            }
+            assertEquals(Arrays.asList("http://127.0.0.1:8040", "http://127.0.0.2:8040"), router.getBackends());
+            router.onLoadFailed("http://127.0.0.1:8040");
+            for (int i = 0; i < 10; i++) {
+                assertEquals("http://127.0.0.2:8040", router.select());
+            }
+            router.onLoadFailed("http://127.0.0.2:8040");
+            assertNull(router.select());
+            // back after the refresh interval
+            TimeUnit.MILLISECONDS.sleep(1200L);
+            assertEquals(2, new HashSet<>(Arrays.asList(router.select(), router.select())).size());
+        } finally {
+            router.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager.sink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.starrocks.connector.flink.StarRocksSinkBaseTest;
+import com.starrocks.connector.flink.manager.StarRocksLoadUrlRouter;
+
+public class StarRocksLoadUrlRouterTest extends StarRocksSinkBaseTest {
+
+    private static final long HEALTH_CHECK_INTERVAL_MS = 50L;
+
+    @Test
+    public void testSkipUnreachableHosts() {
+        StarRocksLoadUrlRouter router = new StarRocksLoadUrlRouter(OPTIONS.getLoadUrlList(), 1000, 10000L);
+        router.open();
+        try {
+            List<StarRocksLoadUrlRouter.Host> hosts = router.getHosts();
+            // `127.0.0.1:1` never answers
+            assertFalse(hosts.get(0).isHealthy());
+            assertTrue(hosts.get(1).isHealthy());
+            for (int i = 0; i < 10; i++) {
+                StarRocksLoadUrlRouter.Host host = router.select();
+                assertSame(hosts.get(1), host);
+                router.onLoadFinished(host, 10L);
+            }
+        } finally {
+            router.close();
+        }
+    }
+
+    @Test
+    public void testLeastLatencyAndEjection() throws Exception {
+        // the mock server under two names
+        String address = OPTIONS.getLoadUrlList().get(1);
+        StarRocksLoadUrlRouter router = new StarRocksLoadUrlRouter(Arrays.asList(address, address.replace("127.0.0.1", "localhost")), 1000, HEALTH_CHECK_INTERVAL_MS);
+        router.open();
+        try {
+            StarRocksLoadUrlRouter.Host fast = router.getHosts().get(0);
+            StarRocksLoadUrlRouter.Host slow = router.getHosts().get(1);
+            router.select();
+            router.onLoadFinished(fast, 10L);
+            router.select();
+            router.onLoadFinished(slow, 1000L);
+            for (int i = 0; i < 10; i++) {
+                StarRocksLoadUrlRouter.Host host = router.select();
+                assertSame(fast, host);
+                router.onLoadFinished(host, 10L);
+            }
+            assertEquals(10.0, fast.getLoadTimeEwmaMs(), 0.01);
+            // a failed load ejects the host until the health check admits it again
+            router.onLoadFailed(router.select());
+            assertFalse(fast.isHealthy());
+            for (int i = 0; i < 10; i++) {
+                StarRocksLoadUrlRouter.Host host = router.select();
+                assertSame(slow, host);
+                router.onLoadFinished(host, 1000L);
+            }
+            // ejected for one interval, then admitted by the next health check
+            for (int i = 0; i < 100 && !fast.isHealthy(); i++) {
+                TimeUnit.MILLISECONDS.sleep(HEALTH_CHECK_INTERVAL_MS);
+            }
+            assertTrue(fast.isHealthy());
+            assertSame(fast, router.select());
+        } finally {
+            router.close();
+        }
+    }
+}
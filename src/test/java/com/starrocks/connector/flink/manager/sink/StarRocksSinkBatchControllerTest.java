@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager.sink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.starrocks.connector.flink.manager.StarRocksSinkBatchController;
+import com.starrocks.connector.flink.table.sink.StarRocksSinkOptions;
+
+public class StarRocksSinkBatchControllerTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    private static StarRocksSinkOptions.Builder optionsBuilder() {
+        return StarRocksSinkOptions.builder()
+            .withProperty("jdbc-url", "jdbc:mysql://127.0.0.1:9030")
+            .withProperty("load-url", "127.0.0.1:8030")
+            .withProperty("database-name", "test")
+            .withProperty("table-name", "test_tbl")
+            .withProperty("username", "root")
+            .withProperty("password", "");
+    }
+
+    @Test
+    public void testFixedThresholds() {
+        StarRocksSinkOptions options = optionsBuilder().build();
+        StarRocksSinkBatchController controller = new StarRocksSinkBatchController(options);
+        controller.onLoadFinished(options.getSinkMaxBytes(), 600000L, 0L);
+        assertEquals(options.getSinkMaxBytes(), controller.getFlushBytes());
+        assertEquals(options.getSinkMaxRows(), controller.getFlushRows());
+    }
+
+    @Test
+    public void testAdaptiveThresholds() {
+        StarRocksSinkOptions options = optionsBuilder()
+            .withProperty("sink.buffer-flush.max-bytes", String.valueOf(256 * MB))
+            .withProperty("sink.buffer-flush.max-rows", "1000000")
+            .withProperty("sink.buffer-flush.adaptive", "true")
+            .withProperty("sink.buffer-flush.adaptive.min-bytes", String.valueOf(16 * MB))
+            .withProperty("sink.buffer-flush.adaptive.target-load-ms", "10000")
+            .build();
+        StarRocksSinkBatchController controller = new StarRocksSinkBatchController(options);
+        assertEquals(256 * MB, controller.getFlushBytes());
+        // 1 second to commit and 8MB per second: 72MB fit in the target
+        for (int i = 0; i < 20; i++) {
+            long bytes = controller.getFlushBytes();
+            controller.onLoadFinished(bytes, 1000L + bytes * 1000L / (8 * MB), 1000L);
+        }
+        assertTrue(Math.abs(controller.getFlushBytes() - 72 * MB) < MB);
+        assertEquals(1000000L * controller.getFlushBytes() / (256 * MB), controller.getFlushRows());
+        // no shrinking on loads under the target, however slow they seem
+        long bytes = controller.getFlushBytes();
+        controller.onLoadFinished(MB, 5000L, 1000L);
+        assertEquals(bytes, controller.getFlushBytes());
+        // committing takes the whole target: fewer, larger loads
+        for (int i = 0; i < 20; i++) {
+            controller.onLoadFinished(controller.getFlushBytes(), 9000L, 9000L);
+        }
+        assertEquals(256 * MB, controller.getFlushBytes());
+        // loads way over the target are bounded by the min bytes
+        for (int i = 0; i < 20; i++) {
+            controller.onLoadFinished(controller.getFlushBytes(), 600000L, 0L);
+        }
+        assertEquals(16 * MB, controller.getFlushBytes());
+    }
+}
@@ -16,6 +16,12 @@ package com.starrocks.connector.flink.manager.sink;
 
 import java.util.ArrayList;
 import org.apache.flink.api.java.tuple.Tuple3;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.Metric;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.metrics.SimpleCounter;
+import org.apache.flink.metrics.groups.UnregisteredMetricsGroup;
 import org.apache.flink.calcite.shaded.com.google.common.base.Strings;
 import org.apache.flink.calcite.shaded.com.google.common.collect.Lists;
 import org.apache.flink.table.api.DataTypes;
@@ -27,16 +33,40 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import com.starrocks.connector.flink.StarRocksSinkBaseTest;
+import com.starrocks.connector.flink.manager.StarRocksSinkBufferArena;
+import com.starrocks.connector.flink.manager.StarRocksSinkBufferEntity;
 import com.starrocks.connector.flink.manager.StarRocksSinkManager;
+import com.starrocks.connector.flink.manager.StarRocksSinkSegment;
+import com.starrocks.connector.flink.manager.StarRocksSinkTransaction;
+import com.starrocks.connector.flink.manager.StarRocksStreamLoadEntity;
+import com.starrocks.connector.flink.manager.StarRocksStreamLoadFailedException;
+import com.starrocks.connector.flink.manager.StarRocksStreamLoadVisitor;
 import com.starrocks.connector.flink.table.sink.StarRocksSinkOptions;
 
 import mockit.Expectations;
+import mockit.Invocation;
 import mockit.MockUp;
 import mockit.Mock;
 
@@ -227,6 +257,659 @@ public class StarRocksSinkManagerTest extends StarRocksSinkBaseTest {
         assertTrue(0 < exMsg.length());
     }
 
+    @Test
+    public void testRestoreTransactions() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        List<String> begun = new ArrayList<>();
+        List<String> committed = new ArrayList<>();
+        List<String> rolledBack = new ArrayList<>();
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public void beginTransaction(StarRocksSinkTransaction txn) {
+                begun.add(txn.getLabel());
+            }
+            @Mock
+            public Map<String, Object> doTransactionLoad(StarRocksSinkTransaction txn, StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                return new HashMap<>();
+            }
+            @Mock
+            public void prepareTransaction(StarRocksSinkTransaction txn) {
+            }
+            @Mock
+            public void commitTransaction(StarRocksSinkTransaction txn) {
+                committed.add(txn.getLabel());
+            }
+            @Mock
+            public void rollbackTransaction(StarRocksSinkTransaction txn) {
+                rolledBack.add(txn.getLabel());
+            }
+        };
+        StarRocksSinkOptions options = OPTIONS_BUILDER
+            .withProperty("sink.semantic", "exactly-once")
+            .withProperty("sink.exactly-once.transaction", "true")
+            .build();
+        byte[] row = "1\tstephen".getBytes(StandardCharsets.UTF_8);
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.startAsyncFlushing();
+        mgr.writeRecord("db", "table", row, 0, row.length);
+        // the completed checkpoint
+        List<StarRocksSinkTransaction> prepared = mgr.prepareTransactions();
+        List<StarRocksSinkTransaction> next = mgr.getNextTransactions();
+        assertEquals(1, next.size());
+        // the next transaction takes the reserved label, and is prepared for a checkpoint which never completes
+        mgr.writeRecord("db", "table", row, 0, row.length);
+        assertEquals(next.get(0).getLabel(), mgr.prepareTransactions().get(0).getLabel());
+        assertEquals(next.get(0).getLabel(), begun.get(1));
+        mgr.close();
+        assertTrue(committed.isEmpty());
+        assertTrue(rolledBack.isEmpty());
+
+        // restored from the completed checkpoint: its transaction is committed, the one after it rolled back
+        mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.startAsyncFlushing();
+        mgr.restoreTransactions(prepared, next);
+        assertEquals(Lists.newArrayList(prepared.get(0).getLabel()), committed);
+        assertEquals(Lists.newArrayList(next.get(0).getLabel()), rolledBack);
+        // and its label is reused, so that it is rolled back again on another failover before the next checkpoint
+        mgr.writeRecord("db", "table", row, 0, row.length);
+        mgr.flush(null, true);
+        assertEquals(next.get(0).getLabel(), begun.get(2));
+        mgr.close();
+    }
+
+    @Test
+    public void testConcurrentFlush() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        // each load waits for the others, so all the tables are only loaded if they are in flight at the same time
+        CountDownLatch allLoading = new CountDownLatch(4);
+        AtomicInteger loading = new AtomicInteger();
+        AtomicInteger maxLoading = new AtomicInteger();
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) throws IOException {
+                maxLoading.accumulateAndGet(loading.incrementAndGet(), Math::max);
+                try {
+                    allLoading.countDown();
+                    allLoading.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    loading.decrementAndGet();
+                }
+                return CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+        StarRocksSinkOptions options = OPTIONS_BUILDER
+            .withProperty("sink.io.thread-count", "4")
+            .withProperty("sink.io.max-inflight-loads", "4")
+            .build();
+        TestMetricGroup metrics = new TestMetricGroup();
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.setRuntimeContext(metrics, null);
+        mgr.startAsyncFlushing();
+        for (int i = 0; i < 4; i++) {
+            mgr.writeRecords("db" + i, "table" + i, "");
+        }
+        mgr.flush(null, true);
+        // the tables are loaded at the same time, not one after another
+        assertEquals(0, allLoading.getCount());
+        assertEquals(4, maxLoading.get());
+        assertEquals(4L, metrics.getCount("totalFlushSucceededTimes"));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(metrics.getGaugeValue(String.format("database.db%d.table.table%d.flushLagMs", i, i)) >= 0L);
+        }
+        mgr.close();
+    }
+
+    @Test
+    public void testLoadWhileCheckingLabelState() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        CompletableFuture<Map<String, Object>> labelState = new CompletableFuture<>();
+        CountDownLatch otherTablesLoaded = new CountDownLatch(3);
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                if ("table0".equals(bufferEntity.getTable())) {
+                    // the label already exists and is still being prepared
+                    return labelState;
+                }
+                otherTablesLoaded.countDown();
+                return CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+        StarRocksSinkOptions options = OPTIONS_BUILDER
+            .withProperty("sink.io.thread-count", "1")
+            .withProperty("sink.io.max-inflight-loads", "4")
+            .build();
+        TestMetricGroup metrics = new TestMetricGroup();
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.setRuntimeContext(metrics, null);
+        mgr.startAsyncFlushing();
+        for (int i = 0; i < 4; i++) {
+            mgr.writeRecords("db", "table" + i, "");
+        }
+        mgr.flush(null, false);
+        // the only flush worker is not held by the pending label
+        assertTrue(otherTablesLoaded.await(10, TimeUnit.SECONDS));
+        labelState.complete(new HashMap<>());
+        mgr.flush(null, true);
+        assertEquals(4L, metrics.getCount("totalFlushSucceededTimes"));
+        mgr.close();
+    }
+
+    @Test
+    public void testParkedRetry() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        List<String> loads = new ArrayList<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        CountDownLatch otherTableLoaded = new CountDownLatch(1);
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) throws IOException {
+                String load = bufferEntity.getTable() + ":" + new String(bufferEntity.getBuffer().get(0), StandardCharsets.UTF_8);
+                synchronized (loads) {
+                    if (failed.compareAndSet(false, true)) {
+                        loads.add(load + " failed");
+                        throw new IOException("Connection reset");
+                    }
+                    loads.add(load);
+                }
+                if ("table1".equals(bufferEntity.getTable())) {
+                    otherTableLoaded.countDown();
+                }
+                return CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+        StarRocksSinkOptions options = OPTIONS_BUILDER
+            .withProperty("sink.io.thread-count", "1")
+            .withProperty("sink.io.max-inflight-loads", "4")
+            .withProperty("sink.retry.backoff-ms", "1000")
+            .build();
+        // the batches of each table are loaded in order without a schema
+        TestMetricGroup metrics = new TestMetricGroup();
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, null);
+        mgr.setRuntimeContext(metrics, null);
+        mgr.startAsyncFlushing();
+        mgr.writeRecords("db", "table0", "a");
+        mgr.flush(null, false);
+        mgr.writeRecords("db", "table0", "b");
+        mgr.writeRecords("db", "table1", "c");
+        mgr.flush(null, false);
+        // the only flush worker loads the other table while the failed batch waits for its backoff,
+        // which it parked before taking the next batch
+        assertTrue(otherTableLoaded.await(10, TimeUnit.SECONDS));
+        synchronized (loads) {
+            assertEquals(Lists.newArrayList("table0:a failed", "table1:c"), loads);
+        }
+        assertEquals(1L, metrics.getGaugeValue("retryQueueDepth"));
+        mgr.flush(null, true);
+        // the next batch of the table waits for the retried one
+        assertEquals(Lists.newArrayList("table0:a failed", "table1:c", "table0:a", "table0:b"), loads);
+        assertEquals(0L, metrics.getGaugeValue("retryQueueDepth"));
+        assertEquals(3L, metrics.getCount("totalFlushSucceededTimes"));
+        assertEquals(1L, metrics.getCount("totalFlushFailedTimes"));
+        mgr.close();
+    }
+
+    @Test
+    public void testTransactions() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        List<String> begun = new ArrayList<>();
+        List<String> prepared = new ArrayList<>();
+        List<String> committed = new ArrayList<>();
+        AtomicLong loadedRows = new AtomicLong();
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public void beginTransaction(StarRocksSinkTransaction txn) {
+                begun.add(txn.getLabel());
+            }
+            @Mock
+            public Map<String, Object> doTransactionLoad(StarRocksSinkTransaction txn, StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                assertTrue(begun.contains(txn.getLabel()));
+                loadedRows.addAndGet(bufferEntity.getBatchCount());
+                return new HashMap<>();
+            }
+            @Mock
+            public void prepareTransaction(StarRocksSinkTransaction txn) {
+                prepared.add(txn.getLabel());
+            }
+            @Mock
+            public void commitTransaction(StarRocksSinkTransaction txn) {
+                committed.add(txn.getLabel());
+            }
+        };
+        StarRocksSinkOptions options = OPTIONS_BUILDER
+            .withProperty("sink.semantic", "exactly-once")
+            .withProperty("sink.exactly-once.transaction", "true")
+            .withProperty("sink.buffer-flush.max-rows", "64000")
+            .build();
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.startAsyncFlushing();
+        byte[] row = "1\tstephen".getBytes(StandardCharsets.UTF_8);
+        // rows are loaded before the checkpoint, several batches of a table go to the same transaction
+        for (int i = 0; i < 200000; i++) {
+            mgr.writeRecord("db", "table" + (i % 2), row, 0, row.length);
+        }
+        List<StarRocksSinkTransaction> transactions = mgr.prepareTransactions();
+        assertEquals(200000, loadedRows.get());
+        assertEquals(2, begun.size());
+        assertEquals(2, transactions.size());
+        assertEquals(new HashSet<>(begun), new HashSet<>(prepared));
+        assertTrue(committed.isEmpty());
+        mgr.commitTransactions(transactions);
+        assertEquals(prepared, committed);
+        // the next checkpoint has transactions of its own
+        mgr.writeRecord("db", "table0", row, 0, row.length);
+        assertEquals(1, mgr.prepareTransactions().size());
+        assertEquals(3, begun.size());
+        mgr.close();
+    }
+
+    @Test
+    public void testSpillUntilCheckpoint() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        List<String> loadedLabels = new ArrayList<>();
+        AtomicLong loadedRows = new AtomicLong();
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                loadedLabels.add(bufferEntity.getLabel());
+                loadedRows.addAndGet(bufferEntity.getBatchCount());
+                return CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+        StarRocksSinkOptions options = OPTIONS_BUILDER
+            .withProperty("sink.semantic", "exactly-once")
+            .withProperty("sink.exactly-once.spill", "true")
+            .withProperty("sink.buffer-flush.max-rows", "64000")
+            .build();
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.startAsyncFlushing();
+        byte[] row = "1\tstephen".getBytes(StandardCharsets.UTF_8);
+        int rows = 150000;
+        for (int i = 0; i < rows; i++) {
+            mgr.writeRecord(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), row, 0, row.length);
+        }
+        // only the rows of the active batch stay in memory
+        assertEquals((long) (rows % 64000) * row.length, mgr.getBufferedBytes());
+        assertEquals(0, loadedRows.get());
+        List<StarRocksSinkSegment> segments = mgr.spillBufferedBatches();
+        assertEquals(3, segments.size());
+        assertEquals(rows, segments.stream().mapToLong(StarRocksSinkSegment::getRowCount).sum());
+        assertEquals(0L, mgr.getBufferedBytes());
+        assertTrue(segments.stream().allMatch(segment -> new File(segment.getPath()).isFile()));
+        mgr.loadSegments(1L, segments);
+        assertEquals(rows, loadedRows.get());
+        // loaded with the labels of the spilled batches, in order
+        assertEquals(segments.stream().map(StarRocksSinkSegment::getLabel).collect(Collectors.toList()), loadedLabels);
+        // still referenced by the checkpoint they were spilled for
+        mgr.deleteLoadedSegments(1L);
+        assertTrue(segments.stream().allMatch(segment -> new File(segment.getPath()).isFile()));
+        mgr.deleteLoadedSegments(2L);
+        assertFalse(segments.stream().anyMatch(segment -> new File(segment.getPath()).exists()));
+        mgr.close();
+    }
+
+    @Test
+    public void testRestoreSpilledSegments() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        AtomicLong loadedRows = new AtomicLong();
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                loadedRows.addAndGet(bufferEntity.getBatchCount());
+                return CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+        StarRocksSinkOptions options = OPTIONS_BUILDER
+            .withProperty("sink.semantic", "exactly-once")
+            .withProperty("sink.exactly-once.spill", "true")
+            .build();
+        String spillName = "test-" + System.nanoTime();
+        byte[] row = "1\tstephen".getBytes(StandardCharsets.UTF_8);
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.startAsyncFlushing();
+        mgr.openSpillStore(spillName, new HashSet<>());
+        mgr.writeRecord(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), row, 0, row.length);
+        // checkpoint 1 is taken and its segments loaded, then the job fails before checkpoint 2 completes
+        List<StarRocksSinkSegment> checkpointed = mgr.spillBufferedBatches();
+        mgr.loadSegments(1L, checkpointed);
+        mgr.writeRecord(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), row, 0, row.length);
+        List<StarRocksSinkSegment> uncompleted = mgr.spillBufferedBatches();
+        assertTrue(new File(checkpointed.get(0).getPath()).isFile());
+        assertTrue(new File(uncompleted.get(0).getPath()).isFile());
+
+        // restored from checkpoint 1: its segments are loaded again, the ones of checkpoint 2 are deleted
+        mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.startAsyncFlushing();
+        mgr.openSpillStore(spillName, new HashSet<>(Lists.newArrayList(checkpointed.get(0).getPath())));
+        assertFalse(new File(uncompleted.get(0).getPath()).exists());
+        mgr.loadSegments(Long.MIN_VALUE, checkpointed);
+        assertEquals(2, loadedRows.get());
+        mgr.deleteLoadedSegments(2L);
+        assertFalse(new File(checkpointed.get(0).getPath()).exists());
+        mgr.close();
+    }
+
+    @Test
+    public void testFlushWhileWriting() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        AtomicLong loadedRows = new AtomicLong();
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                loadedRows.addAndGet(bufferEntity.getBatchCount());
+                return CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+        StarRocksSinkManager mgr = new StarRocksSinkManager(OPTIONS, TABLE_SCHEMA);
+        mgr.startAsyncFlushing();
+        // batches are sealed by another thread all along, as the interval scheduler does
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Exception> flushError = new AtomicReference<>();
+        Thread flusher = new Thread(() -> {
+            while (writing.get()) {
+                try {
+                    mgr.flush(null, false);
+                } catch (Exception e) {
+                    flushError.set(e);
+                    return;
+                }
+            }
+        });
+        flusher.start();
+        int rows = 200000;
+        byte[] row = "1\tstephen".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < rows; i++) {
+            mgr.writeRecord(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), row, 0, row.length);
+        }
+        writing.set(false);
+        flusher.join();
+        mgr.close();
+        assertEquals(null, flushError.get());
+        assertEquals(rows, loadedRows.get());
+    }
+
+    @Test
+    public void testFlushWhileWaitingForOffHeapBuffer() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        // the first batch keeps its memory until the test completes its load
+        CompletableFuture<Map<String, Object>> firstLoad = new CompletableFuture<>();
+        AtomicLong loadedRows = new AtomicLong();
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                return 0 == loadedRows.getAndAdd(bufferEntity.getBatchCount()) ? firstLoad : CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+        CountDownLatch waiting = new CountDownLatch(1);
+        new MockUp<StarRocksSinkBufferArena>() {
+            @Mock
+            public boolean awaitFreeChunk(Invocation invocation, long timeoutMs) {
+                waiting.countDown();
+                return invocation.proceed(timeoutMs);
+            }
+        };
+        // a single chunk, held by the batch being loaded
+        StarRocksSinkOptions options = OPTIONS_BUILDER
+            .withProperty("sink.buffer.off-heap", "true")
+            .withProperty("sink.buffer.off-heap.chunk-size", "65536")
+            .withProperty("sink.buffer.off-heap.max-bytes", "65536")
+            .build();
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.startAsyncFlushing();
+        byte[] row = new byte[40000];
+        mgr.writeRecord(DATABASE, TABLE, row, 0, row.length);
+        mgr.flush(null, false);
+        AtomicReference<Exception> writeError = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                mgr.writeRecord(DATABASE, TABLE, row, 0, row.length);
+            } catch (Exception e) {
+                writeError.set(e);
+            }
+        });
+        writer.start();
+        waiting.await();
+        // sealing the batches does not wait for the writer, which is waiting for the memory of the arena
+        mgr.flush(String.format("%s,%s", DATABASE, TABLE), false);
+        firstLoad.complete(new HashMap<>());
+        writer.join();
+        assertEquals(null, writeError.get());
+        assertEquals(1, mgr.getBufferedBatchMap().size());
+        assertEquals(1L, loadedRows.get());
+        mgr.flush(null, true);
+        assertEquals(2L, loadedRows.get());
+        mgr.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        List<String> loadedRows = new ArrayList<>();
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                for (byte[] row : bufferEntity.getBuffer()) {
+                    loadedRows.add(new String(row, StandardCharsets.UTF_8));
+                }
+                return CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+        StarRocksSinkOptions options = OPTIONS_BUILDER.withProperty("sink.buffer.compaction", "true").build();
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.startAsyncFlushing();
+        int keys = 10;
+        long expectedBytes = 0;
+        List<String> expectedRows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            byte[] row = String.format("%d\tname_%d\t%d", i % keys, i, i < 1000 - keys ? 0 : 1).getBytes(StandardCharsets.UTF_8);
+            ByteBuffer key = ByteBuffer.wrap(String.valueOf(i % keys).getBytes(StandardCharsets.UTF_8));
+            mgr.writeRecord(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), null, key, row, 0, row.length);
+            if (i >= 1000 - keys) {
+                expectedBytes += row.length;
+                expectedRows.add(new String(row, StandardCharsets.UTF_8));
+            }
+        }
+        // only the last row of each key is buffered, in the order the keys came first
+        StarRocksSinkBufferEntity batch = mgr.getBufferedBatchMap().values().iterator().next();
+        assertEquals(keys, batch.getBatchCount());
+        assertEquals(expectedBytes, batch.getBatchSize());
+        // the index of the keys counts against `sink.buffer.max-bytes` as well
+        assertTrue(batch.getBufferedBytes() > expectedBytes + keys);
+        assertEquals(batch.getBufferedBytes(), mgr.getBufferedBytes());
+        mgr.flush(null, true);
+        assertEquals(expectedRows, loadedRows);
+        // keys are compacted within a batch only
+        byte[] row = "0\tname\t0".getBytes(StandardCharsets.UTF_8);
+        mgr.writeRecord(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), null, ByteBuffer.wrap("0".getBytes(StandardCharsets.UTF_8)), row, 0, row.length);
+        mgr.close();
+        assertEquals(keys + 1, loadedRows.size());
+    }
+
+    @Test
+    public void testPartialUpdate() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        List<String> loads = new ArrayList<>();
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                loads.add(String.join(",", bufferEntity.getPartialColumns()) + ":" +
+                    bufferEntity.getBuffer().stream().map(row -> new String(row, StandardCharsets.UTF_8)).collect(Collectors.joining(";")));
+                return CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+        StarRocksSinkOptions options = OPTIONS_BUILDER.withProperty("sink.partial-update", "true").build();
+        String exMsg = "";
+        try {
+            new StarRocksSinkManager(options, TABLE_SCHEMA);
+        } catch (Exception e) {
+            exMsg = e.getMessage();
+        }
+        // the table has no primary key
+        assertTrue(exMsg.contains("sink.partial-update"));
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, null);
+        mgr.startAsyncFlushing();
+        String[] names = new String[]{"k1", "v1"};
+        String[] scores = new String[]{"k1", "v2"};
+        writePartialRow(mgr, names, "1", "1\ta\t0");
+        writePartialRow(mgr, scores, "2", "2\t10\t0");
+        writePartialRow(mgr, names, "3", "3\tc\t0");
+        assertTrue(loads.isEmpty());
+        // the batch of the other columns holding key 1 goes first
+        writePartialRow(mgr, scores, "1", "1\t11\t0");
+        mgr.flush(null, true);
+        assertEquals(Lists.newArrayList("k1,v1:1\ta\t0;3\tc\t0", "k1,v2:2\t10\t0;1\t11\t0"), loads);
+        mgr.close();
+    }
+
+    private void writePartialRow(StarRocksSinkManager mgr, String[] columns, String key, String row) throws IOException {
+        byte[] bts = row.getBytes(StandardCharsets.UTF_8);
+        mgr.writeRecord(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), columns, ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8)), bts, 0, bts.length);
+    }
+
+    @Test
+    public void testDeadLetter() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        List<String> loadedRows = new ArrayList<>();
+        AtomicLong loads = new AtomicLong();
+        AtomicLong errorLogs = new AtomicLong();
+        mockDataQualityFailures(loadedRows, loads, errorLogs);
+        File dir = Files.createTempDirectory("starrocks-dead-letter").toFile();
+        StarRocksSinkOptions options = OPTIONS_BUILDER.withProperty("sink.dead-letter.dir", dir.getAbsolutePath()).build();
+        // the batches of the table are loaded in order with upserts
+        options.enableUpsertDelete();
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.startAsyncFlushing();
+        List<String> expectedRows = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            String row = (i == 5 || i == 42 ? "bad_" : "good_") + i;
+            mgr.writeRecords(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), row);
+            if (!row.startsWith("bad")) {
+                expectedRows.add(row);
+            }
+        }
+        mgr.flush(null, false);
+        // the next batch waits for the halves of the failing one
+        for (int i = 64; i < 72; i++) {
+            mgr.writeRecords(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), "good_" + i);
+            expectedRows.add("good_" + i);
+        }
+        mgr.close();
+        // the good rows are loaded in order, each bad one is isolated in log2(64) splits
+        assertEquals(expectedRows, loadedRows);
+        assertTrue(loads.get() <= 1 + 2 * 2 * 6 + 1);
+        // the error log is only fetched for the whole batch and the bad rows, not for the halves split again
+        assertEquals(3, errorLogs.get());
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        List<String> letters = Files.readAllLines(files[0].toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, letters.size());
+        assertTrue(letters.get(0).contains("bad_5") && letters.get(0).contains("too many filtered rows") && letters.get(0).contains("Value count does not match"));
+        assertTrue(letters.get(1).contains("bad_42") && letters.get(1).contains("Value count does not match"));
+        files[0].delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testDeadLetterMaxBisectLoads() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        List<String> loadedRows = new ArrayList<>();
+        AtomicLong loads = new AtomicLong();
+        AtomicLong errorLogs = new AtomicLong();
+        mockDataQualityFailures(loadedRows, loads, errorLogs);
+        File dir = Files.createTempDirectory("starrocks-dead-letter").toFile();
+        StarRocksSinkOptions options = OPTIONS_BUILDER
+            .withProperty("sink.dead-letter.dir", dir.getAbsolutePath())
+            .withProperty("sink.dead-letter.max-bisect-loads", "2")
+            .build();
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, null);
+        mgr.startAsyncFlushing();
+        for (int i = 0; i < 16; i++) {
+            mgr.writeRecords(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), (i == 5 ? "bad_" : "good_") + i);
+        }
+        mgr.close();
+        // the failing half is not split again, its rows go to the dead-letter file as a whole
+        assertEquals(3, loads.get());
+        assertEquals(2, errorLogs.get());
+        assertEquals(IntStream.range(8, 16).mapToObj(i -> "good_" + i).collect(Collectors.toList()), loadedRows);
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        List<String> letters = Files.readAllLines(files[0].toPath(), StandardCharsets.UTF_8);
+        assertEquals(8, letters.size());
+        assertTrue(letters.get(0).contains("good_0") && letters.get(5).contains("bad_5"));
+        files[0].delete();
+        dir.delete();
+    }
+
+    // the batches holding a row starting with `bad` fail on data quality, with the error log unless the batch skips it
+    private void mockDataQualityFailures(List<String> loadedRows, AtomicLong loads, AtomicLong errorLogs) {
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) throws IOException {
+                loads.incrementAndGet();
+                List<String> rows = bufferEntity.getBuffer().stream().map(row -> new String(row, StandardCharsets.UTF_8)).collect(Collectors.toList());
+                if (rows.stream().anyMatch(row -> row.startsWith("bad"))) {
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("Status", "Fail");
+                    result.put("Message", "too many filtered rows");
+                    result.put("ErrorURL", "http://127.0.0.1:8040/api/_load_error_log?file=error_log");
+                    String errorLog = "";
+                    if (!bufferEntity.isErrorLogSkipped()) {
+                        errorLogs.incrementAndGet();
+                        errorLog = "Error: Value count does not match column count.";
+                    }
+                    throw new StarRocksStreamLoadFailedException("Failed to flush data to StarRocks: too many filtered rows\n" + errorLog, result);
+                }
+                loadedRows.addAll(rows);
+                return CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+    }
+
+    @Test
+    public void testBufferBudget() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        AtomicLong loadedBytes = new AtomicLong();
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                loadedBytes.addAndGet(bufferEntity.getBatchSize());
+                return CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+        long maxBytes = 1024L * 1024L;
+        StarRocksSinkOptions options = OPTIONS_BUILDER.withProperty("sink.buffer.max-bytes", String.valueOf(maxBytes)).build();
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.startAsyncFlushing();
+        byte[] row = new byte[1000];
+        int rows = 10000;
+        // rows spread over 100 tables, none of them reaching the flush thresholds of its own
+        for (int i = 0; i < rows; i++) {
+            mgr.writeRecord("db", "table" + (i % 100), row, 0, row.length);
+            assertTrue(mgr.getBufferedBytes() <= maxBytes);
+        }
+        mgr.flush(null, true);
+        assertTrue(loadedBytes.get() >= (long) rows * row.length - maxBytes);
+        assertEquals(0L, mgr.getBufferedBytes());
+        mgr.close();
+        assertEquals((long) rows * row.length, loadedBytes.get());
+    }
+
     @Test
     public void testClose() throws Exception {
         mockTableStructure();
@@ -248,6 +931,17 @@ public class StarRocksSinkManagerTest extends StarRocksSinkBaseTest {
         assertTrue((boolean)getPrivateFieldValue(mgr, "closed"));
         TimeUnit.MILLISECONDS.sleep(100L); // wait flush thread exit
         assertFalse((boolean)getPrivateFieldValue(mgr, "flushThreadAlive"));
+
+        // a closed visitor is not opened again by a late request, which opens it first if it was not
+        StarRocksStreamLoadVisitor visitor = new StarRocksStreamLoadVisitor(OPTIONS, new String[]{}, false);
+        visitor.open();
+        visitor.close();
+        try {
+            visitor.open();
+        } catch (IllegalStateException e) {
+            exMsg = e.getMessage();
+        }
+        assertEquals("The stream load visitor is closed.", exMsg);
     }
 
     @Test
@@ -267,6 +961,44 @@ public class StarRocksSinkManagerTest extends StarRocksSinkBaseTest {
         assertTrue(0 == exMsg.length());
     }
 
+    @Test
+    public void testPartitionGrouping() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        AtomicLong loadedRows = new AtomicLong();
+        CountDownLatch latestPartitionLoaded = new CountDownLatch(1);
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                loadedRows.addAndGet(bufferEntity.getBatchCount());
+                latestPartitionLoaded.countDown();
+                return CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+        StarRocksSinkOptions options = OPTIONS_BUILDER.withProperty("sink.buffer.partition-grouping", "true").build();
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        mgr.startAsyncFlushing();
+        byte[] row = "1\tstephen".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 10; i++) {
+            mgr.writeRecord(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), "p20220102", false, row, 0, row.length);
+        }
+        for (int i = 0; i < 5; i++) {
+            mgr.writeRecord(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), "p20220101", true, row, 0, row.length);
+        }
+        // a batch per partition
+        assertEquals(2, mgr.getBufferedBatchMap().size());
+        // the batch of the late partition waits for its own interval
+        Method flushOnInterval = StarRocksSinkManager.class.getDeclaredMethod("flushOnInterval");
+        flushOnInterval.setAccessible(true);
+        flushOnInterval.invoke(mgr);
+        assertTrue(latestPartitionLoaded.await(10, TimeUnit.SECONDS));
+        assertEquals(10, loadedRows.get());
+        assertEquals(1, mgr.getBufferedBatchMap().size());
+        assertEquals(5L * row.length, mgr.getBufferedBytes());
+        mgr.close();
+        assertEquals(15, loadedRows.get());
+    }
+
     @Test
     public void testOffer() throws Exception {
         mockTableStructure();
@@ -284,7 +1016,6 @@ public class StarRocksSinkManagerTest extends StarRocksSinkBaseTest {
         };
         // flush cost more than offer timeout
         StarRocksSinkManager mgr = new StarRocksSinkManager(OPTIONS, TABLE_SCHEMA);
-        setPrivateFieldValue(mgr, "FLUSH_QUEUE_POLL_TIMEOUT", 10);
         try {
             mgr.startAsyncFlushing();
             mgr.writeRecords(OPTIONS.getDatabaseName(), OPTIONS.getTableName(), "");
@@ -318,4 +1049,48 @@ public class StarRocksSinkManagerTest extends StarRocksSinkBaseTest {
         TimeUnit.MILLISECONDS.sleep(100L); // wait flush thread exit
         assertFalse((boolean)getPrivateFieldValue(mgr, "flushThreadAlive"));
     }
+
+    /**
+     * Keeps the counters and gauges registered by the manager, by the names of their groups and their own.
+     */
+    private static class TestMetricGroup extends UnregisteredMetricsGroup {
+
+        private final String prefix;
+        private final Map<String, Metric> metrics;
+
+        private TestMetricGroup() {
+            this("", new ConcurrentHashMap<>());
+        }
+
+        private TestMetricGroup(String prefix, Map<String, Metric> metrics) {
+            this.prefix = prefix;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Counter counter(String name) {
+            Counter counter = new SimpleCounter();
+            metrics.put(prefix + name, counter);
+            return counter;
+        }
+
+        @Override
+        public <T, G extends Gauge<T>> G gauge(String name, G gauge) {
+            metrics.put(prefix + name, gauge);
+            return gauge;
+        }
+
+        @Override
+        public MetricGroup addGroup(String key, String value) {
+            return new TestMetricGroup(prefix + key + "." + value + ".", metrics);
+        }
+
+        private long getCount(String name) {
+            return ((Counter) metrics.get(name)).getCount();
+        }
+
+        private long getGaugeValue(String name) {
+            return ((Number) ((Gauge<?>) metrics.get(name)).getValue()).longValue();
+        }
+    }
 }
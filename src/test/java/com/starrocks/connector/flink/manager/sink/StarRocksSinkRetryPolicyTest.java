@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager.sink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.starrocks.connector.flink.StarRocksSinkBaseTest;
+import com.starrocks.connector.flink.manager.StarRocksSinkRetryPolicy;
+import com.starrocks.connector.flink.manager.StarRocksStreamLoadFailedException;
+import com.starrocks.connector.flink.table.sink.StarRocksSinkOptions;
+
+public class StarRocksSinkRetryPolicyTest extends StarRocksSinkBaseTest {
+
+    @Test
+    public void testRetriableFailures() {
+        StarRocksSinkRetryPolicy policy = new StarRocksSinkRetryPolicy(OPTIONS);
+        assertTrue(policy.isRetriable(new SocketTimeoutException("Read timed out")));
+        assertTrue(policy.isRetriable(new IOException("Connection reset")));
+        assertTrue(policy.isRetriable(new StarRocksStreamLoadFailedException("Internal server error", 500)));
+        assertTrue(policy.isRetriable(new StarRocksStreamLoadFailedException("Too many requests", 429)));
+        assertTrue(policy.isRetriable(new StarRocksStreamLoadFailedException("Label aborted", null, true)));
+        assertTrue(policy.isRetriable(new StarRocksStreamLoadFailedException("Publish timeout", failedResponse("publish timeout", false))));
+
+        assertFalse(policy.isRetriable(new StarRocksStreamLoadFailedException("Unauthorized", 401)));
+        assertFalse(policy.isRetriable(new StarRocksStreamLoadFailedException("Bad rows", failedResponse("too many filtered rows", true))));
+        assertFalse(policy.isRetriable(new IllegalStateException()));
+
+        // retries are bounded by `sink.max-retries`
+        assertTrue(policy.shouldRetry(new IOException(), Integer.parseInt(SINK_MAX_RETRIES) - 1));
+        assertFalse(policy.shouldRetry(new IOException(), Integer.parseInt(SINK_MAX_RETRIES)));
+    }
+
+    @Test
+    public void testBackoff() {
+        StarRocksSinkOptions options = OPTIONS_BUILDER
+            .withProperty("sink.retry.backoff-ms", "100")
+            .withProperty("sink.retry.max-backoff-ms", "1000")
+            .build();
+        StarRocksSinkRetryPolicy policy = new StarRocksSinkRetryPolicy(options);
+        for (int i = 0; i < 100; i++) {
+            assertInRange(policy.getBackoffMs(0), 50, 100);
+            assertInRange(policy.getBackoffMs(2), 200, 400);
+            // capped
+            assertInRange(policy.getBackoffMs(10), 500, 1000);
+            assertInRange(policy.getBackoffMs(100), 500, 1000);
+        }
+    }
+
+    private static void assertInRange(long backoff, long min, long max) {
+        assertTrue(String.format("backoff %d not in [%d, %d]", backoff, min, max), backoff >= min && backoff <= max);
+    }
+
+    private static Map<String, Object> failedResponse(String message, boolean errorUrl) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("Status", "Fail");
+        response.put("Message", message);
+        if (errorUrl) {
+            response.put("ErrorURL", "http://127.0.0.1:8040/api/_load_error_log?file=error_log");
+        }
+        return response;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.manager.sink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import com.starrocks.connector.flink.StarRocksSinkBaseTest;
+import com.starrocks.connector.flink.manager.StarRocksSinkBufferArena;
+import com.starrocks.connector.flink.manager.StarRocksSinkBufferEntity;
+import com.starrocks.connector.flink.manager.StarRocksStreamLoadEntity;
+import com.starrocks.connector.flink.table.sink.StarRocksSinkOptions;
+
+import org.apache.commons.io.IOUtils;
+
+import net.jpountz.lz4.LZ4FrameInputStream;
+
+public class StarRocksStreamLoadEntityTest extends StarRocksSinkBaseTest {
+
+    @Test
+    public void testWriteCsvRows() throws Exception {
+        StarRocksSinkBufferEntity bufferEntity = createBufferEntity("1\tstephen", "2\tlebron", "");
+        StarRocksStreamLoadEntity entity = new StarRocksStreamLoadEntity(bufferEntity, StarRocksSinkOptions.StreamLoadFormat.CSV, "\n".getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        byte[] expected = joinRows(bufferEntity.getBuffer(), (int) bufferEntity.getBatchSize());
+        assertArrayEquals(expected, out.toByteArray());
+        assertEquals(expected.length, entity.getContentLength());
+        // the content is the same body, read again
+        assertArrayEquals(expected, IOUtils.toByteArray(entity.getContent()));
+        assertArrayEquals(expected, IOUtils.toByteArray(entity.getContent()));
+    }
+
+    @Test
+    public void testWriteJsonRows() throws Exception {
+        OPTIONS = OPTIONS_BUILDER.withProperty("sink.properties.format", "json").build();
+        for (String[] rows : new String[][]{{}, {"{\"k1\":1}"}, {"{\"k1\":1}", "{\"k1\":2}", "{\"k1\":3}"}}) {
+            StarRocksSinkBufferEntity bufferEntity = createBufferEntity(rows);
+            StarRocksStreamLoadEntity entity = new StarRocksStreamLoadEntity(bufferEntity, StarRocksSinkOptions.StreamLoadFormat.JSON, "\n".getBytes(StandardCharsets.UTF_8));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeTo(out);
+            byte[] expected = joinRows(bufferEntity.getBuffer(), (int) bufferEntity.getBatchSize());
+            assertArrayEquals(expected, out.toByteArray());
+            assertEquals(expected.length, entity.getContentLength());
+        }
+    }
+
+    @Test
+    public void testWriteOffHeapRows() throws Exception {
+        // chunks smaller than the rows, so that rows span several chunks
+        StarRocksSinkBufferArena arena = new StarRocksSinkBufferArena(4, 64);
+        String[] rows = new String[]{"1\tstephen", "", "2\tlebron", "3\tkobe"};
+        StarRocksSinkBufferEntity offHeapEntity = new StarRocksSinkBufferEntity(DATABASE, TABLE, SINK_LABEL_PREFIX, arena);
+        for (String row : rows) {
+            assertTrue(offHeapEntity.tryAddToBuffer(row.getBytes(StandardCharsets.UTF_8)));
+        }
+        StarRocksSinkBufferEntity heapEntity = createBufferEntity(rows);
+        assertEquals(heapEntity.getBatchCount(), offHeapEntity.getBatchCount());
+        assertEquals(heapEntity.getBatchSize(), offHeapEntity.getBatchSize());
+        for (StarRocksSinkOptions.StreamLoadFormat format : StarRocksSinkOptions.StreamLoadFormat.values()) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new StarRocksStreamLoadEntity(heapEntity, format, "\n".getBytes(StandardCharsets.UTF_8)).writeTo(expected);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new StarRocksStreamLoadEntity(offHeapEntity, format, "\n".getBytes(StandardCharsets.UTF_8)).writeTo(out);
+            assertArrayEquals(expected.toByteArray(), out.toByteArray());
+        }
+        assertEquals(heapEntity.getBuffer().size(), offHeapEntity.getBuffer().size());
+        for (int i = 0; i < rows.length; i++) {
+            assertArrayEquals(heapEntity.getBuffer().get(i), offHeapEntity.getBuffer().get(i));
+        }
+        // the arena is used up
+        assertFalse(offHeapEntity.tryAddToBuffer(new byte[64]));
+        assertNull(arena.allocate(10L));
+        offHeapEntity.release();
+        assertEquals(0L, arena.getUsedBytes());
+        assertTrue(offHeapEntity.tryAddToBuffer(new byte[64]));
+    }
+
+    @Test
+    public void testWriteCompressedRows() throws Exception {
+        String[] rows = new String[1000];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i + "\tstephen\t" + (i % 7);
+        }
+        StarRocksSinkBufferEntity bufferEntity = createBufferEntity(rows);
+        for (StarRocksSinkOptions.StreamLoadFormat format : StarRocksSinkOptions.StreamLoadFormat.values()) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new StarRocksStreamLoadEntity(bufferEntity, format, "\n".getBytes(StandardCharsets.UTF_8)).writeTo(expected);
+            for (StarRocksSinkOptions.StreamLoadCompression compression : StarRocksSinkOptions.StreamLoadCompression.values()) {
+                StarRocksStreamLoadEntity entity = new StarRocksStreamLoadEntity(bufferEntity, format, "\n".getBytes(StandardCharsets.UTF_8), compression);
+                assertEquals(expected.size(), entity.getUncompressedLength());
+                // written twice, as a retried load does
+                for (int i = 0; i < 2; i++) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    entity.writeTo(out);
+                    assertEquals(out.size(), entity.getCompressedLength());
+                    assertArrayEquals(expected.toByteArray(), decompress(compression, out.toByteArray()));
+                }
+                if (StarRocksSinkOptions.StreamLoadCompression.NONE.equals(compression)) {
+                    assertFalse(entity.isChunked());
+                    assertEquals(expected.size(), entity.getContentLength());
+                } else {
+                    // the length is only known once the body is written
+                    assertTrue(entity.isChunked());
+                    assertEquals(-1L, entity.getContentLength());
+                    assertTrue(entity.getCompressedLength() < entity.getUncompressedLength());
+                }
+            }
+        }
+    }
+
+    private static byte[] decompress(StarRocksSinkOptions.StreamLoadCompression compression, byte[] body) throws Exception {
+        InputStream in = new ByteArrayInputStream(body);
+        switch (compression) {
+            case GZIP:
+                in = new GZIPInputStream(in);
+                break;
+            case LZ4_FRAME:
+                in = new LZ4FrameInputStream(in);
+                break;
+            default:
+                break;
+        }
+        return IOUtils.toByteArray(in);
+    }
+
+    private StarRocksSinkBufferEntity createBufferEntity(String... rows) {
+        StarRocksSinkBufferEntity bufferEntity = new StarRocksSinkBufferEntity(DATABASE, TABLE, SINK_LABEL_PREFIX);
+        for (String row : rows) {
+            bufferEntity.addToBuffer(row.getBytes(StandardCharsets.UTF_8));
+        }
+        return bufferEntity;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.row.sink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import com.alibaba.fastjson.JSON;
+
+import org.apache.flink.table.data.DecimalData;
+import org.apache.flink.table.data.TimestampData;
+import org.apache.flink.table.data.binary.BinaryStringData;
+
+public class StarRocksByteSinkTest {
+
+    @Test
+    public void testWriteDecimal() {
+        for (String value : new String[]{"0", "12", "-12", "1000.00", "0.05", "-0.05", "0.00", "12.340", "0.00000001", "-999999999.999999999"}) {
+            BigDecimal expected = new BigDecimal(value);
+            DecimalData decimal = DecimalData.fromBigDecimal(expected, 18, expected.scale());
+            StarRocksByteSink out = new StarRocksByteSink(1);
+            out.writeDecimal(decimal.toUnscaledLong(), decimal.scale());
+            assertEquals(expected.toPlainString(), out.toString());
+        }
+    }
+
+    @Test
+    public void testWriteDateTime() {
+        String[] values = new String[]{
+            "1970-01-01T00:00", "2021-02-02T12:22:22.010", "1969-12-31T23:59:59.999999999",
+            "0001-01-01T00:00:01", "2020-02-29T10:00:00.000123", "9999-12-31T23:59:59.5"
+        };
+        for (String value : values) {
+            LocalDateTime expected = LocalDateTime.parse(value);
+            TimestampData timestamp = TimestampData.fromLocalDateTime(expected);
+            StarRocksByteSink out = new StarRocksByteSink(1);
+            out.writeDateTime(timestamp.getMillisecond(), timestamp.getNanoOfMillisecond());
+            assertEquals(expected.toString(), out.toString());
+
+            out.reset();
+            out.writeDate((int) expected.toLocalDate().toEpochDay());
+            assertEquals(expected.toLocalDate().toString(), out.toString());
+        }
+        StarRocksByteSink out = new StarRocksByteSink(1);
+        out.writeDate((int) LocalDate.of(10000, 1, 1).toEpochDay());
+        assertEquals("+10000-01-01", out.toString());
+    }
+
+    @Test
+    public void testWriteJsonString() {
+        String value = "a\"b\\c\n\t\u0001中😀/";
+        StarRocksByteSink out = new StarRocksByteSink(1);
+        out.writeJsonString(value);
+        assertEquals(value, JSON.parse(out.toString()));
+
+        BinaryStringData binaryValue = BinaryStringData.fromString(value);
+        binaryValue.ensureMaterialized();
+        out.reset();
+        out.writeJsonString(binaryValue.getSegments(), binaryValue.getOffset(), binaryValue.getSizeInBytes());
+        assertEquals(value, JSON.parse(out.toString()));
+    }
+}
@@ -16,6 +16,7 @@ package com.starrocks.connector.flink.row.sink;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
@@ -24,7 +25,10 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import com.alibaba.fastjson.JSON;
 import com.starrocks.connector.flink.StarRocksSinkBaseTest;
+import com.starrocks.connector.flink.row.sink.StarRocksByteSink;
+import com.starrocks.connector.flink.row.sink.StarRocksIByteSerializer;
 import com.starrocks.connector.flink.row.sink.StarRocksISerializer;
 import com.starrocks.connector.flink.row.sink.StarRocksSerializerFactory;
 
@@ -91,4 +95,29 @@ public class StarRocksCsvSerializerTest extends StarRocksSinkBaseTest {
         String[] parsedRows = data.split(delimiter);
         assertEquals(rows.size(), parsedRows.length);
     }
+
+    @Test
+    public void testSerializeToBytes() {
+        StarRocksIByteSerializer serializer = StarRocksSerializerFactory.createSerializer(OPTIONS, TABLE_SCHEMA.getFieldNames());
+        List<Object[]> originRows = Arrays.asList(
+            new Object[]{Long.MIN_VALUE, Long.MAX_VALUE, -1, (short) 0, (byte) 9},
+            new Object[]{"\u4e2d\u6587", "\ud83d\ude00", "\ud83d", "\u00e9", null},
+            new Object[]{333.1, 1.5f, new java.math.BigDecimal("12.340"), true, Arrays.asList(1, 2)}
+        );
+        StarRocksByteSink out = new StarRocksByteSink(4);
+        for (Object[] vals : originRows) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < vals.length; i++) {
+                if (i > 0) {
+                    sb.append("\t");
+                }
+                sb.append(null == vals[i] ? "\\N" : (vals[i] instanceof List ? JSON.toJSONString(vals[i]) : vals[i]));
+            }
+            byte[] expected = sb.toString().getBytes(StandardCharsets.UTF_8);
+            out.reset();
+            serializer.serialize(vals, out);
+            assertArrayEquals(expected, out.toByteArray());
+            assertEquals(new String(expected, StandardCharsets.UTF_8), serializer.serialize(vals));
+        }
+    }
 }
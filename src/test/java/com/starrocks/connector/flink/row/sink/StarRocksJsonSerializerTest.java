@@ -22,13 +22,17 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 import com.alibaba.fastjson.JSON;
 import com.starrocks.connector.flink.StarRocksSinkBaseTest;
+import com.starrocks.connector.flink.row.sink.StarRocksByteSink;
+import com.starrocks.connector.flink.row.sink.StarRocksIByteSerializer;
 import com.starrocks.connector.flink.row.sink.StarRocksISerializer;
 import com.starrocks.connector.flink.row.sink.StarRocksSerializerFactory;
 
@@ -58,4 +62,35 @@ public class StarRocksJsonSerializerTest extends StarRocksSinkBaseTest {
             }
         }
     }
+
+    @Test
+    public void testSerializeNestedValues() {
+        String[] fieldNames = new String[]{"k1", "k\"2", "v1", "v2", "v3", "v4", "v5", "__op"};
+        StarRocksIByteSerializer serializer = new StarRocksJsonSerializer(fieldNames);
+        Map<String, Object> nestedMap = new HashMap<>();
+        nestedMap.put("a", Arrays.asList(1L, "x\ny"));
+        nestedMap.put("b", null);
+        nestedMap.put("c", new BigDecimal("1.50"));
+        Object[] values = new Object[]{
+            1L, "\u4e2d\"\\\t", null, 333.1, nestedMap, Arrays.asList(Arrays.asList(1, 2), nestedMap), true, 0
+        };
+        StarRocksByteSink out = new StarRocksByteSink(4);
+        serializer.serialize(values, out);
+
+        // as the HashMap + fastjson serializer did
+        Map<String, Object> expected = new HashMap<>();
+        for (int i = 0; i < fieldNames.length; i++) {
+            expected.put(fieldNames[i], values[i] instanceof Map ? JSON.toJSONString(values[i]) : values[i]);
+        }
+        Map<String, Object> expectedRow = JSON.parseObject(JSON.toJSONString(expected));
+        Map<String, Object> row = JSON.parseObject(out.toString());
+        assertEquals(expectedRow.keySet(), row.keySet());
+        for (String name : expectedRow.keySet()) {
+            if ("v3".equals(name)) {
+                assertEquals(JSON.parse((String) expectedRow.get(name)), JSON.parse((String) row.get(name)));
+            } else {
+                assertEquals(expectedRow.get(name), row.get(name));
+            }
+        }
+    }
 }
@@ -28,12 +28,14 @@ import static org.junit.Assert.assertTrue;
 import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Map;
 
 import com.alibaba.fastjson.JSON;
 import com.starrocks.connector.flink.StarRocksSinkBaseTest;
 import com.starrocks.connector.flink.row.sink.StarRocksSerializerFactory;
 import com.starrocks.connector.flink.row.sink.StarRocksTableRowTransformer;
+import com.starrocks.connector.flink.table.sink.StarRocksSinkOptions;
 
 import org.apache.flink.table.data.DecimalData;
 import org.apache.flink.table.data.GenericRowData;
@@ -67,6 +69,33 @@ public class StarRocksTableRowTransformerTest extends StarRocksSinkBaseTest {
         }
     }
 
+    @Test
+    public void testEncoder(@Injectable TypeInformation<RowData> rowDataTypeInfo, @Injectable RuntimeContext runtimeCtx) {
+        StarRocksTableRowTransformer rowTransformer = new StarRocksTableRowTransformer(rowDataTypeInfo);
+        rowTransformer.setRuntimeContext(runtimeCtx);
+        rowTransformer.setTableSchema(TABLE_SCHEMA);
+        GenericRowData escapedRow = createRowData();
+        escapedRow.setField(1, StringData.fromString("x\"y\\z\n\u4e2d\u0001"));
+        GenericRowData nullRow = createRowData();
+        nullRow.setField(2, null);
+        nullRow.setField(4, null);
+        for (String format : new String[]{"csv", "json"}) {
+            StarRocksSinkOptions options = OPTIONS_BUILDER.withProperty("sink.properties.format", format).build();
+            StarRocksIRowEncoder<RowData> encoder = rowTransformer.createEncoder(options);
+            StarRocksIByteSerializer serializer = StarRocksSerializerFactory.createSerializer(options, TABLE_SCHEMA.getFieldNames());
+            for (GenericRowData row : Arrays.asList(createRowData(), escapedRow, nullRow)) {
+                StarRocksByteSink out = new StarRocksByteSink(8);
+                encoder.encode(row, out);
+                String expected = serializer.serialize(rowTransformer.transform(row, options.supportUpsertDelete()));
+                if ("csv".equals(format)) {
+                    assertEquals(expected, out.toString());
+                } else {
+                    assertEquals(JSON.parseObject(expected), JSON.parseObject(out.toString()));
+                }
+            }
+        }
+    }
+
     private GenericRowData createRowData() {
         GenericRowData genericRowData = new GenericRowData(TABLE_SCHEMA.getFieldCount());
         genericRowData.setField(0, (byte)20);
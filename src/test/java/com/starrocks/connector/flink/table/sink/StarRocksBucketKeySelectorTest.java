@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.table.sink;
+
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.api.TableSchema;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.data.StringData;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StarRocksBucketKeySelectorTest {
+
+    private static final TableSchema SCHEMA = TableSchema.builder()
+        .field("k1", DataTypes.TINYINT())
+        .field("k2", DataTypes.INT())
+        .field("k3", DataTypes.BIGINT())
+        .field("k4", DataTypes.VARCHAR(16))
+        .field("v1", DataTypes.TIMESTAMP())
+        .build();
+
+    // buckets of StarRocks for the values below: zlib crc32 of the values, chained over the columns, modulo 1024
+    @Test
+    public void testBucketOfRow() {
+        GenericRowData row = new GenericRowData(5);
+        row.setField(0, (byte) -3);
+        row.setField(1, 123456);
+        row.setField(2, 1234567890123L);
+        row.setField(3, StringData.fromString("starrocks"));
+        // crc32 0x110e612c
+        assertEquals(300, (int) createSelector("k1").getKey(row));
+        // crc32 0x092db2ae
+        assertEquals(686, (int) createSelector("k2").getKey(row));
+        // crc32 0x04fead40
+        assertEquals(320, (int) createSelector("`k3`").getKey(row));
+        // crc32 0x89d52c26
+        assertEquals(38, (int) createSelector("k4").getKey(row));
+        // crc32 0x69e457d7
+        assertEquals(983, (int) createSelector("`k1`, `k4`").getKey(row));
+
+        // the hash is unsigned, crc32 0xffffffff
+        row.setField(1, -1);
+        assertEquals(1023, (int) createSelector("k2").getKey(row));
+        // utf-8 bytes, crc32 0x7d9676d9
+        row.setField(3, StringData.fromString("星石"));
+        assertEquals(729, (int) createSelector("k4").getKey(row));
+        // a null is hashed as an int of 0, crc32 0x768663f1
+        row.setField(3, null);
+        assertEquals(1009, (int) createSelector("k1, k4").getKey(row));
+    }
+
+    @Test
+    public void testUnsupportedDistribution() {
+        // datetime columns are not supported
+        assertNull(StarRocksBucketKeySelector.create(createPartitions("v1", "16"), createColumns(), SCHEMA, null));
+        // columns missing from the sink
+        assertNull(StarRocksBucketKeySelector.create(createPartitions("k5", "16"), createColumns(), SCHEMA, null));
+        // random distributions
+        assertNull(StarRocksBucketKeySelector.create(createPartitions(null, "16"), createColumns(), SCHEMA, null));
+        assertNull(StarRocksBucketKeySelector.create(Collections.emptyList(), createColumns(), SCHEMA, null));
+    }
+
+    @Test
+    public void testBucketPartitioner() {
+        StarRocksBucketKeySelector.BucketPartitioner partitioner = new StarRocksBucketKeySelector.BucketPartitioner();
+        assertEquals(3, partitioner.partition(7, 4));
+        assertEquals(0, partitioner.partition(8, 4));
+    }
+
+    private StarRocksBucketKeySelector<GenericRowData> createSelector(String distributionKey) {
+        StarRocksBucketKeySelector<GenericRowData> selector = StarRocksBucketKeySelector.create(
+            createPartitions(distributionKey, "1024"), createColumns(), SCHEMA, null);
+        assertNotNull(selector);
+        assertEquals(1024, selector.getBuckets());
+        return selector;
+    }
+
+    private List<Map<String, Object>> createPartitions(String distributionKey, String buckets) {
+        List<Map<String, Object>> partitions = new ArrayList<>();
+        Map<String, Object> partition = new HashMap<>();
+        partition.put("PartitionName", "p1");
+        partition.put("DistributionKey", distributionKey);
+        partition.put("Buckets", buckets);
+        partitions.add(partition);
+        return partitions;
+    }
+
+    private List<Map<String, Object>> createColumns() {
+        String[][] types = new String[][]{{"k1", "tinyint"}, {"k2", "int"}, {"k3", "bigint"}, {"k4", "varchar"}, {"v1", "datetime"}};
+        List<Map<String, Object>> columns = new ArrayList<>();
+        for (String[] type : types) {
+            Map<String, Object> column = new HashMap<>();
+            column.put("COLUMN_NAME", type[0]);
+            column.put("DATA_TYPE", type[1]);
+            columns.add(column);
+        }
+        return columns;
+    }
+}
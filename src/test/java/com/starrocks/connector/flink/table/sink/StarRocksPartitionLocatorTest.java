@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.table.sink;
+
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.api.TableSchema;
+import org.apache.flink.table.data.GenericRowData;
+import org.apache.flink.table.types.logical.LogicalType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StarRocksPartitionLocatorTest {
+
+    private static final TableSchema SCHEMA = TableSchema.builder()
+        .field("k1", DataTypes.TINYINT())
+        .field("k2", DataTypes.VARCHAR(16))
+        .field("v1", DataTypes.TIMESTAMP())
+        .field("v2", DataTypes.DATE())
+        .field("v3", DataTypes.DECIMAL(10, 2))
+        .build();
+
+    @Test
+    public void testDatePartitions() {
+        List<Map<String, Object>> partitions = new ArrayList<>();
+        // listed out of order
+        partitions.add(createPartition("p20220102", "v2", "DATE", "2022-01-02", "2022-01-03"));
+        partitions.add(createPartition("p20220101", "v2", "DATE", "2022-01-01", "2022-01-02"));
+        StarRocksPartitionLocator locator = create(partitions);
+        assertNotNull(locator);
+
+        // rows of the schema
+        GenericRowData row = new GenericRowData(5);
+        row.setField(3, (int) LocalDate.of(2022, 1, 2).toEpochDay());
+        StarRocksPartitionLocator.Partition latest = locator.locate(row, null);
+        assertEquals("p20220102", latest.getName());
+        assertFalse(locator.isLate(latest));
+
+        // transformed values
+        Object[] values = new Object[]{1, "k2", "2022-01-01 10:00:00", "2022-01-01", null};
+        StarRocksPartitionLocator.Partition earlier = locator.locate(null, values);
+        assertEquals("p20220101", earlier.getName());
+        assertTrue(locator.isLate(earlier));
+        assertFalse(locator.isLate(latest));
+
+        // out of all the partitions, or null
+        values[3] = "2022-01-03";
+        assertNull(locator.locate(null, values));
+        values[3] = null;
+        assertNull(locator.locate(null, values));
+    }
+
+    @Test
+    public void testIntegerPartitions() {
+        List<Map<String, Object>> partitions = new ArrayList<>();
+        partitions.add(createPartition("p0", "k1", "TINYINT", "-128", "10"));
+        partitions.add(createPartition("p1", "k1", "TINYINT", "10", "20"));
+        StarRocksPartitionLocator locator = create(partitions);
+        assertNotNull(locator);
+        GenericRowData row = new GenericRowData(5);
+        row.setField(0, (byte) 10);
+        assertEquals("p1", locator.locate(row, null).getName());
+        row.setField(0, (byte) 9);
+        assertEquals("p0", locator.locate(row, null).getName());
+    }
+
+    @Test
+    public void testUnsupportedPartitions() {
+        // unpartitioned tables
+        List<Map<String, Object>> partitions = new ArrayList<>();
+        partitions.add(createPartition("test_tbl", "", null, null, null));
+        assertNull(create(partitions));
+        // partition columns missing from the sink
+        partitions.clear();
+        partitions.add(createPartition("p0", "dt", "DATE", "2022-01-01", "2022-01-02"));
+        assertNull(create(partitions));
+        // partition columns of unsupported types
+        partitions.clear();
+        partitions.add(createPartition("p0", "v3", "DECIMAL64", "0", "10"));
+        assertNull(create(partitions));
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        List<Map<String, Object>> partitions = new ArrayList<>();
+        partitions.add(createPartition("p20220101", "v2", "DATE", "2022-01-01", "2022-01-02"));
+        StarRocksPartitionLocator locator = create(partitions);
+        assertNotNull(locator);
+        Object[] values = new Object[]{1, "k2", null, "2022-01-02", null};
+        // fetched again at most once a minute
+        partitions.add(createPartition("p20220102", "v2", "DATE", "2022-01-02", "2022-01-03"));
+        assertNull(locator.locate(null, values));
+        assertEquals(0, locator.getVersion());
+        Field lastRefreshTime = StarRocksPartitionLocator.class.getDeclaredField("lastRefreshTime");
+        lastRefreshTime.setAccessible(true);
+        lastRefreshTime.setLong(locator, 0L);
+        assertEquals("p20220102", locator.locate(null, values).getName());
+        assertEquals(1, locator.getVersion());
+    }
+
+    private StarRocksPartitionLocator create(List<Map<String, Object>> partitions) {
+        LogicalType[] fieldTypes = Arrays.stream(SCHEMA.getFieldDataTypes()).map(t -> t.getLogicalType()).toArray(LogicalType[]::new);
+        return StarRocksPartitionLocator.create(() -> partitions, SCHEMA.getFieldNames(), fieldTypes);
+    }
+
+    private Map<String, Object> createPartition(String name, String column, String type, String lower, String upper) {
+        Map<String, Object> partition = new HashMap<>();
+        partition.put("PartitionName", name);
+        partition.put("PartitionKey", column);
+        partition.put("Range", null == type ? "" :
+            String.format("[types: [%s]; keys: [%s]; ..types: [%s]; keys: [%s]; )", type, lower, type, upper));
+        return partition;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.table.sink;
+
+import org.apache.flink.calcite.shaded.com.google.common.collect.Lists;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.starrocks.connector.flink.StarRocksSinkBaseTest;
+import com.starrocks.connector.flink.manager.StarRocksSinkBufferEntity;
+import com.starrocks.connector.flink.manager.StarRocksSinkManager;
+import com.starrocks.connector.flink.manager.StarRocksStreamLoadEntity;
+import com.starrocks.connector.flink.manager.StarRocksStreamLoadVisitor;
+import com.starrocks.connector.flink.row.sink.StarRocksGenericRowTransformer;
+import mockit.Expectations;
+import mockit.Mock;
+import mockit.MockUp;
+
+public class StarRocksSinkRowWriterTest extends StarRocksSinkBaseTest {
+
+    @Test
+    public void testRowsOutOfThePartitions() throws Exception {
+        mockTableStructure();
+        mockStarRocksVersion(null);
+        List<Map<String, Object>> partitions = new ArrayList<>();
+        partitions.add(createPartition("p20220101", "2022-01-01", "2022-01-02"));
+        new Expectations() {
+            {
+                v.getTablePartitions();
+                result = partitions;
+            }
+        };
+        List<String> loads = new ArrayList<>();
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public CompletableFuture<Map<String, Object>> doStreamLoadAsync(StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                synchronized (loads) {
+                    for (byte[] row : bufferEntity.getBuffer()) {
+                        String[] columns = new String(row, StandardCharsets.UTF_8).split("\t");
+                        loads.add(columns[0] + ":" + columns[1]);
+                    }
+                }
+                return CompletableFuture.completedFuture(new HashMap<>());
+            }
+        };
+        StarRocksSinkOptions options = OPTIONS_BUILDER
+            .withProperty("sink.buffer.partition-grouping", "true")
+            .withProperty("sink.io.thread-count", "1")
+            .build();
+        // the batches of the table are loaded in order with upserts
+        options.enableUpsertDelete();
+        StarRocksSinkManager mgr = new StarRocksSinkManager(options, TABLE_SCHEMA);
+        StarRocksSinkRowWriter<Object[]> writer = new StarRocksSinkRowWriter<>(mgr, options, TABLE_SCHEMA,
+            new StarRocksGenericRowTransformer<>((row, values) -> System.arraycopy(values, 0, row, 0, values.length)));
+        // the partitions are fetched by the subtasks
+        assertNull(getPrivateFieldValue(writer, "partitionLocator"));
+        writer.open(null);
+        mgr.startAsyncFlushing();
+
+        // a dynamic partition not fetched yet, the row goes to the batch of the table
+        writer.write(new Object[]{1, "old", null, "2022-01-02", null, null, null});
+        assertTrue(mgr.getBufferedBatchMap().containsKey(String.format("%s,%s", DATABASE, TABLE)));
+        partitions.add(createPartition("p20220102", "2022-01-02", "2022-01-03"));
+        setPrivateFieldValue(getPrivateFieldValue(writer, "partitionLocator"), "lastRefreshTime", 0L);
+        // the next row of the key goes to the batch of the partition, which is loaded after the batch of the table
+        writer.write(new Object[]{1, "new", null, "2022-01-02", null, null, null});
+        assertEquals(1, mgr.getBufferedBatchMap().size());
+        assertTrue(mgr.getBufferedBatchMap().containsKey(String.format("%s,%s#p20220102", DATABASE, TABLE)));
+        mgr.flush(null, true);
+        assertEquals(Lists.newArrayList("1:old", "1:new"), loads);
+        mgr.close();
+    }
+
+    private Map<String, Object> createPartition(String name, String lower, String upper) {
+        Map<String, Object> partition = new HashMap<>();
+        partition.put("PartitionName", name);
+        partition.put("PartitionKey", "v2");
+        partition.put("Range", String.format("[types: [DATE]; keys: [%s]; ..types: [DATE]; keys: [%s]; )", lower, upper));
+        return partition;
+    }
+}
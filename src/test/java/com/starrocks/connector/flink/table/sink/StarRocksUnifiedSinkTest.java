@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.starrocks.connector.flink.table.sink;
+
+import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.api.connector.sink.Sink;
+import org.apache.flink.api.connector.sink.SinkWriter;
+import org.apache.flink.table.api.TableSchema;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.starrocks.connector.flink.StarRocksSinkBaseTest;
+import com.starrocks.connector.flink.manager.StarRocksSinkBufferEntity;
+import com.starrocks.connector.flink.manager.StarRocksSinkManager;
+import com.starrocks.connector.flink.manager.StarRocksSinkTransaction;
+import com.starrocks.connector.flink.manager.StarRocksStreamLoadEntity;
+import com.starrocks.connector.flink.manager.StarRocksStreamLoadVisitor;
+import com.starrocks.connector.flink.row.sink.StarRocksIRowTransformer;
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.Mocked;
+
+public class StarRocksUnifiedSinkTest extends StarRocksSinkBaseTest {
+
+    @Test
+    public void testTransactionSerializer() throws Exception {
+        StarRocksSinkTransactionSerializer serializer = new StarRocksSinkTransactionSerializer();
+        StarRocksSinkTransaction txn = new StarRocksSinkTransaction(DATABASE, TABLE, SINK_LABEL_PREFIX + "-label");
+        StarRocksSinkTransaction restored = serializer.deserialize(serializer.getVersion(), serializer.serialize(txn));
+        assertEquals(txn.getDatabase(), restored.getDatabase());
+        assertEquals(txn.getTable(), restored.getTable());
+        assertEquals(txn.getLabel(), restored.getLabel());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExactlyOnceWithoutTransaction() {
+        new StarRocksUnifiedSink<String>(OPTIONS_BUILDER.withProperty("sink.semantic", StarRocksSinkSemantic.EXACTLY_ONCE.getName()).build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTransformerNeedingRuntimeContext() {
+        new StarRocksUnifiedSink<>(OPTIONS, TABLE_SCHEMA, new StarRocksIRowTransformer<String>() {
+            @Override
+            public void setTableSchema(TableSchema tableSchema) {
+            }
+
+            @Override
+            public void setRuntimeContext(RuntimeContext ctx) {
+            }
+
+            @Override
+            public Object[] transform(String record, boolean supportUpsertDelete) {
+                return new Object[]{record};
+            }
+        });
+    }
+
+    @Test
+    public void testWriterPrepareCommit(@Mocked Sink.InitContext context) throws Exception {
+        mockStarRocksVersion(null);
+        mockSuccessResponse();
+        StarRocksUnifiedSink<String> sink = new StarRocksUnifiedSink<>(OPTIONS);
+        SinkWriter<String, StarRocksSinkTransaction, StarRocksSinkTransaction> writer = sink.createWriter(context, Collections.emptyList());
+        for (int i = 0; i < 10; i++) {
+            writer.write("1\tstephen", null);
+        }
+        StarRocksSinkManager mgr = (StarRocksSinkManager) getPrivateFieldValue(sink, "sinkManager");
+        assertEquals(1, mgr.getBufferedBatchMap().size());
+        // everything buffered is loaded before the checkpoint, there is nothing to commit
+        assertTrue(writer.prepareCommit(false).isEmpty());
+        assertTrue(mgr.getBufferedBatchMap().isEmpty());
+        writer.close();
+    }
+
+    @Test
+    public void testTransactionalWriterPrepareCommit(@Mocked Sink.InitContext context) throws Exception {
+        mockStarRocksVersion(null);
+        List<String> rolledBack = new ArrayList<>();
+        new MockUp<StarRocksStreamLoadVisitor>() {
+            @Mock
+            public void beginTransaction(StarRocksSinkTransaction txn) {
+            }
+            @Mock
+            public Map<String, Object> doTransactionLoad(StarRocksSinkTransaction txn, StarRocksSinkBufferEntity bufferEntity, StarRocksStreamLoadEntity entity) {
+                return new HashMap<>();
+            }
+            @Mock
+            public void prepareTransaction(StarRocksSinkTransaction txn) {
+            }
+            @Mock
+            public void rollbackTransaction(StarRocksSinkTransaction txn) {
+                rolledBack.add(txn.getLabel());
+            }
+        };
+        StarRocksSinkOptions options = OPTIONS_BUILDER
+            .withProperty("sink.semantic", StarRocksSinkSemantic.EXACTLY_ONCE.getName())
+            .withProperty("sink.exactly-once.transaction", "true")
+            .build();
+        StarRocksUnifiedSink<String> sink = new StarRocksUnifiedSink<>(options);
+        SinkWriter<String, StarRocksSinkTransaction, StarRocksSinkTransaction> writer = sink.createWriter(context, Collections.emptyList());
+        writer.write("1\tstephen", null);
+        // the prepared transaction is handed to the committers
+        List<StarRocksSinkTransaction> committables = writer.prepareCommit(false);
+        assertEquals(1, committables.size());
+        assertEquals(DATABASE, committables.get(0).getDatabase());
+        assertEquals(TABLE, committables.get(0).getTable());
+        assertTrue(writer.prepareCommit(false).isEmpty());
+        // the transaction begun next is checkpointed, and rolled back by the writer restored from the checkpoint
+        List<StarRocksSinkTransaction> states = writer.snapshotState();
+        assertEquals(1, states.size());
+        assertTrue(rolledBack.isEmpty());
+        writer.close();
+        writer = new StarRocksUnifiedSink<String>(options).createWriter(context, states);
+        assertEquals(Collections.singletonList(states.get(0).getLabel()), rolledBack);
+        writer.write("1\tstephen", null);
+        // and its label is reused by the first transaction after the restore
+        committables = writer.prepareCommit(false);
+        assertEquals(1, committables.size());
+        assertEquals(states.get(0).getLabel(), committables.get(0).getLabel());
+        writer.close();
+    }
+
+    @Test
+    public void testCommitAndRetry() throws Exception {
+        StarRocksUnifiedSinkCommitter committer = new StarRocksUnifiedSinkCommitter(OPTIONS);
+        List<StarRocksSinkTransaction> committables = Collections.singletonList(
+            new StarRocksSinkTransaction(DATABASE, TABLE, SINK_LABEL_PREFIX + "-label"));
+        try {
+            mockResonse = new LinkedList<>(Collections.singletonList("{\"Status\":\"OK\",\"Message\":\"\"}"));
+            assertTrue(committer.commit(committables).isEmpty());
+            // refused by StarRocks, the transaction is dropped rather than failing the job, which would restore it again
+            mockFailedResponse();
+            assertTrue(committer.commit(committables).isEmpty());
+            // StarRocks can not be reached, the transaction is handed back to be retried
+            stopHttpServer();
+            assertEquals(committables, committer.commit(committables));
+        } finally {
+            committer.close();
+        }
+    }
+}